@@ -7,16 +7,45 @@ package com.airtribe.learntrack;
 import com.airtribe.learntrack.entity.Student;
 import com.airtribe.learntrack.entity.Course;
 import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.enums.LogSyncMode;
+import com.airtribe.learntrack.enums.ExportFormat;
+import com.airtribe.learntrack.constants.AppConstants;
 import com.airtribe.learntrack.repository.StudentRepository;
 import com.airtribe.learntrack.repository.CourseRepository;
 import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.EnrollmentStore;
+import com.airtribe.learntrack.repository.ColumnarEnrollmentStore;
+import com.airtribe.learntrack.repository.ObjectEnrollmentStore;
+import com.airtribe.learntrack.repository.OffHeapEnrollmentStore;
+import com.airtribe.learntrack.repository.RecoveryResult;
+import com.airtribe.learntrack.repository.WriteAheadLog;
 import com.airtribe.learntrack.service.StudentService;
 import com.airtribe.learntrack.service.CourseService;
 import com.airtribe.learntrack.service.EnrollmentService;
+import com.airtribe.learntrack.service.TransactionManager;
+import com.airtribe.learntrack.service.Checkpointer;
+import com.airtribe.learntrack.service.CommandPipeline;
+import com.airtribe.learntrack.service.CsvImporter;
+import com.airtribe.learntrack.service.ImportResult;
+import com.airtribe.learntrack.service.EnrollmentExporter;
+import com.airtribe.learntrack.service.EnrollmentFilter;
+import com.airtribe.learntrack.service.ExportResult;
 import com.airtribe.learntrack.exception.EntityNotFoundException;
 import com.airtribe.learntrack.exception.InvalidInputException;
+import com.airtribe.learntrack.exception.TransactionConflictException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.Scanner;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.function.IntFunction;
+import java.util.function.ToIntFunction;
 
 /**
  * Main class for LearnTrack Student & Course Management System.
@@ -27,29 +56,58 @@ public class Main {
     private static StudentService studentService;
     private static CourseService courseService;
     private static EnrollmentService enrollmentService;
+    private static TransactionManager transactionManager;
+    private static WriteAheadLog writeAheadLog;
+    private static Checkpointer checkpointer;
+    // Applies console mutations on one writer thread; null when they run directly
+    private static CommandPipeline commandPipeline;
+    private static CsvImporter csvImporter;
+    private static EnrollmentExporter enrollmentExporter;
+    
+    /**
+     * One of the CsvImporter import methods
+     */
+    @FunctionalInterface
+    private interface CsvImport {
+        ImportResult run(Path file, Path rejectsFile) throws IOException;
+    }
     
     public static void main(String[] args) {
+        long startTime = System.nanoTime();
+        
         // Display welcome message
         displayWelcomeMessage();
         
         // Initialize repositories
         StudentRepository studentRepo = new StudentRepository();
         CourseRepository courseRepo = new CourseRepository();
-        EnrollmentRepository enrollmentRepo = new EnrollmentRepository();
+        EnrollmentRepository enrollmentRepo = new EnrollmentRepository(Main::createEnrollmentStore);
+        
+        // Restore saved data and start saving changes
+        boolean restored = openLog(studentRepo, courseRepo, enrollmentRepo);
         
         // Initialize services
-        studentService = new StudentService(studentRepo);
-        courseService = new CourseService(courseRepo);
-        enrollmentService = new EnrollmentService(enrollmentRepo, studentService, courseService);
+        transactionManager = new TransactionManager(studentRepo, courseRepo, enrollmentRepo);
+        studentService = new StudentService(studentRepo, transactionManager);
+        courseService = new CourseService(courseRepo, transactionManager);
+        enrollmentService = new EnrollmentService(enrollmentRepo, studentService, courseService, transactionManager);
+        csvImporter = new CsvImporter(studentService, courseService, enrollmentService);
+        enrollmentExporter = new EnrollmentExporter(enrollmentRepo);
+        startCheckpoints();
+        startCommandPipeline();
         
-        // Load sample data
-        loadSampleData();
+        // Load sample data on first start
+        if (!restored) {
+            loadSampleData();
+        }
+        System.out.println("Ready in " + (System.nanoTime() - startTime) / 1_000_000 + " ms\n");
         
         // Run main menu
         showMainMenu();
         
         // Cleanup
         scanner.close();
+        closeLog();
         System.out.println("\nThank you for using LearnTrack!");
     }
     
@@ -63,6 +121,142 @@ public class Main {
         System.out.println("========================================\n");
     }
     
+    /**
+     * Creates a storage backend for one enrollment shard, as selected by the
+     * learntrack.enrollment.store system property (object, columnar or offheap)
+     */
+    private static EnrollmentStore createEnrollmentStore() {
+        String mode = System.getProperty(AppConstants.ENROLLMENT_STORE_PROPERTY,
+                                         AppConstants.ENROLLMENT_STORE_OBJECT);
+        if (AppConstants.ENROLLMENT_STORE_COLUMNAR.equalsIgnoreCase(mode)) {
+            return new ColumnarEnrollmentStore();
+        }
+        if (AppConstants.ENROLLMENT_STORE_OFF_HEAP.equalsIgnoreCase(mode)) {
+            return new OffHeapEnrollmentStore();
+        }
+        return new ObjectEnrollmentStore();
+    }
+    
+    /**
+     * Opens the write-ahead log in the directory named by the learntrack.data.dir
+     * system property, loads the newest snapshot and the changes logged after
+     * it into the repositories, and logs every later change. The
+     * learntrack.wal.sync property selects the sync mode (sync, interval or
+     * none). An empty data directory keeps all data in memory.
+     * @return true if saved data was restored
+     */
+    private static boolean openLog(StudentRepository studentRepo, CourseRepository courseRepo,
+                                   EnrollmentRepository enrollmentRepo) {
+        String dataDir = System.getProperty(AppConstants.DATA_DIR_PROPERTY, AppConstants.DEFAULT_DATA_DIR);
+        if (dataDir.isEmpty()) {
+            return false;
+        }
+        Path directory = Paths.get(dataDir);
+        try {
+            LogSyncMode syncMode = LogSyncMode.fromString(
+                System.getProperty(AppConstants.WAL_SYNC_PROPERTY, LogSyncMode.SYNC.name()));
+            WriteAheadLog log = new WriteAheadLog(directory, syncMode);
+            RecoveryResult recovery = log.recover(studentRepo, courseRepo, enrollmentRepo);
+            log.attach(studentRepo, courseRepo, enrollmentRepo);
+            writeAheadLog = log;
+            // Writes out buffered changes if the console is closed without choosing Exit
+            Runtime.getRuntime().addShutdownHook(new Thread(Main::closeLog));
+            if (recovery.getTruncatedBytes() > 0) {
+                System.out.println("Warning: discarded " + recovery.getTruncatedBytes()
+                                   + " bytes of incomplete or damaged log records in " + directory + "\n");
+            }
+            if (recovery.hasData()) {
+                System.out.println("Restored " + studentRepo.count() + " students, " + courseRepo.count()
+                                   + " courses and " + enrollmentRepo.count() + " enrollments from " + directory
+                                   + " in " + recovery.getElapsedMillis() + " ms (snapshot: "
+                                   + recovery.getSnapshotRecords() + " records, log: " + recovery.getLogRecords()
+                                   + " changes)\n");
+            }
+            return recovery.hasData();
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not open " + directory + ": " + e.getMessage()
+                               + ". Changes will not be saved.\n");
+            return false;
+        }
+    }
+    
+    /**
+     * Starts writing snapshots in the background, if the write-ahead log is open
+     */
+    private static void startCheckpoints() {
+        if (writeAheadLog == null) {
+            return;
+        }
+        checkpointer = new Checkpointer(transactionManager, writeAheadLog);
+        checkpointer.start();
+    }
+    
+    /**
+     * Starts the single-writer pipeline if the learntrack.write.mode system
+     * property selects it (direct or pipeline)
+     */
+    private static void startCommandPipeline() {
+        String mode = System.getProperty(AppConstants.WRITE_MODE_PROPERTY, AppConstants.WRITE_MODE_DIRECT);
+        if (!AppConstants.WRITE_MODE_PIPELINE.equalsIgnoreCase(mode)) {
+            return;
+        }
+        commandPipeline = new CommandPipeline(studentService, courseService, enrollmentService);
+        commandPipeline.start();
+    }
+    
+    /**
+     * Runs a console mutation, on the pipeline's writer thread if it is
+     * started, and waits for its result
+     * @param command The mutation to run
+     * @return The command's result
+     */
+    private static <T> T write(CommandPipeline.Command<T> command)
+            throws EntityNotFoundException, InvalidInputException {
+        if (commandPipeline == null) {
+            return command.execute();
+        }
+        try {
+            return commandPipeline.submit(command).join();
+        } catch (CompletionException e) {
+            // Rethrow what the command threw on the writer thread
+            Throwable cause = e.getCause();
+            if (cause instanceof EntityNotFoundException) {
+                throw (EntityNotFoundException) cause;
+            }
+            if (cause instanceof InvalidInputException) {
+                throw (InvalidInputException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Applies the writes still queued in the pipeline, then writes out and
+     * closes the write-ahead log, if one is open
+     */
+    private static void closeLog() {
+        if (commandPipeline != null) {
+            commandPipeline.close();
+        }
+        if (checkpointer != null) {
+            checkpointer.close();
+        }
+        if (writeAheadLog == null) {
+            return;
+        }
+        try {
+            writeAheadLog.close();
+        } catch (IOException e) {
+            System.out.println("Error saving data: " + e.getMessage());
+        }
+    }
+    
     /**
      * Loads sample data for testing
      */
@@ -98,7 +292,8 @@ public class Main {
             System.out.println("2. Course Management");
             System.out.println("3. Enrollment Management");
             System.out.println("4. View Statistics");
-            System.out.println("5. Exit");
+            System.out.println("5. Data Files");
+            System.out.println("6. Exit");
             System.out.println("========================================");
             System.out.print("Enter your choice: ");
             
@@ -119,6 +314,9 @@ public class Main {
                         showStatisticsMenu();
                         break;
                     case 5:
+                        showDataFilesMenu();
+                        break;
+                    case 6:
                         running = false;
                         break;
                     default:
@@ -209,19 +407,17 @@ public class Main {
         String batch = scanner.nextLine().trim();
         
         try {
-            Student student = studentService.addStudent(firstName, lastName, email, batch);
+            Student student = write(() -> studentService.addStudent(firstName, lastName, email, batch));
             System.out.println("\nStudent added successfully!");
             System.out.println("Student ID: " + student.getId());
             System.out.println(student);
-        } catch (InvalidInputException e) {
+        } catch (EntityNotFoundException | InvalidInputException e) {
             System.out.println("\nError: " + e.getMessage());
         }
     }
     
     private static void viewAllStudents() {
-        ArrayList<Student> students = studentService.getAllStudents();
-        
-        if (students.isEmpty()) {
+        if (studentService.getTotalStudentCount() == 0) {
             System.out.println("\nNo students found.");
             return;
         }
@@ -230,18 +426,14 @@ public class Main {
         System.out.println("         ALL STUDENTS");
         System.out.println("========================================");
         
-        for (Student student : students) {
-            System.out.println(student);
-        }
+        printPages(afterId -> studentService.getAllStudents(afterId, AppConstants.PAGE_SIZE), Student::getId);
         
         System.out.println("========================================");
-        System.out.println("Total Students: " + students.size());
+        System.out.println("Total Students: " + studentService.getTotalStudentCount());
     }
     
     private static void viewActiveStudents() {
-        ArrayList<Student> students = studentService.getActiveStudents();
-        
-        if (students.isEmpty()) {
+        if (studentService.getActiveStudentCount() == 0) {
             System.out.println("\nNo active students found.");
             return;
         }
@@ -250,11 +442,9 @@ public class Main {
         System.out.println("       ACTIVE STUDENTS");
         System.out.println("========================================");
         
-        for (Student student : students) {
-            System.out.println(student);
-        }
+        printPages(afterId -> studentService.getActiveStudents(afterId, AppConstants.PAGE_SIZE), Student::getId);
         System.out.println("========================================");
-        System.out.println("Total Active Students: " + students.size());
+        System.out.println("Total Active Students: " + studentService.getActiveStudentCount());
     }
     
     private static void searchStudent() {
@@ -296,11 +486,14 @@ public class Main {
             System.out.print("New Batch: ");
             String batch = scanner.nextLine().trim();
             
-            studentService.updateStudent(id, 
-                                        firstName.isEmpty() ? null : firstName,
-                                        lastName.isEmpty() ? null : lastName,
-                                        email.isEmpty() ? null : email,
-                                        batch.isEmpty() ? null : batch);
+            write(() -> {
+                studentService.updateStudent(id, 
+                                            firstName.isEmpty() ? null : firstName,
+                                            lastName.isEmpty() ? null : lastName,
+                                            email.isEmpty() ? null : email,
+                                            batch.isEmpty() ? null : batch);
+                return null;
+            });
             
             System.out.println("\nStudent updated successfully!");
         } catch (NumberFormatException e) {
@@ -316,11 +509,14 @@ public class Main {
         System.out.print("\nEnter Student ID to deactivate: ");
         try {
             int id = Integer.parseInt(scanner.nextLine().trim());
-            studentService.deactivateStudent(id);
+            write(() -> {
+                studentService.deactivateStudent(id);
+                return null;
+            });
             System.out.println("\nStudent deactivated successfully!");
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
-        } catch (EntityNotFoundException e) {
+        } catch (EntityNotFoundException | InvalidInputException e) {
             System.out.println("\nError: " + e.getMessage());
         }
     }
@@ -329,11 +525,14 @@ public class Main {
         System.out.print("\nEnter Student ID to activate: ");
         try {
             int id = Integer.parseInt(scanner.nextLine().trim());
-            studentService.activateStudent(id);
+            write(() -> {
+                studentService.activateStudent(id);
+                return null;
+            });
             System.out.println("\nStudent activated successfully!");
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
-        } catch (EntityNotFoundException e) {
+        } catch (EntityNotFoundException | InvalidInputException e) {
             System.out.println("\nError: " + e.getMessage());
         }
     }
@@ -346,9 +545,24 @@ public class Main {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("yes")) {
-                boolean deleted = studentService.deleteStudent(id);
-                if (deleted) {
-                    System.out.println("\nStudent deleted successfully!");
+                // Cancel the student's active enrollments and delete the student as one unit
+                int cancelled = transactionManager.execute(transaction -> {
+                    if (transaction.findStudent(id) == null) {
+                        return -1;
+                    }
+                    int count = 0;
+                    for (Enrollment enrollment : transaction.findEnrollmentsByStudent(id)) {
+                        if (enrollment.getStatus() == EnrollmentStatus.ACTIVE) {
+                            enrollment.setStatus(EnrollmentStatus.CANCELLED);
+                            transaction.saveEnrollment(enrollment);
+                            count++;
+                        }
+                    }
+                    transaction.deleteStudent(id);
+                    return count;
+                });
+                if (cancelled >= 0) {
+                    System.out.println("\nStudent deleted successfully! Active enrollments cancelled: " + cancelled);
                 } else {
                     System.out.println("\nStudent not found.");
                 }
@@ -357,6 +571,8 @@ public class Main {
             }
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
+        } catch (TransactionConflictException e) {
+            System.out.println("\nError: " + e.getMessage());
         }
     }
     
@@ -432,21 +648,19 @@ public class Main {
         try {
             int duration = Integer.parseInt(scanner.nextLine().trim());
             
-            Course course = courseService.addCourse(courseName, description, duration);
+            Course course = write(() -> courseService.addCourse(courseName, description, duration));
             System.out.println("\nCourse added successfully!");
             System.out.println("Course ID: " + course.getId());
             System.out.println(course);
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
-        } catch (InvalidInputException e) {
+        } catch (EntityNotFoundException | InvalidInputException e) {
             System.out.println("\nError: " + e.getMessage());
         }
     }
     
     private static void viewAllCourses() {
-        ArrayList<Course> courses = courseService.getAllCourses();
-        
-        if (courses.isEmpty()) {
+        if (courseService.getTotalCourseCount() == 0) {
             System.out.println("\nNo courses found.");
             return;
         }
@@ -455,18 +669,14 @@ public class Main {
         System.out.println("          ALL COURSES");
         System.out.println("========================================");
         
-        for (Course course : courses) {
-            System.out.println(course);
-        }
+        printPages(afterId -> courseService.getAllCourses(afterId, AppConstants.PAGE_SIZE), Course::getId);
         
         System.out.println("========================================");
-        System.out.println("Total Courses: " + courses.size());
+        System.out.println("Total Courses: " + courseService.getTotalCourseCount());
     }
     
     private static void viewActiveCourses() {
-        ArrayList<Course> courses = courseService.getActiveCourses();
-        
-        if (courses.isEmpty()) {
+        if (courseService.getActiveCourseCount() == 0) {
             System.out.println("\nNo active courses found.");
             return;
         }
@@ -475,11 +685,9 @@ public class Main {
         System.out.println("        ACTIVE COURSES");
         System.out.println("========================================");
         
-        for (Course course : courses) {
-            System.out.println(course);
-        }
+        printPages(afterId -> courseService.getActiveCourses(afterId, AppConstants.PAGE_SIZE), Course::getId);
         System.out.println("========================================");
-        System.out.println("Total Active Courses: " + courses.size());
+        System.out.println("Total Active Courses: " + courseService.getActiveCourseCount());
     }
     
     private static void searchCourse() {
@@ -519,10 +727,13 @@ public class Main {
             String durationStr = scanner.nextLine().trim();
             int duration = durationStr.isEmpty() ? 0 : Integer.parseInt(durationStr);
             
-            courseService.updateCourse(id, 
-                                      courseName.isEmpty() ? null : courseName,
-                                      description.isEmpty() ? null : description,
-                                      duration);
+            write(() -> {
+                courseService.updateCourse(id, 
+                                          courseName.isEmpty() ? null : courseName,
+                                          description.isEmpty() ? null : description,
+                                          duration);
+                return null;
+            });
             
             System.out.println("\nCourse updated successfully!");
         } catch (NumberFormatException e) {
@@ -538,11 +749,14 @@ public class Main {
         System.out.print("\nEnter Course ID to toggle status: ");
         try {
             int id = Integer.parseInt(scanner.nextLine().trim());
-            courseService.toggleCourseStatus(id);
+            write(() -> {
+                courseService.toggleCourseStatus(id);
+                return null;
+            });
             System.out.println("\nCourse status toggled successfully!");
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
-        } catch (EntityNotFoundException e) {
+        } catch (EntityNotFoundException | InvalidInputException e) {
             System.out.println("\nError: " + e.getMessage());
         }
     }
@@ -555,7 +769,7 @@ public class Main {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("yes")) {
-                boolean deleted = courseService.deleteCourse(id);
+                boolean deleted = write(() -> courseService.deleteCourse(id));
                 if (deleted) {
                     System.out.println("\nCourse deleted successfully!");
                 } else {
@@ -566,6 +780,8 @@ public class Main {
             }
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
+        } catch (EntityNotFoundException | InvalidInputException e) {
+            System.out.println("\nError: " + e.getMessage());
         }
     }
     
@@ -642,7 +858,7 @@ public class Main {
             System.out.print("Course ID: ");
             int courseId = Integer.parseInt(scanner.nextLine().trim());
             
-            Enrollment enrollment = enrollmentService.enrollStudent(studentId, courseId);
+            Enrollment enrollment = write(() -> enrollmentService.enrollStudent(studentId, courseId));
             System.out.println("\nEnrollment successful!");
             System.out.println("Enrollment ID: " + enrollment.getId());
             System.out.println(enrollment);
@@ -656,9 +872,7 @@ public class Main {
     }
     
     private static void viewAllEnrollments() {
-        ArrayList<Enrollment> enrollments = enrollmentService.getAllEnrollments();
-        
-        if (enrollments.isEmpty()) {
+        if (enrollmentService.getTotalEnrollmentCount() == 0) {
             System.out.println("\nNo enrollments found.");
             return;
         }
@@ -667,12 +881,33 @@ public class Main {
         System.out.println("        ALL ENROLLMENTS");
         System.out.println("========================================");
         
-        for (Enrollment enrollment : enrollments) {
-            System.out.println(enrollment);
-        }
+        printPages(afterId -> enrollmentService.getAllEnrollments(afterId, AppConstants.PAGE_SIZE),
+                   Enrollment::getId);
         
         System.out.println("========================================");
-        System.out.println("Total Enrollments: " + enrollments.size());
+        System.out.println("Total Enrollments: " + enrollmentService.getTotalEnrollmentCount());
+    }
+    
+    /**
+     * Prints a listing one page at a time, asking before fetching each next page
+     * @param fetchPage Returns the page of entries after a cursor ID
+     * @param idOf Returns an entry's ID, used as the cursor for the next page
+     */
+    private static <T> void printPages(IntFunction<List<T>> fetchPage, ToIntFunction<T> idOf) {
+        List<T> page = fetchPage.apply(0);
+        while (!page.isEmpty()) {
+            for (T entry : page) {
+                System.out.println(entry);
+            }
+            if (page.size() < AppConstants.PAGE_SIZE) {
+                return;
+            }
+            System.out.print("-- Press Enter for more, or q to stop: ");
+            if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                return;
+            }
+            page = fetchPage.apply(idOf.applyAsInt(page.get(page.size() - 1)));
+        }
     }
     
     private static void viewStudentEnrollments() {
@@ -748,7 +983,11 @@ public class Main {
             System.out.print("Enter new status: ");
             String status = scanner.nextLine().trim().toUpperCase();
             
-            enrollmentService.updateEnrollmentStatus(enrollmentId, status);
+            EnrollmentStatus newStatus = parseEnrollmentStatus(status);
+            write(() -> {
+                enrollmentService.updateEnrollmentStatus(enrollmentId, newStatus);
+                return null;
+            });
             System.out.println("\nEnrollment status updated successfully!");
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
@@ -759,11 +998,29 @@ public class Main {
         }
     }
     
+    /**
+     * Converts console input to an EnrollmentStatus
+     * @param status Status name as typed by the user
+     * @return The matching status
+     * @throws InvalidInputException if the name is not a valid status
+     */
+    private static EnrollmentStatus parseEnrollmentStatus(String status) throws InvalidInputException {
+        try {
+            return EnrollmentStatus.valueOf(status);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidInputException(
+                "Invalid status. Valid options: ACTIVE, COMPLETED, CANCELLED, DROPPED");
+        }
+    }
+    
     private static void completeEnrollment() {
         System.out.print("\nEnter Enrollment ID to mark as completed: ");
         try {
             int enrollmentId = Integer.parseInt(scanner.nextLine().trim());
-            enrollmentService.completeEnrollment(enrollmentId);
+            write(() -> {
+                enrollmentService.completeEnrollment(enrollmentId);
+                return null;
+            });
             System.out.println("\nEnrollment marked as completed!");
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
@@ -782,7 +1039,10 @@ public class Main {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("yes")) {
-                enrollmentService.cancelEnrollment(enrollmentId);
+                write(() -> {
+                    enrollmentService.cancelEnrollment(enrollmentId);
+                    return null;
+                });
                 System.out.println("\nEnrollment cancelled successfully!");
             } else {
                 System.out.println("\nCancellation aborted.");
@@ -804,7 +1064,7 @@ public class Main {
             String confirm = scanner.nextLine().trim().toLowerCase();
             
             if (confirm.equals("yes")) {
-                boolean deleted = enrollmentService.deleteEnrollment(enrollmentId);
+                boolean deleted = write(() -> enrollmentService.deleteEnrollment(enrollmentId));
                 if (deleted) {
                     System.out.println("\nEnrollment deleted successfully!");
                 } else {
@@ -815,6 +1075,8 @@ public class Main {
             }
         } catch (NumberFormatException e) {
             System.out.println("\nPlease enter a valid number.");
+        } catch (EntityNotFoundException | InvalidInputException e) {
+            System.out.println("\nError: " + e.getMessage());
         }
     }
     
@@ -859,4 +1121,160 @@ public class Main {
         
         System.out.println("========================================");
     }
+    
+    // ============================================
+    // DATA FILES MENU
+    // ============================================
+    
+    private static void showDataFilesMenu() {
+        boolean back = false;
+        
+        while (!back) {
+            System.out.println("\n========================================");
+            System.out.println("         DATA FILES");
+            System.out.println("========================================");
+            System.out.println("1. Write Enrollment Table");
+            System.out.println("2. Import Students from CSV");
+            System.out.println("3. Import Courses from CSV");
+            System.out.println("4. Import Enrollments from CSV");
+            System.out.println("5. Export Enrollments");
+            System.out.println("6. Back to Main Menu");
+            System.out.println("========================================");
+            System.out.print("Enter your choice: ");
+            
+            try {
+                int choice = Integer.parseInt(scanner.nextLine().trim());
+                
+                switch (choice) {
+                    case 1:
+                        writeEnrollmentTable();
+                        break;
+                    case 2:
+                        importCsv("Students", csvImporter::importStudents);
+                        break;
+                    case 3:
+                        importCsv("Courses", csvImporter::importCourses);
+                        break;
+                    case 4:
+                        importCsv("Enrollments", csvImporter::importEnrollments);
+                        break;
+                    case 5:
+                        exportEnrollments();
+                        break;
+                    case 6:
+                        back = true;
+                        break;
+                    default:
+                        System.out.println("\nInvalid option.");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("\nPlease enter a valid number.");
+            }
+        }
+    }
+    
+    /**
+     * Writes all enrollments to a memory-mapped table file for read-only
+     * analytics processes (see tools/EnrollmentTableReport)
+     */
+    private static void writeEnrollmentTable() {
+        System.out.println("\n--- Write Enrollment Table ---");
+        
+        Path file = promptForFile(AppConstants.ENROLLMENT_TABLE_FILE_NAME);
+        try {
+            long start = System.nanoTime();
+            int count = enrollmentService.writeEnrollmentTable(file);
+            System.out.println("\nWrote " + count + " enrollments to " + file + " in "
+                               + (System.nanoTime() - start) / 1_000_000 + " ms");
+        } catch (IOException e) {
+            System.out.println("\nError: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Imports a CSV file and reports the outcome; rejected rows are written
+     * next to it with the CSV_REJECTS_SUFFIX suffix
+     * @param kind What the file holds, for the prompt
+     * @param importer The CsvImporter method to run
+     */
+    private static void importCsv(String kind, CsvImport importer) {
+        System.out.println("\n--- Import " + kind + " from CSV ---");
+        
+        System.out.print("CSV file: ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            System.out.println("\nError: File name is required");
+            return;
+        }
+        Path file = Paths.get(input);
+        Path rejectsFile = Paths.get(input + AppConstants.CSV_REJECTS_SUFFIX);
+        try {
+            ImportResult result = importer.run(file, rejectsFile);
+            System.out.println("\n" + result);
+            if (result.getRejectedCount() > 0) {
+                System.out.println("Rejected rows written to " + result.getRejectsFile());
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.out.println("\nError: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Streams the enrollments matching optional status, course and date filters
+     * to a CSV or JSON Lines file
+     */
+    private static void exportEnrollments() {
+        System.out.println("\n--- Export Enrollments ---");
+        
+        try {
+            System.out.print("Format (csv/jsonl) [csv]: ");
+            String formatInput = scanner.nextLine().trim();
+            ExportFormat format = formatInput.isEmpty() ? ExportFormat.CSV : ExportFormat.fromString(formatInput);
+            
+            System.out.print("Status (ACTIVE/COMPLETED/CANCELLED/DROPPED, blank for all): ");
+            String statusInput = scanner.nextLine().trim().toUpperCase();
+            EnrollmentStatus status = statusInput.isEmpty() ? null : parseEnrollmentStatus(statusInput);
+            
+            System.out.print("Course ID (blank for all): ");
+            String courseInput = scanner.nextLine().trim();
+            int courseId = courseInput.isEmpty() ? 0 : Integer.parseInt(courseInput);
+            
+            System.out.print("Enrolled from (yyyy-MM-dd, blank for no limit): ");
+            LocalDate from = parseOptionalDate(scanner.nextLine().trim());
+            System.out.print("Enrolled until (yyyy-MM-dd, blank for no limit): ");
+            LocalDate to = parseOptionalDate(scanner.nextLine().trim());
+            
+            Path file = promptForFile(AppConstants.ENROLLMENT_EXPORT_FILE_NAME + format.getExtension());
+            ExportResult result = enrollmentExporter.export(file, format,
+                                                            new EnrollmentFilter(status, courseId, from, to));
+            System.out.println("\nExported " + result + " to " + file);
+        } catch (NumberFormatException e) {
+            System.out.println("\nPlease enter a valid number.");
+        } catch (InvalidInputException | IllegalArgumentException | IOException e) {
+            System.out.println("\nError: " + e.getMessage());
+        }
+    }
+    
+    private static LocalDate parseOptionalDate(String date) throws InvalidInputException {
+        if (date.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            throw new InvalidInputException("Invalid date: " + date + ". Use yyyy-MM-dd");
+        }
+    }
+    
+    /**
+     * Asks for a file path, defaulting to a file in the data directory
+     * @param defaultName File name used when the input is empty
+     */
+    private static Path promptForFile(String defaultName) {
+        String dataDir = System.getProperty(AppConstants.DATA_DIR_PROPERTY, AppConstants.DEFAULT_DATA_DIR);
+        Path defaultFile = Paths.get(dataDir.isEmpty() ? "." : dataDir, defaultName);
+        System.out.print("File [" + defaultFile + "]: ");
+        String input = scanner.nextLine().trim();
+        return input.isEmpty() ? defaultFile : Paths.get(input);
+    }
 }
\ No newline at end of file
@@ -9,6 +9,65 @@ public class AppConstants {
     public static final int STUDENT_ID_START = 1000;
     public static final int COURSE_ID_START = 2000;
     public static final int ENROLLMENT_ID_START = 3000;
+    // IDs each thread takes from a shared counter at a time
+    public static final int ID_BLOCK_SIZE = 1024;
+    
+    // Storage
+    public static final String ENROLLMENT_STORE_PROPERTY = "learntrack.enrollment.store";
+    public static final String ENROLLMENT_STORE_OBJECT = "object";
+    public static final String ENROLLMENT_STORE_COLUMNAR = "columnar";
+    public static final String ENROLLMENT_STORE_OFF_HEAP = "offheap";
+    
+    // Persistence
+    // Directory holding the write-ahead log and snapshots; empty keeps all data in memory only
+    public static final String DATA_DIR_PROPERTY = "learntrack.data.dir";
+    public static final String DEFAULT_DATA_DIR = "data";
+    // sync, interval or none; see LogSyncMode
+    public static final String WAL_SYNC_PROPERTY = "learntrack.wal.sync";
+    // Bytes of records collected while the previous batch is written; a full buffer makes writers wait
+    public static final int WAL_BUFFER_SIZE = 1 << 20;
+    public static final int WAL_SYNC_INTERVAL_MS = 100;
+    // A snapshot is written once the log grows by this many bytes, or after
+    // this many seconds if it grew at all; checked every CHECKPOINT_CHECK_SECONDS
+    public static final long CHECKPOINT_LOG_BYTES = 64L << 20;
+    public static final int CHECKPOINT_INTERVAL_SECONDS = 300;
+    public static final int CHECKPOINT_CHECK_SECONDS = 10;
+    // Enrollments copied per cursor batch while a checkpoint streams them
+    public static final int CHECKPOINT_BATCH_SIZE = 1024;
+    // Default file, in the data directory, for the memory-mapped enrollment table
+    public static final String ENROLLMENT_TABLE_FILE_NAME = "enrollments.table";
+    // Rows per chunk handed to a CsvImporter worker; the importer holds at most two chunks per worker
+    public static final int CSV_IMPORT_CHUNK_ROWS = 4096;
+    // Appended to an imported file's name to name its rejects file
+    public static final String CSV_REJECTS_SUFFIX = ".rejects.csv";
+    // Enrollments copied per cursor batch, and bytes encoded before each write, by EnrollmentExporter
+    public static final int EXPORT_BATCH_SIZE = 1024;
+    public static final int EXPORT_BUFFER_SIZE = 1 << 20;
+    // Default file name, in the data directory, for enrollment exports; the format adds the extension
+    public static final String ENROLLMENT_EXPORT_FILE_NAME = "enrollments";
+    
+    // Repositories compact their storage once deleted slots reach this many
+    // and outnumber the live ones
+    public static final int COMPACTION_MIN_TOMBSTONES = 1024;
+    
+    // Concurrency
+    // Number of locks striped over (studentId, courseId) pairs by enrollment writes and commits; a power of two
+    public static final int ENROLLMENT_LOCK_STRIPES = 256;
+    // Requests handled per worker task in EnrollmentService.enrollAll
+    public static final int BULK_ENROLLMENT_CHUNK_SIZE = 512;
+    // Ring buffer slots (a power of two) and max commands applied per batch in CommandPipeline
+    public static final int COMMAND_BUFFER_CAPACITY = 4096;
+    public static final int COMMAND_BATCH_SIZE = 256;
+    // direct runs console mutations on the console thread; pipeline sends them through CommandPipeline
+    public static final String WRITE_MODE_PROPERTY = "learntrack.write.mode";
+    public static final String WRITE_MODE_DIRECT = "direct";
+    public static final String WRITE_MODE_PIPELINE = "pipeline";
+    // Attempts TransactionManager.execute makes before giving up on conflicts
+    public static final int TRANSACTION_MAX_ATTEMPTS = 3;
+    // Stripes of TransactionManager's per-key versions (a power of two), and the
+    // number of entries at which versions no active transaction needs are first pruned
+    public static final int TRANSACTION_VERSION_STRIPES = 64;
+    public static final int TRANSACTION_PRUNE_ENTRIES = 1 << 16;
     
     // Validation
     public static final int MIN_NAME_LENGTH = 2;
@@ -19,6 +78,8 @@ public class AppConstants {
     
     // Display
     public static final String SEPARATOR = "========================================";
+    // Entries printed per page by the console listings
+    public static final int PAGE_SIZE = 20;
     
     // Messages
     public static final String MSG_INVALID_OPTION = "Invalid option. Please try again.";
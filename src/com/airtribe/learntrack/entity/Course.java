@@ -19,6 +19,14 @@ public class Course {
         this.active = true;
     }
     
+    public Course(Course other) {
+        this.id = other.id;
+        this.courseName = other.courseName;
+        this.description = other.description;
+        this.durationInWeeks = other.durationInWeeks;
+        this.active = other.active;
+    }
+    
     public int getId() {
         return id;
     }
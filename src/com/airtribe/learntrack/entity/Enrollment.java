@@ -1,5 +1,6 @@
 package com.airtribe.learntrack.entity;
 
+import com.airtribe.learntrack.enums.EnrollmentStatus;
 import java.time.LocalDate;
 
 public class Enrollment {
@@ -7,11 +8,11 @@ public class Enrollment {
     private int studentId;
     private int courseId;
     private LocalDate enrollmentDate;
-    private String status;
+    private EnrollmentStatus status;
     
     public Enrollment() {
         this.enrollmentDate = LocalDate.now();
-        this.status = "ACTIVE";
+        this.status = EnrollmentStatus.ACTIVE;
     }
     
     public Enrollment(int id, int studentId, int courseId) {
@@ -19,7 +20,19 @@ public class Enrollment {
         this.studentId = studentId;
         this.courseId = courseId;
         this.enrollmentDate = LocalDate.now();
-        this.status = "ACTIVE";
+        this.status = EnrollmentStatus.ACTIVE;
+    }
+    
+    public Enrollment(int id, int studentId, int courseId, LocalDate enrollmentDate, EnrollmentStatus status) {
+        this.id = id;
+        this.studentId = studentId;
+        this.courseId = courseId;
+        this.enrollmentDate = enrollmentDate;
+        this.status = status;
+    }
+    
+    public Enrollment(Enrollment other) {
+        this(other.id, other.studentId, other.courseId, other.enrollmentDate, other.status);
     }
     
     public int getId() {
@@ -54,11 +67,11 @@ public class Enrollment {
         this.enrollmentDate = enrollmentDate;
     }
     
-    public String getStatus() {
+    public EnrollmentStatus getStatus() {
         return status;
     }
     
-    public void setStatus(String status) {
+    public void setStatus(EnrollmentStatus status) {
         this.status = status;
     }
     
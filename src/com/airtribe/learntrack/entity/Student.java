@@ -20,6 +20,12 @@ public class Student extends Person {
         this.active = true;
     }
     
+    public Student(Student other) {
+        super(other.getId(), other.getFirstName(), other.getLastName(), other.getEmail());
+        this.batch = other.batch;
+        this.active = other.active;
+    }
+    
     public String getBatch() {
         return batch;
     }
@@ -0,0 +1,39 @@
+package com.airtribe.learntrack.enums;
+
+/**
+ * File formats EnrollmentExporter can write
+ */
+public enum ExportFormat {
+    // Comma-separated values with a header line
+    CSV("CSV", ".csv"),
+    // One JSON object per line
+    JSON_LINES("JSON Lines", ".jsonl");
+    
+    private final String displayName;
+    private final String extension;
+    
+    ExportFormat(String displayName, String extension) {
+        this.displayName = displayName;
+        this.extension = extension;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public String getExtension() {
+        return extension;
+    }
+    
+    /**
+     * Looks up a format by name or file extension, e.g. "csv" or "jsonl"
+     */
+    public static ExportFormat fromString(String format) {
+        for (ExportFormat ef : ExportFormat.values()) {
+            if (ef.name().equalsIgnoreCase(format) || ef.extension.substring(1).equalsIgnoreCase(format)) {
+                return ef;
+            }
+        }
+        throw new IllegalArgumentException("Invalid export format: " + format);
+    }
+}
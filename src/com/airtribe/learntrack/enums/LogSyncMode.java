@@ -0,0 +1,32 @@
+package com.airtribe.learntrack.enums;
+
+/**
+ * When the write-ahead log forces its records to disk
+ */
+public enum LogSyncMode {
+    // Each change returns once its record is on disk; concurrent changes share one force
+    SYNC("Sync"),
+    // Changes return at once; the log is forced every WAL_SYNC_INTERVAL_MS
+    INTERVAL("Interval"),
+    // Records are handed to the operating system but never forced
+    NONE("None");
+    
+    private final String displayName;
+    
+    LogSyncMode(String displayName) {
+        this.displayName = displayName;
+    }
+    
+    public String getDisplayName() {
+        return displayName;
+    }
+    
+    public static LogSyncMode fromString(String mode) {
+        for (LogSyncMode lsm : LogSyncMode.values()) {
+            if (lsm.name().equalsIgnoreCase(mode)) {
+                return lsm;
+            }
+        }
+        throw new IllegalArgumentException("Invalid sync mode: " + mode);
+    }
+}
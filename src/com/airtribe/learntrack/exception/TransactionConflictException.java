@@ -0,0 +1,7 @@
+package com.airtribe.learntrack.exception;
+
+public class TransactionConflictException extends Exception {
+    public TransactionConflictException(String message) {
+        super(message);
+    }
+}
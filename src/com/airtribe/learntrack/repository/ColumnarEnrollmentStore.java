@@ -0,0 +1,209 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Struct-of-arrays enrollment store.
+ * Each record is kept as id, studentId, courseId, epoch day and status in
+ * parallel primitive arrays (17 bytes per record, no per-record objects).
+ * Enrollment objects are only materialized by get, and callers must pass
+ * changes back through EnrollmentRepository.update to persist them.
+ */
+public class ColumnarEnrollmentStore implements EnrollmentStore {
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    private static final byte NO_STATUS = -1;
+    private static final byte FREE = -2;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    
+    private int[] ids;
+    private int[] studentIds;
+    private int[] courseIds;
+    private int[] epochDays;
+    private byte[] statuses;
+    private int slotCount;
+    private int size;
+    // Stack of freed slots, reused by insert
+    private int[] freeSlots;
+    private int freeCount;
+    // Column copy handed out by snapshot(), reused until the next write
+    private ColumnSnapshot snapshot;
+    
+    public ColumnarEnrollmentStore() {
+        this(INITIAL_CAPACITY);
+    }
+    
+    /**
+     * Creates a store with room for the given number of records before growing
+     * @param initialCapacity Number of records to allocate for
+     */
+    public ColumnarEnrollmentStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, INITIAL_CAPACITY);
+        this.ids = new int[capacity];
+        this.studentIds = new int[capacity];
+        this.courseIds = new int[capacity];
+        this.epochDays = new int[capacity];
+        this.statuses = new byte[capacity];
+        this.freeSlots = new int[INITIAL_CAPACITY];
+    }
+    
+    @Override
+    public int insert(Enrollment enrollment) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == ids.length) {
+                resize(slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        write(slot, enrollment);
+        size++;
+        return slot;
+    }
+    
+    @Override
+    public void update(int slot, Enrollment enrollment) {
+        write(slot, enrollment);
+    }
+    
+    @Override
+    public void free(int slot) {
+        statuses[slot] = FREE;
+        snapshot = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+    
+    @Override
+    public void compact() {
+        snapshot = null;
+        int live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (statuses[slot] != FREE) {
+                ids[live] = ids[slot];
+                studentIds[live] = studentIds[slot];
+                courseIds[live] = courseIds[slot];
+                epochDays[live] = epochDays[slot];
+                statuses[live] = statuses[slot];
+                live++;
+            }
+        }
+        slotCount = live;
+        freeCount = 0;
+        freeSlots = new int[INITIAL_CAPACITY];
+        resize(Math.max(live, INITIAL_CAPACITY));
+    }
+    
+    @Override
+    public Enrollment get(int slot) {
+        int epochDay = epochDays[slot];
+        LocalDate date = epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+        return new Enrollment(ids[slot], studentIds[slot], courseIds[slot], date, getStatus(slot));
+    }
+    
+    /**
+     * Copies the columns of the live records into a ColumnSnapshot, which
+     * builds each Enrollment only when it is read. Unlike the object store's
+     * snapshots this is O(n) after a write, but it allocates five primitive
+     * arrays rather than an object per record. The copy is cached, so
+     * repeated listings without writes in between are free.
+     */
+    @Override
+    public synchronized List<Enrollment> snapshot() {
+        if (snapshot == null) {
+            if (slotCount == size) {
+                snapshot = new ColumnSnapshot(Arrays.copyOf(ids, size), Arrays.copyOf(studentIds, size),
+                                              Arrays.copyOf(courseIds, size), Arrays.copyOf(epochDays, size),
+                                              Arrays.copyOf(statuses, size));
+            } else {
+                ColumnSnapshot copy = new ColumnSnapshot(size);
+                int index = 0;
+                for (int slot = 0; slot < slotCount; slot++) {
+                    if (statuses[slot] != FREE) {
+                        copy.ids[index] = ids[slot];
+                        copy.studentIds[index] = studentIds[slot];
+                        copy.courseIds[index] = courseIds[slot];
+                        copy.epochDays[index] = epochDays[slot];
+                        copy.statuses[index] = statuses[slot];
+                        index++;
+                    }
+                }
+                snapshot = copy;
+            }
+        }
+        return snapshot;
+    }
+    
+    @Override
+    public boolean snapshotCopies() {
+        return true;
+    }
+    
+    @Override
+    public int slotCount() {
+        return slotCount;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isOccupied(int slot) {
+        return statuses[slot] != FREE;
+    }
+    
+    @Override
+    public int getId(int slot) {
+        return ids[slot];
+    }
+    
+    @Override
+    public int getStudentId(int slot) {
+        return studentIds[slot];
+    }
+    
+    @Override
+    public int getCourseId(int slot) {
+        return courseIds[slot];
+    }
+    
+    @Override
+    public int getEpochDay(int slot) {
+        return epochDays[slot];
+    }
+    
+    @Override
+    public EnrollmentStatus getStatus(int slot) {
+        byte status = statuses[slot];
+        return status < 0 ? null : STATUSES[status];
+    }
+    
+    private void write(int slot, Enrollment enrollment) {
+        snapshot = null;
+        ids[slot] = enrollment.getId();
+        studentIds[slot] = enrollment.getStudentId();
+        courseIds[slot] = enrollment.getCourseId();
+        LocalDate date = enrollment.getEnrollmentDate();
+        epochDays[slot] = date == null ? NO_DATE : (int) date.toEpochDay();
+        statuses[slot] = enrollment.getStatus() == null ? NO_STATUS : (byte) enrollment.getStatus().ordinal();
+    }
+    
+    private void resize(int capacity) {
+        ids = Arrays.copyOf(ids, capacity);
+        studentIds = Arrays.copyOf(studentIds, capacity);
+        courseIds = Arrays.copyOf(courseIds, capacity);
+        epochDays = Arrays.copyOf(epochDays, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+    }
+}
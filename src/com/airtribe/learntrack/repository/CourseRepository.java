@@ -1,17 +1,73 @@
 package com.airtribe.learntrack.repository;
 
+import com.airtribe.learntrack.constants.AppConstants;
 import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.util.IntIntHashMap;
+import com.airtribe.learntrack.util.IntPostingIndex;
+import com.airtribe.learntrack.util.OptimisticReads;
+import com.airtribe.learntrack.util.SnapshotArray;
+import com.airtribe.learntrack.util.SortedIntList;
+import com.airtribe.learntrack.util.TrigramIndex;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Repository for managing Course data storage and retrieval.
- * Uses ArrayList for in-memory storage.
+ * Uses ArrayList for in-memory storage, with a primitive id index
+ * mapping each course ID to its position in the list. Active counts are
+ * maintained incrementally on save, update and delete, and course names are
+ * kept in a trigram index for substring search.
+ * IDs of all courses, of active courses and of the courses of each duration
+ * are also kept in sorted order for keyset pagination.
+ * Deletes leave a null tombstone in the list; the list is compacted once
+ * tombstones outnumber live courses.
+ * Thread-safe: writes take a StampedLock's write lock, lookups by id and
+ * counts read optimistically, and scans and name searches hold the read lock.
+ * With a WriteAheadLog attached, every change is logged before it is applied.
  */
 public class CourseRepository {
-    private ArrayList<Course> courses;
+    // Deleted courses leave a null tombstone until the next compaction; snapshots
+    // of this array back findAll
+    private SnapshotArray<Course> courses;
+    private IntIntHashMap idIndex;
+    // Course IDs in ascending order, for keyset pagination
+    private SortedIntList idOrder;
+    private SortedIntList activeOrder;
+    // Duration in weeks -> course IDs, and id -> duration the course is indexed under
+    private IntPostingIndex durationIndex;
+    private IntIntHashMap indexedDurations;
+    // id -> 1 if the course was active when last saved or updated, 0 otherwise
+    private IntIntHashMap activeFlags;
+    private int activeCount;
+    // Lower-cased course names, parallel to the courses list
+    private ArrayList<String> normalizedNames;
+    private TrigramIndex nameIndex;
+    private final StampedLock lock;
+    // Change log, or null while changes are not logged
+    private WriteAheadLog log;
     
     public CourseRepository() {
-        this.courses = new ArrayList<>();
+        this.courses = new SnapshotArray<>();
+        this.idIndex = new IntIntHashMap();
+        this.idOrder = new SortedIntList();
+        this.activeOrder = new SortedIntList();
+        this.durationIndex = new IntPostingIndex();
+        this.indexedDurations = new IntIntHashMap();
+        this.activeFlags = new IntIntHashMap();
+        this.normalizedNames = new ArrayList<>();
+        this.nameIndex = new TrigramIndex();
+        this.lock = new StampedLock();
+    }
+    
+    /**
+     * Starts logging every change to a write-ahead log. Call before the
+     * repository is shared between threads.
+     * @param log The log
+     */
+    public void setLog(WriteAheadLog log) {
+        this.log = log;
     }
     
     /**
@@ -19,7 +75,22 @@ public class CourseRepository {
      * @param course The course to save
      */
     public void save(Course course) {
-        courses.add(course);
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            logPosition = logPut(course);
+            idIndex.put(course.getId(), courses.size());
+            courses.add(course);
+            idOrder.add(course.getId());
+            trackActive(course);
+            indexDuration(course);
+            String normalizedName = normalize(course.getCourseName());
+            normalizedNames.add(normalizedName);
+            nameIndex.add(course.getId(), normalizedName);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
     }
     
     /**
@@ -28,20 +99,31 @@ public class CourseRepository {
      * @return The course if found, null otherwise
      */
     public Course findById(int id) {
-        for (Course course : courses) {
-            if (course.getId() == id) {
-                return course;
-            }
-        }
-        return null;
+        return OptimisticReads.read(lock, () -> courseById(id));
     }
     
     /**
      * Returns all courses in the repository
-     * @return A copy of the courses list
+     * @return A read-only snapshot of the courses, taken in O(1) without copying;
+     *         later changes to the repository do not affect it
      */
-    public ArrayList<Course> findAll() {
-        return new ArrayList<>(courses);
+    public List<Course> findAll() {
+        long stamp = lock.readLock();
+        try {
+            return courses.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Returns one page of courses in ID order
+     * @param afterId Cursor: only courses with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of courses to return
+     * @return Up to limit courses; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Course> findAll(int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> coursesById(idOrder.after(afterId, limit)));
     }
     
     /**
@@ -49,30 +131,109 @@ public class CourseRepository {
      * @return List of active courses
      */
     public ArrayList<Course> findAllActive() {
-        ArrayList<Course> activeCourses = new ArrayList<>();
-        for (Course course : courses) {
-            if (course.isActive()) {
-                activeCourses.add(course);
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Course> activeCourses = new ArrayList<>();
+            for (int i = 0; i < courses.size(); i++) {
+                Course course = courses.get(i);
+                if (course != null && course.isActive()) {
+                    activeCourses.add(course);
+                }
             }
+            return activeCourses;
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return activeCourses;
     }
     
     /**
-     * Finds courses by name (case-insensitive partial match)
+     * Returns one page of active courses in ID order
+     * @param afterId Cursor: only courses with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of courses to return
+     * @return Up to limit active courses
+     */
+    public ArrayList<Course> findAllActive(int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> coursesById(activeOrder.after(afterId, limit)));
+    }
+    
+    /**
+     * Finds courses by name (case-insensitive partial match).
+     * Terms of three or more characters are answered from the trigram index;
+     * shorter terms scan the pre-normalized names.
      * @param name The course name to search for
      * @return List of matching courses
      */
     public ArrayList<Course> findByName(String name) {
-        ArrayList<Course> result = new ArrayList<>();
-        String searchTerm = name.toLowerCase();
-        
-        for (Course course : courses) {
-            if (course.getCourseName().toLowerCase().contains(searchTerm)) {
-                result.add(course);
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Course> result = new ArrayList<>();
+            String searchTerm = normalize(name);
+            
+            if (searchTerm.length() < TrigramIndex.MIN_TERM_LENGTH) {
+                for (int i = 0; i < courses.size(); i++) {
+                    String normalizedName = normalizedNames.get(i);
+                    if (normalizedName != null && normalizedName.contains(searchTerm)) {
+                        result.add(courses.get(i));
+                    }
+                }
+                return result;
+            }
+            
+            for (int id : nameIndex.candidates(searchTerm)) {
+                int index = idIndex.get(id);
+                if (normalizedNames.get(index).contains(searchTerm)) {
+                    result.add(courses.get(index));
+                }
             }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Returns one page of the courses matching a name (case-insensitive partial match),
+     * in ID order. Terms of three or more characters start from the trigram candidates;
+     * shorter terms walk the IDs after the cursor until the page is full.
+     * @param name The course name to search for
+     * @param afterId Cursor: only courses with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of courses to return
+     * @return Up to limit matching courses
+     */
+    public ArrayList<Course> findByName(String name, int afterId, int limit) {
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Course> result = new ArrayList<>();
+            String searchTerm = normalize(name);
+            
+            if (searchTerm.length() < TrigramIndex.MIN_TERM_LENGTH) {
+                int cursor = afterId;
+                int[] ids = idOrder.after(cursor, limit);
+                while (ids.length > 0 && result.size() < limit) {
+                    for (int i = 0; i < ids.length && result.size() < limit; i++) {
+                        int index = idIndex.get(ids[i]);
+                        if (normalizedNames.get(index).contains(searchTerm)) {
+                            result.add(courses.get(index));
+                        }
+                    }
+                    cursor = ids[ids.length - 1];
+                    ids = idOrder.after(cursor, limit);
+                }
+                return result;
+            }
+            
+            int[] candidates = nameIndex.candidates(searchTerm);
+            int from = Arrays.binarySearch(candidates, afterId);
+            for (int i = from < 0 ? -from - 1 : from + 1; i < candidates.length && result.size() < limit; i++) {
+                int index = idIndex.get(candidates[i]);
+                if (normalizedNames.get(index).contains(searchTerm)) {
+                    result.add(courses.get(index));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return result;
     }
     
     /**
@@ -81,13 +242,31 @@ public class CourseRepository {
      * @return List of courses with matching duration
      */
     public ArrayList<Course> findByDuration(int durationInWeeks) {
-        ArrayList<Course> result = new ArrayList<>();
-        for (Course course : courses) {
-            if (course.getDurationInWeeks() == durationInWeeks) {
-                result.add(course);
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Course> result = new ArrayList<>();
+            for (int i = 0; i < courses.size(); i++) {
+                Course course = courses.get(i);
+                if (course != null && course.getDurationInWeeks() == durationInWeeks) {
+                    result.add(course);
+                }
             }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return result;
+    }
+    
+    /**
+     * Returns one page of the courses with a given duration, in ID order
+     * @param durationInWeeks The duration to search for
+     * @param afterId Cursor: only courses with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of courses to return
+     * @return Up to limit courses with matching duration
+     */
+    public ArrayList<Course> findByDuration(int durationInWeeks, int afterId, int limit) {
+        return OptimisticReads.read(lock,
+            () -> coursesById(durationIndex.page(durationInWeeks, afterId, limit)));
     }
     
     /**
@@ -96,12 +275,32 @@ public class CourseRepository {
      * @return true if deleted, false if not found
      */
     public boolean delete(int id) {
-        Course course = findById(id);
-        if (course != null) {
-            courses.remove(course);
-            return true;
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            int index = idIndex.get(id);
+            if (index < 0) {
+                return false;
+            }
+            logPosition = log == null ? 0 : log.logCourseDelete(id);
+            idIndex.remove(id);
+            if (activeFlags.remove(id) == 1) {
+                activeCount--;
+            }
+            idOrder.remove(id);
+            activeOrder.remove(id);
+            durationIndex.remove(indexedDurations.remove(id), id);
+            courses.set(index, null);
+            nameIndex.remove(id, normalizedNames.set(index, null));
+            int tombstones = courses.size() - courses.liveCount();
+            if (tombstones >= AppConstants.COMPACTION_MIN_TOMBSTONES && tombstones > courses.liveCount()) {
+                removeTombstones();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return false;
+        awaitLogged(logPosition);
+        return true;
     }
     
     /**
@@ -109,11 +308,26 @@ public class CourseRepository {
      * @param course The course with updated information
      */
     public void update(Course course) {
-        Course existing = findById(course.getId());
-        if (existing != null) {
-            int index = courses.indexOf(existing);
-            courses.set(index, course);
+        long logPosition = 0;
+        long stamp = lock.writeLock();
+        try {
+            int index = idIndex.get(course.getId());
+            if (index >= 0) {
+                logPosition = logPut(course);
+                courses.set(index, course);
+                trackActive(course);
+                indexDuration(course);
+                String normalizedName = normalize(course.getCourseName());
+                String previousName = normalizedNames.set(index, normalizedName);
+                if (!previousName.equals(normalizedName)) {
+                    nameIndex.remove(course.getId(), previousName);
+                    nameIndex.add(course.getId(), normalizedName);
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        awaitLogged(logPosition);
     }
     
     /**
@@ -121,7 +335,7 @@ public class CourseRepository {
      * @return Count of courses
      */
     public int count() {
-        return courses.size();
+        return OptimisticReads.readInt(lock, () -> courses.liveCount());
     }
     
     /**
@@ -129,13 +343,29 @@ public class CourseRepository {
      * @return Count of active courses
      */
     public int countActive() {
-        int count = 0;
-        for (Course course : courses) {
-            if (course.isActive()) {
-                count++;
-            }
+        return OptimisticReads.readInt(lock, () -> activeCount);
+    }
+    
+    /**
+     * Returns the count of inactive courses
+     * @return Count of inactive courses
+     */
+    public int countInactive() {
+        return OptimisticReads.readInt(lock, () -> courses.liveCount() - activeCount);
+    }
+    
+    /**
+     * Removes tombstones left by deletes and rebuilds the id index.
+     * Runs in time linear in the list size; called automatically by delete
+     * once tombstones outnumber live courses.
+     */
+    public void compact() {
+        long stamp = lock.writeLock();
+        try {
+            removeTombstones();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return count;
     }
     
     /**
@@ -144,7 +374,79 @@ public class CourseRepository {
      * @return true if exists, false otherwise
      */
     public boolean exists(int id) {
-        return findById(id) != null;
+        return OptimisticReads.read(lock, () -> idIndex.containsKey(id));
+    }
+    
+    private Course courseById(int id) {
+        int index = idIndex.get(id);
+        return index < 0 ? null : courses.get(index);
+    }
+    
+    private ArrayList<Course> coursesById(int[] ids) {
+        ArrayList<Course> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(courseById(id));
+        }
+        return result;
+    }
+    
+    private void removeTombstones() {
+        int live = 0;
+        for (int i = 0; i < courses.size(); i++) {
+            Course course = courses.get(i);
+            if (course != null) {
+                courses.set(live, course);
+                normalizedNames.set(live, normalizedNames.get(i));
+                idIndex.put(course.getId(), live);
+                live++;
+            }
+        }
+        courses.truncate(live);
+        normalizedNames.subList(live, normalizedNames.size()).clear();
+        normalizedNames.trimToSize();
+    }
+    
+    private void trackActive(Course course) {
+        int wasActive = activeFlags.put(course.getId(), course.isActive() ? 1 : 0);
+        if (wasActive == 1) {
+            activeCount--;
+        }
+        if (course.isActive()) {
+            activeCount++;
+            activeOrder.add(course.getId());
+        } else {
+            activeOrder.remove(course.getId());
+        }
+    }
+    
+    /**
+     * Appends a course's new state to the log, if any. Called under the write
+     * lock before the change is applied, so the log orders each course's
+     * changes as they were applied.
+     * @return The log position to wait for, or 0 if nothing was logged
+     */
+    private long logPut(Course course) {
+        return log == null ? 0 : log.logCourse(course);
+    }
+    
+    /**
+     * Waits, after the write lock is released, until the log is durable up to a position
+     */
+    private void awaitLogged(long logPosition) {
+        if (logPosition > 0) {
+            log.sync(logPosition);
+        }
+    }
+    
+    private void indexDuration(Course course) {
+        int previousDuration = indexedDurations.put(course.getId(), course.getDurationInWeeks());
+        if (previousDuration != course.getDurationInWeeks()) {
+            durationIndex.remove(previousDuration, course.getId());
+            durationIndex.add(course.getDurationInWeeks(), course.getId());
+        }
+    }
+    
+    private static String normalize(String name) {
+        return name == null ? "" : name.toLowerCase();
     }
 }
-
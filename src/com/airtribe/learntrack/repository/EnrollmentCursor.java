@@ -0,0 +1,165 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+
+/**
+ * Walks every enrollment in an EnrollmentRepository a batch at a time,
+ * copying the fields into reusable primitive columns instead of creating
+ * Enrollment objects, so a full scan runs in constant memory.
+ * Enrollments come out in ID order across all shards: each shard is read
+ * a page at a time, and the pages are merged by ID. Every page is read from
+ * one consistent state of its shard, holding no lock between pages, so
+ * writers are never blocked for the whole scan. Enrollments added, changed
+ * or deleted while the cursor runs may or may not be seen. One moved to
+ * another shard by an update may be read from both, but only IDs above the
+ * last one returned are returned, so none is seen twice.
+ * Not thread-safe: use one cursor per thread.
+ */
+public class EnrollmentCursor {
+    private final Page[] pages;
+    // Last ID returned, from any shard
+    private int lastId;
+    
+    private final int[] ids;
+    private final int[] studentIds;
+    private final int[] courseIds;
+    private final int[] epochDays;
+    private final EnrollmentStatus[] statuses;
+    private int size;
+    
+    EnrollmentCursor(EnrollmentShard[] shards, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        // Each shard's page holds its share of a batch, as in mergePages
+        int pageSize = (batchSize + shards.length - 1) / shards.length;
+        this.pages = new Page[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            pages[i] = new Page(shards[i], pageSize);
+        }
+        this.ids = new int[batchSize];
+        this.studentIds = new int[batchSize];
+        this.courseIds = new int[batchSize];
+        this.epochDays = new int[batchSize];
+        this.statuses = new EnrollmentStatus[batchSize];
+    }
+    
+    /**
+     * Loads the next batch, replacing the current one
+     * @return false once every shard has been read
+     */
+    public boolean next() {
+        size = 0;
+        while (size < ids.length) {
+            // Shards are few, so a linear search for the lowest head is enough
+            Page lowest = null;
+            for (Page page : pages) {
+                if (page.hasNext(lastId) && (lowest == null || page.headId() < lowest.headId())) {
+                    lowest = page;
+                }
+            }
+            if (lowest == null) {
+                break;
+            }
+            int row = lowest.position++;
+            lastId = lowest.ids[row];
+            ids[size] = lastId;
+            studentIds[size] = lowest.studentIds[row];
+            courseIds[size] = lowest.courseIds[row];
+            epochDays[size] = lowest.epochDays[row];
+            statuses[size] = lowest.statuses[row];
+            size++;
+        }
+        return size > 0;
+    }
+    
+    /**
+     * Returns the number of enrollments in the current batch
+     * @return Count, at most the batch size
+     */
+    public int size() {
+        return size;
+    }
+    
+    public int getId(int index) {
+        return ids[index];
+    }
+    
+    public int getStudentId(int index) {
+        return studentIds[index];
+    }
+    
+    public int getCourseId(int index) {
+        return courseIds[index];
+    }
+    
+    /**
+     * Returns an enrollment's date as a day count
+     * @param index Position in the current batch
+     * @return Days since 1970-01-01, or EnrollmentStore.NO_DATE if it has no date
+     */
+    public int getEpochDay(int index) {
+        return epochDays[index];
+    }
+    
+    public EnrollmentStatus getStatus(int index) {
+        return statuses[index];
+    }
+    
+    /**
+     * One shard's page of the scan, refilled from the shard once merged
+     */
+    static final class Page {
+        private final EnrollmentShard shard;
+        final int[] ids;
+        final int[] studentIds;
+        final int[] courseIds;
+        final int[] epochDays;
+        final EnrollmentStatus[] statuses;
+        private int size;
+        private int position;
+        // Set once a short page shows the shard has nothing after it
+        private boolean exhausted;
+        
+        Page(EnrollmentShard shard, int pageSize) {
+            this.shard = shard;
+            this.ids = new int[pageSize];
+            this.studentIds = new int[pageSize];
+            this.courseIds = new int[pageSize];
+            this.epochDays = new int[pageSize];
+            this.statuses = new EnrollmentStatus[pageSize];
+        }
+        
+        /**
+         * Skips rows at or below an ID, reading the next page when this one
+         * is used up
+         * @param afterId The last ID the cursor returned
+         * @return Whether a row above afterId is available
+         */
+        boolean hasNext(int afterId) {
+            while (true) {
+                while (position < size) {
+                    if (ids[position] > afterId) {
+                        return true;
+                    }
+                    // Already returned from another shard before it moved here
+                    position++;
+                }
+                if (exhausted) {
+                    return false;
+                }
+                int from = size > 0 ? Math.max(afterId, ids[size - 1]) : afterId;
+                size = shard.copyPage(from, this);
+                position = 0;
+                exhausted = size < ids.length;
+                if (size == 0) {
+                    return false;
+                }
+            }
+        }
+        
+        int headId() {
+            return ids[position];
+        }
+    }
+}
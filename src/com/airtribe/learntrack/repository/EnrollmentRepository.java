@@ -1,17 +1,108 @@
 package com.airtribe.learntrack.repository;
 
 import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.util.IntIntHashMap;
+import com.airtribe.learntrack.util.OptimisticReads;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Repository for managing Enrollment data storage and retrieval.
- * Uses ArrayList for in-memory storage.
+ * Enrollments are hash-partitioned by studentId into shards
+ * (see EnrollmentShard), each with its own store, indexes and lock, so
+ * writes for different students rarely contend.
+ * Calls keyed by student (findByStudentId, findByStudentAndCourse, ...) touch
+ * exactly one shard. Calls keyed by enrollment ID (findById, exists, update,
+ * delete) look up the owning shard in an id -> shard map, striped like the
+ * shards, and touch only that one.
+ * Global scans (findByStatus, findByCourseId, deleteByStatus, compaction)
+ * run on every shard in parallel on the common ForkJoinPool and merge the
+ * results; deleteByStatus then waits for the log once, on the calling thread.
+ * Paged queries merge the shards' pages by ID with one cursor per shard,
+ * each fetching small batches as the merge consumes them. Counts are summed.
+ * Moving an enrollment to another student's shard holds both shards' write
+ * locks, taken in shard order, so it is never seen in neither or both.
+ * Each shard is consistent on its own, but a global query does not see all
+ * shards at a single point in time.
  */
 public class EnrollmentRepository {
-    private ArrayList<Enrollment> enrollments;
+    private final EnrollmentShard[] shards;
+    // Shard index of each enrollment ID, striped by ID; unused with a single shard
+    private final RouteStripe[] routes;
+    // Change log, or null while changes are not logged
+    private WriteAheadLog log;
+    
+    /**
+     * Query for one page of a shard, used by mergePages
+     */
+    @FunctionalInterface
+    private interface PageQuery {
+        ArrayList<Enrollment> page(EnrollmentShard shard, int afterId, int limit);
+    }
     
     public EnrollmentRepository() {
-        this.enrollments = new ArrayList<>();
+        this(ObjectEnrollmentStore::new);
+    }
+    
+    /**
+     * Creates a single-shard repository on top of the given storage backend
+     * @param store The store holding the enrollment records
+     */
+    public EnrollmentRepository(EnrollmentStore store) {
+        this.shards = new EnrollmentShard[] { new EnrollmentShard(store) };
+        this.routes = new RouteStripe[0];
+    }
+    
+    /**
+     * Creates a repository with one shard per available processor
+     * @param storeFactory Creates the store of each shard
+     */
+    public EnrollmentRepository(Supplier<EnrollmentStore> storeFactory) {
+        this(Runtime.getRuntime().availableProcessors(), storeFactory);
+    }
+    
+    /**
+     * Creates a repository partitioned into the given number of shards
+     * @param shardCount Number of shards, at least 1
+     * @param storeFactory Creates the store of each shard
+     */
+    public EnrollmentRepository(int shardCount, Supplier<EnrollmentStore> storeFactory) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("Shard count must be positive: " + shardCount);
+        }
+        this.shards = new EnrollmentShard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new EnrollmentShard(storeFactory.get());
+        }
+        this.routes = new RouteStripe[shardCount > 1 ? shardCount : 0];
+        for (int i = 0; i < routes.length; i++) {
+            routes[i] = new RouteStripe();
+        }
+    }
+    
+    /**
+     * Starts logging every change to a write-ahead log. Call before the
+     * repository is shared between threads.
+     * @param log The log
+     */
+    public void setLog(WriteAheadLog log) {
+        this.log = log;
+        for (EnrollmentShard shard : shards) {
+            shard.setLog(log);
+        }
     }
     
     /**
@@ -19,7 +110,9 @@ public class EnrollmentRepository {
      * @param enrollment The enrollment to save
      */
     public void save(Enrollment enrollment) {
-        enrollments.add(enrollment);
+        int shard = shardIndex(enrollment.getStudentId());
+        setRoute(enrollment.getId(), shard);
+        shards[shard].save(enrollment);
     }
     
     /**
@@ -28,20 +121,90 @@ public class EnrollmentRepository {
      * @return The enrollment if found, null otherwise
      */
     public Enrollment findById(int id) {
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getId() == id) {
+        while (true) {
+            int shard = routeOf(id);
+            if (shard < 0) {
+                return null;
+            }
+            Enrollment enrollment = shards[shard].findById(id);
+            // A miss only counts if the enrollment was not moved meanwhile
+            if (enrollment != null || routeOf(id) == shard) {
                 return enrollment;
             }
         }
-        return null;
     }
     
     /**
      * Returns all enrollments in the repository
-     * @return A copy of the enrollments list
+     * @return A read-only view over the snapshots of all shards; later changes
+     *         to the repository do not affect it
+     */
+    public List<Enrollment> findAll() {
+        if (shards.length == 1) {
+            return shards[0].findAll();
+        }
+        List<List<Enrollment>> parts = new ArrayList<>(shards.length);
+        for (EnrollmentShard shard : shards) {
+            parts.add(shard.findAll());
+        }
+        return new ConcatenatedList<>(parts);
+    }
+    
+    /**
+     * Starts a snapshot of all enrollments as of this call, like findAll,
+     * for callers that hold off their writers only while it begins. The call
+     * is O(1) per shard; stores whose snapshots copy the records do the copy
+     * when the returned supplier is called, outside the caller's lock.
+     * @return Supplies the snapshot; must be called exactly once, since writes
+     *         pay to keep the snapshot's point in time until it is
+     */
+    public Supplier<List<Enrollment>> beginSnapshot() {
+        List<Supplier<List<Enrollment>>> pending = new ArrayList<>(shards.length);
+        for (EnrollmentShard shard : shards) {
+            pending.add(shard.beginSnapshot());
+        }
+        return () -> {
+            if (pending.size() == 1) {
+                return pending.get(0).get();
+            }
+            List<List<Enrollment>> parts = new ArrayList<>(pending.size());
+            int next = 0;
+            try {
+                while (next < pending.size()) {
+                    parts.add(pending.get(next++).get());
+                }
+            } finally {
+                // After a failed copy, the remaining shards must still stop recording
+                while (next < pending.size()) {
+                    try {
+                        pending.get(next++).get();
+                    } catch (RuntimeException | Error e) {
+                        // The first failure is the one reported
+                    }
+                }
+            }
+            return new ConcatenatedList<>(parts);
+        };
+    }
+    
+    /**
+     * Returns one page of enrollments in ID order
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Enrollment> findAll(int afterId, int limit) {
+        return mergePages(EnrollmentShard::findAll, afterId, limit);
+    }
+    
+    /**
+     * Opens a cursor over all enrollments for scans that should not
+     * materialize them, such as exports
+     * @param batchSize Enrollments copied per batch
+     * @return A cursor positioned before the first batch
      */
-    public ArrayList<Enrollment> findAll() {
-        return new ArrayList<>(enrollments);
+    public EnrollmentCursor cursor(int batchSize) {
+        return new EnrollmentCursor(shards, batchSize);
     }
     
     /**
@@ -50,28 +213,38 @@ public class EnrollmentRepository {
      * @return List of enrollments for the student
      */
     public ArrayList<Enrollment> findByStudentId(int studentId) {
-        ArrayList<Enrollment> result = new ArrayList<>();
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getStudentId() == studentId) {
-                result.add(enrollment);
-            }
-        }
-        return result;
+        return shardFor(studentId).findByStudentId(studentId);
     }
     
     /**
-     * Finds all enrollments for a specific course
+     * Returns one page of the enrollments of a student, in ID order
+     * @param studentId The student ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments for the student
+     */
+    public ArrayList<Enrollment> findByStudentId(int studentId, int afterId, int limit) {
+        return shardFor(studentId).findByStudentId(studentId, afterId, limit);
+    }
+    
+    /**
+     * Finds all enrollments for a specific course, querying all shards in parallel
      * @param courseId The course ID
      * @return List of enrollments for the course
      */
     public ArrayList<Enrollment> findByCourseId(int courseId) {
-        ArrayList<Enrollment> result = new ArrayList<>();
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getCourseId() == courseId) {
-                result.add(enrollment);
-            }
-        }
-        return result;
+        return concat(fanOut(shard -> shard.findByCourseId(courseId)));
+    }
+    
+    /**
+     * Returns one page of the enrollments in a course, in ID order
+     * @param courseId The course ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments for the course
+     */
+    public ArrayList<Enrollment> findByCourseId(int courseId, int afterId, int limit) {
+        return mergePages((shard, after, batch) -> shard.findByCourseId(courseId, after, batch), afterId, limit);
     }
     
     /**
@@ -80,45 +253,49 @@ public class EnrollmentRepository {
      * @return List of active enrollments
      */
     public ArrayList<Enrollment> findActiveByStudentId(int studentId) {
-        ArrayList<Enrollment> result = new ArrayList<>();
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getStudentId() == studentId && 
-                "ACTIVE".equals(enrollment.getStatus())) {
-                result.add(enrollment);
-            }
-        }
-        return result;
+        return shardFor(studentId).findActiveByStudentId(studentId);
+    }
+    
+    /**
+     * Returns one page of the active enrollments of a student, in ID order
+     * @param studentId The student ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit active enrollments
+     */
+    public ArrayList<Enrollment> findActiveByStudentId(int studentId, int afterId, int limit) {
+        return shardFor(studentId).findActiveByStudentId(studentId, afterId, limit);
     }
     
     /**
-     * Finds enrollment by student and course IDs
+     * Finds enrollment by student and course IDs.
+     * If the pair has an active enrollment, that one is returned.
      * @param studentId The student ID
      * @param courseId The course ID
      * @return The enrollment if found, null otherwise
      */
     public Enrollment findByStudentAndCourse(int studentId, int courseId) {
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getStudentId() == studentId && 
-                enrollment.getCourseId() == courseId) {
-                return enrollment;
-            }
-        }
-        return null;
+        return shardFor(studentId).findByStudentAndCourse(studentId, courseId);
     }
     
     /**
-     * Finds all enrollments with a specific status
-     * @param status The status to filter by (ACTIVE, COMPLETED, CANCELLED)
+     * Finds all enrollments with a specific status, scanning all shards in parallel
+     * @param status The status to filter by
      * @return List of enrollments with the given status
      */
-    public ArrayList<Enrollment> findByStatus(String status) {
-        ArrayList<Enrollment> result = new ArrayList<>();
-        for (Enrollment enrollment : enrollments) {
-            if (status.equals(enrollment.getStatus())) {
-                result.add(enrollment);
-            }
-        }
-        return result;
+    public ArrayList<Enrollment> findByStatus(EnrollmentStatus status) {
+        return concat(fanOut(shard -> shard.findByStatus(status)));
+    }
+    
+    /**
+     * Returns one page of the enrollments with a specific status, in ID order
+     * @param status The status to filter by
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments with the given status
+     */
+    public ArrayList<Enrollment> findByStatus(EnrollmentStatus status, int afterId, int limit) {
+        return mergePages((shard, after, batch) -> shard.findByStatus(status, after, batch), afterId, limit);
     }
     
     /**
@@ -127,32 +304,101 @@ public class EnrollmentRepository {
      * @return true if deleted, false if not found
      */
     public boolean delete(int id) {
-        Enrollment enrollment = findById(id);
-        if (enrollment != null) {
-            enrollments.remove(enrollment);
-            return true;
+        while (true) {
+            int shard = routeOf(id);
+            if (shard < 0) {
+                return false;
+            }
+            if (shards[shard].delete(id)) {
+                removeRoute(id);
+                return true;
+            }
+            if (routeOf(id) == shard) {
+                return false;
+            }
         }
-        return false;
     }
     
     /**
-     * Updates an existing enrollment
+     * Deletes every enrollment with a given status, purging all shards in
+     * parallel. The shards do not wait for the log; this call waits once, on
+     * the calling thread, so the wait joins a group the caller has open.
+     * @param status The status to purge (e.g. CANCELLED)
+     * @return Number of enrollments deleted
+     */
+    public int deleteByStatus(EnrollmentStatus status) {
+        LongAccumulator logPosition = new LongAccumulator(Math::max, 0);
+        int deleted = 0;
+        for (int[] ids : fanOut(shard -> shard.deleteByStatus(status, logPosition))) {
+            for (int id : ids) {
+                removeRoute(id);
+            }
+            deleted += ids.length;
+        }
+        if (logPosition.get() > 0) {
+            log.sync(logPosition.get());
+        }
+        return deleted;
+    }
+    
+    /**
+     * Compacts the store of every shard in parallel, releasing freed slots.
+     * Linear in the number of slots. Compaction is not logged, so the pool
+     * threads never wait for the log.
+     */
+    public void compact() {
+        fanOut(shard -> {
+            shard.compact();
+            return null;
+        });
+    }
+    
+    /**
+     * Updates an existing enrollment. If its student now maps to another
+     * shard, the enrollment is moved there atomically.
      * @param enrollment The enrollment with updated information
      */
     public void update(Enrollment enrollment) {
-        Enrollment existing = findById(enrollment.getId());
-        if (existing != null) {
-            int index = enrollments.indexOf(existing);
-            enrollments.set(index, enrollment);
+        int id = enrollment.getId();
+        int target = shardIndex(enrollment.getStudentId());
+        while (true) {
+            int shard = routeOf(id);
+            if (shard < 0) {
+                return;
+            }
+            boolean updated = shard == target ? shards[target].update(enrollment)
+                                              : move(shard, target, enrollment);
+            if (updated || routeOf(id) == shard) {
+                return;
+            }
         }
     }
     
+    /**
+     * Updates an enrollment only if its student, course and status are still
+     * those of an earlier read. Lets a caller that read the enrollment check
+     * and write it without reading it again.
+     * @param expected The enrollment as read before
+     * @param enrollment The enrollment with updated information, for the same student
+     * @return true if updated, false if it was deleted or changed meanwhile
+     */
+    public boolean replace(Enrollment expected, Enrollment enrollment) {
+        if (expected.getStudentId() != enrollment.getStudentId()) {
+            throw new IllegalArgumentException("replace cannot change the student of an enrollment");
+        }
+        return shards[shardIndex(expected.getStudentId())].replace(expected, enrollment);
+    }
+    
     /**
      * Returns the total number of enrollments
      * @return Count of enrollments
      */
     public int count() {
-        return enrollments.size();
+        int count = 0;
+        for (EnrollmentShard shard : shards) {
+            count += shard.count();
+        }
+        return count;
     }
     
     /**
@@ -160,13 +406,7 @@ public class EnrollmentRepository {
      * @return Count of active enrollments
      */
     public int countActive() {
-        int count = 0;
-        for (Enrollment enrollment : enrollments) {
-            if ("ACTIVE".equals(enrollment.getStatus())) {
-                count++;
-            }
-        }
-        return count;
+        return countByStatus(EnrollmentStatus.ACTIVE);
     }
     
     /**
@@ -174,11 +414,18 @@ public class EnrollmentRepository {
      * @return Count of completed enrollments
      */
     public int countCompleted() {
+        return countByStatus(EnrollmentStatus.COMPLETED);
+    }
+    
+    /**
+     * Returns the count of enrollments with a specific status
+     * @param status The status to count
+     * @return Count of enrollments with the given status
+     */
+    public int countByStatus(EnrollmentStatus status) {
         int count = 0;
-        for (Enrollment enrollment : enrollments) {
-            if ("COMPLETED".equals(enrollment.getStatus())) {
-                count++;
-            }
+        for (EnrollmentShard shard : shards) {
+            count += shard.countByStatus(status);
         }
         return count;
     }
@@ -190,14 +437,7 @@ public class EnrollmentRepository {
      * @return true if actively enrolled, false otherwise
      */
     public boolean isActivelyEnrolled(int studentId, int courseId) {
-        for (Enrollment enrollment : enrollments) {
-            if (enrollment.getStudentId() == studentId && 
-                enrollment.getCourseId() == courseId &&
-                "ACTIVE".equals(enrollment.getStatus())) {
-                return true;
-            }
-        }
-        return false;
+        return shardFor(studentId).isActivelyEnrolled(studentId, courseId);
     }
     
     /**
@@ -206,6 +446,279 @@ public class EnrollmentRepository {
      * @return true if exists, false otherwise
      */
     public boolean exists(int id) {
-        return findById(id) != null;
+        while (true) {
+            int shard = routeOf(id);
+            if (shard < 0) {
+                return false;
+            }
+            if (shards[shard].exists(id)) {
+                return true;
+            }
+            if (routeOf(id) == shard) {
+                return false;
+            }
+        }
+    }
+    
+    private EnrollmentShard shardFor(int studentId) {
+        return shards[shardIndex(studentId)];
+    }
+    
+    private int shardIndex(int studentId) {
+        return Math.floorMod(studentId, shards.length);
+    }
+    
+    /**
+     * Moves an enrollment between shards, holding both write locks (lower
+     * shard index first) so that readers find it in exactly one of them
+     * @return true if moved, false if the source no longer holds it
+     */
+    private boolean move(int from, int to, Enrollment enrollment) {
+        EnrollmentShard first = shards[Math.min(from, to)];
+        EnrollmentShard second = shards[Math.max(from, to)];
+        long logPosition;
+        long firstStamp = first.writeLock();
+        try {
+            long secondStamp = second.writeLock();
+            try {
+                if (shards[from].deleteLocked(enrollment.getId()) < 0) {
+                    return false;
+                }
+                logPosition = shards[to].saveLocked(enrollment);
+                setRoute(enrollment.getId(), to);
+            } finally {
+                second.unlockWrite(secondStamp);
+            }
+        } finally {
+            first.unlockWrite(firstStamp);
+        }
+        shards[to].awaitLogged(logPosition);
+        return true;
+    }
+    
+    /**
+     * Returns the index of the shard holding an enrollment ID
+     * @return The shard index, or -1 if the ID is not stored
+     */
+    private int routeOf(int id) {
+        if (routes.length == 0) {
+            return 0;
+        }
+        RouteStripe stripe = routes[Math.floorMod(id, routes.length)];
+        return OptimisticReads.readInt(stripe.lock, () -> stripe.shards.get(id));
+    }
+    
+    private void setRoute(int id, int shard) {
+        if (routes.length == 0) {
+            return;
+        }
+        RouteStripe stripe = routes[Math.floorMod(id, routes.length)];
+        long stamp = stripe.lock.writeLock();
+        try {
+            stripe.shards.put(id, shard);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+    
+    private void removeRoute(int id) {
+        if (routes.length == 0) {
+            return;
+        }
+        RouteStripe stripe = routes[Math.floorMod(id, routes.length)];
+        long stamp = stripe.lock.writeLock();
+        try {
+            stripe.shards.remove(id);
+        } finally {
+            stripe.lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Runs a query on every shard, forking all but the first onto the common
+     * ForkJoinPool and running the first on the calling thread
+     * @return The shards' results, in shard order
+     */
+    private <T> List<T> fanOut(Function<EnrollmentShard, T> query) {
+        List<T> results = new ArrayList<>(shards.length);
+        if (shards.length == 1) {
+            results.add(query.apply(shards[0]));
+            return results;
+        }
+        List<ForkJoinTask<T>> tasks = new ArrayList<>(shards.length - 1);
+        for (int i = 1; i < shards.length; i++) {
+            EnrollmentShard shard = shards[i];
+            tasks.add(ForkJoinPool.commonPool().submit(() -> query.apply(shard)));
+        }
+        results.add(query.apply(shards[0]));
+        for (ForkJoinTask<T> task : tasks) {
+            results.add(task.join());
+        }
+        return results;
+    }
+    
+    /**
+     * Merges the shards' pages into the limit lowest IDs after the cursor.
+     * Each shard gets a cursor that fetches about limit / shards enrollments
+     * at a time, and fetches more only when the merge has consumed them, so
+     * an even spread reads about one batch per shard rather than limit.
+     */
+    private ArrayList<Enrollment> mergePages(PageQuery query, int afterId, int limit) {
+        if (shards.length == 1) {
+            return query.page(shards[0], afterId, limit);
+        }
+        // Sized by what exists rather than by limit, which callers may set to Integer.MAX_VALUE
+        ArrayList<Enrollment> merged = new ArrayList<>(Math.max(Math.min(limit, count()), 0));
+        if (limit <= 0) {
+            return merged;
+        }
+        int batch = (int) (((long) limit + shards.length - 1) / shards.length);
+        PriorityQueue<PageCursor> heads = new PriorityQueue<>(shards.length, PageCursor.BY_HEAD_ID);
+        for (EnrollmentShard shard : shards) {
+            PageCursor cursor = new PageCursor(shard, query, afterId, batch);
+            if (cursor.hasNext()) {
+                heads.add(cursor);
+            }
+        }
+        while (merged.size() < limit && !heads.isEmpty()) {
+            PageCursor cursor = heads.poll();
+            merged.add(cursor.next());
+            if (cursor.hasNext()) {
+                heads.add(cursor);
+            }
+        }
+        return merged;
+    }
+    
+    private static ArrayList<Enrollment> concat(List<ArrayList<Enrollment>> parts) {
+        int size = 0;
+        for (ArrayList<Enrollment> part : parts) {
+            size += part.size();
+        }
+        ArrayList<Enrollment> result = new ArrayList<>(size);
+        for (ArrayList<Enrollment> part : parts) {
+            result.addAll(part);
+        }
+        return result;
+    }
+    
+    /**
+     * Enrollment ID -> shard index entries for the IDs of one stripe
+     */
+    private static final class RouteStripe {
+        final IntIntHashMap shards = new IntIntHashMap();
+        final StampedLock lock = new StampedLock();
+    }
+    
+    /**
+     * Position in one shard's ID-ordered results during mergePages
+     */
+    private static final class PageCursor {
+        static final Comparator<PageCursor> BY_HEAD_ID = Comparator.comparingInt(PageCursor::headId);
+        
+        private final EnrollmentShard shard;
+        private final PageQuery query;
+        private final int batch;
+        private ArrayList<Enrollment> page;
+        private int position;
+        
+        PageCursor(EnrollmentShard shard, PageQuery query, int afterId, int batch) {
+            this.shard = shard;
+            this.query = query;
+            this.batch = batch;
+            this.page = query.page(shard, afterId, batch);
+        }
+        
+        /**
+         * Checks for another enrollment, fetching the next batch once the
+         * current one is used up; a short batch means the shard has no more
+         */
+        boolean hasNext() {
+            if (position < page.size()) {
+                return true;
+            }
+            if (page.size() < batch) {
+                return false;
+            }
+            page = query.page(shard, page.get(page.size() - 1).getId(), batch);
+            position = 0;
+            return !page.isEmpty();
+        }
+        
+        Enrollment next() {
+            return page.get(position++);
+        }
+        
+        int headId() {
+            return page.get(position).getId();
+        }
+    }
+    
+    /**
+     * Read-only view of several lists one after another, built without copying
+     */
+    private static final class ConcatenatedList<E> extends AbstractList<E> {
+        private final List<List<E>> parts;
+        // Elements before each part
+        private final int[] starts;
+        private final int size;
+        
+        ConcatenatedList(List<List<E>> parts) {
+            this.parts = parts;
+            this.starts = new int[parts.size()];
+            int total = 0;
+            for (int i = 0; i < parts.size(); i++) {
+                starts[i] = total;
+                total += parts.get(i).size();
+            }
+            this.size = total;
+        }
+        
+        @Override
+        public E get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            int part = Arrays.binarySearch(starts, index);
+            if (part < 0) {
+                part = -part - 2;
+            } else {
+                // Skip empty parts starting at the same offset
+                while (parts.get(part).isEmpty()) {
+                    part++;
+                }
+            }
+            return parts.get(part).get(index - starts[part]);
+        }
+        
+        @Override
+        public int size() {
+            return size;
+        }
+        
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int part;
+                private Iterator<E> current = parts.isEmpty() ? null : parts.get(0).iterator();
+                
+                @Override
+                public boolean hasNext() {
+                    while (current != null && !current.hasNext()) {
+                        part++;
+                        current = part < parts.size() ? parts.get(part).iterator() : null;
+                    }
+                    return current != null;
+                }
+                
+                @Override
+                public E next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return current.next();
+                }
+            };
+        }
     }
 }
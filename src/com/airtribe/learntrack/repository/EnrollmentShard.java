@@ -0,0 +1,790 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.util.IntIntHashMap;
+import com.airtribe.learntrack.util.IntPostingIndex;
+import com.airtribe.learntrack.util.LongIntHashMap;
+import com.airtribe.learntrack.util.OptimisticReads;
+import com.airtribe.learntrack.util.SortedIntList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * One hash partition of the enrollment data, holding the enrollments of the
+ * students that EnrollmentRepository routes to it.
+ * Records are kept in a pluggable EnrollmentStore (objects by default, or
+ * primitive columns), with a primitive id index mapping each enrollment ID
+ * to its slot in the store, a composite (studentId, courseId) index used for
+ * duplicate-enrollment checks, and per-student and per-course posting lists
+ * of enrollment IDs.
+ * Per-status counts are maintained incrementally on save, update and delete.
+ * IDs of all enrollments and of the enrollments of each status are kept in
+ * sorted order, so the paged queries fetch a page in O(limit).
+ * The store is compacted once freed slots outnumber live records.
+ * Thread-safe: writes take the shard's StampedLock write lock; lookups by id,
+ * student, course or pair and the counts read optimistically; full scans hold
+ * the read lock.
+ * With a WriteAheadLog attached, every change is logged before it is applied.
+ * EnrollmentRepository moves an enrollment between shards by holding both
+ * shards' write locks (see writeLock) and calling the *Locked methods.
+ */
+class EnrollmentShard {
+    private EnrollmentStore store;
+    private IntIntHashMap idIndex;
+    // (studentId, courseId) -> enrollment ID, preferring the ACTIVE enrollment
+    private LongIntHashMap pairIndex;
+    private IntPostingIndex studentIndex;
+    private IntPostingIndex courseIndex;
+    // Enrollment IDs in ascending order, overall and per status ordinal, for keyset pagination
+    private SortedIntList idOrder;
+    private SortedIntList[] statusOrders;
+    private int[] statusCounts;
+    private final StampedLock lock;
+    // Change log, or null while changes are not logged
+    private WriteAheadLog log;
+    // Per snapshot being taken (see beginSnapshot): enrollment ID -> the
+    // enrollment as it was when the snapshot began, or null if absent then;
+    // guarded by the write lock
+    private final ArrayList<HashMap<Integer, Enrollment>> captures;
+    
+    /**
+     * Creates a shard on top of the given storage backend
+     * @param store The store holding the shard's enrollment records
+     */
+    EnrollmentShard(EnrollmentStore store) {
+        this.store = store;
+        this.idIndex = new IntIntHashMap();
+        this.pairIndex = new LongIntHashMap();
+        this.studentIndex = new IntPostingIndex();
+        this.courseIndex = new IntPostingIndex();
+        this.idOrder = new SortedIntList();
+        this.statusOrders = new SortedIntList[EnrollmentStatus.values().length];
+        for (int i = 0; i < statusOrders.length; i++) {
+            statusOrders[i] = new SortedIntList();
+        }
+        this.statusCounts = new int[EnrollmentStatus.values().length];
+        this.lock = new StampedLock();
+        this.captures = new ArrayList<>();
+    }
+    
+    /**
+     * Starts logging every change to a write-ahead log
+     * @param log The log
+     */
+    public void setLog(WriteAheadLog log) {
+        this.log = log;
+    }
+    
+    /**
+     * Saves a new enrollment to the shard
+     * @param enrollment The enrollment to save
+     */
+    public void save(Enrollment enrollment) {
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            logPosition = saveLocked(enrollment);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
+    }
+    
+    /**
+     * Saves a new enrollment while the caller holds the write lock
+     * @return The log position to wait for once the lock is released
+     */
+    long saveLocked(Enrollment enrollment) {
+        capture(enrollment.getId(), -1);
+        long logPosition = logPut(enrollment);
+        int slot = store.insert(enrollment);
+        int id = enrollment.getId();
+        idIndex.put(id, slot);
+        idOrder.add(id);
+        indexKeys(id, enrollment.getStudentId(), enrollment.getCourseId());
+        indexPair(id, enrollment.getStudentId(), enrollment.getCourseId(), enrollment.getStatus());
+        countStatus(id, enrollment.getStatus(), 1);
+        return logPosition;
+    }
+    
+    /**
+     * Finds an enrollment by its ID
+     * @param id The enrollment ID to search for
+     * @return The enrollment if found, null otherwise
+     */
+    public Enrollment findById(int id) {
+        return OptimisticReads.read(lock, () -> enrollmentById(id));
+    }
+    
+    /**
+     * Returns all enrollments in the shard
+     * @return A read-only snapshot of all enrollments; later changes to the
+     *         shard do not affect it
+     */
+    public List<Enrollment> findAll() {
+        long stamp = lock.readLock();
+        try {
+            return store.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Starts a snapshot of the shard as of this call, in O(1), for callers
+     * that hold off their own writers only while it begins. If the store's
+     * snapshots copy the records, the copy is deferred to the returned
+     * supplier: until then, every write first records the enrollment's
+     * earlier state, and the supplier reverts the copy to those states.
+     * @return Supplies the snapshot; must be called exactly once, since the
+     *         shard records earlier states until it is
+     */
+    Supplier<List<Enrollment>> beginSnapshot() {
+        if (!store.snapshotCopies()) {
+            List<Enrollment> snapshot = findAll();
+            return () -> snapshot;
+        }
+        HashMap<Integer, Enrollment> capture = new HashMap<>();
+        long stamp = lock.writeLock();
+        try {
+            captures.add(capture);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return () -> {
+            List<Enrollment> copy;
+            try {
+                copy = findAll();
+            } finally {
+                long writeStamp = lock.writeLock();
+                try {
+                    captures.remove(capture);
+                } finally {
+                    lock.unlockWrite(writeStamp);
+                }
+            }
+            return capture.isEmpty() ? copy : new RevertedList(copy, capture);
+        };
+    }
+    
+    /**
+     * Returns one page of enrollments in ID order
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Enrollment> findAll(int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> findAllById(idOrder.after(afterId, limit)));
+    }
+    
+    /**
+     * Copies the fields of the enrollments following a cursor, in ID order,
+     * into a cursor page's columns without materializing them
+     * @param afterId Only enrollments with a greater ID are copied; 0 starts at the first one
+     * @param page Receives up to its size of enrollments
+     * @return Number of enrollments copied
+     */
+    int copyPage(int afterId, EnrollmentCursor.Page page) {
+        return OptimisticReads.readInt(lock, () -> {
+            int[] ids = idOrder.after(afterId, page.ids.length);
+            for (int i = 0; i < ids.length; i++) {
+                int slot = idIndex.get(ids[i]);
+                page.ids[i] = ids[i];
+                page.studentIds[i] = store.getStudentId(slot);
+                page.courseIds[i] = store.getCourseId(slot);
+                page.epochDays[i] = store.getEpochDay(slot);
+                page.statuses[i] = store.getStatus(slot);
+            }
+            return ids.length;
+        });
+    }
+    
+    /**
+     * Finds all enrollments for a specific student
+     * @param studentId The student ID
+     * @return List of enrollments for the student
+     */
+    public ArrayList<Enrollment> findByStudentId(int studentId) {
+        return OptimisticReads.read(lock, () -> findAllById(studentIndex.get(studentId)));
+    }
+    
+    /**
+     * Returns one page of the enrollments of a student, in ID order
+     * @param studentId The student ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments for the student
+     */
+    public ArrayList<Enrollment> findByStudentId(int studentId, int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> findAllById(studentIndex.page(studentId, afterId, limit)));
+    }
+    
+    /**
+     * Finds all enrollments for a specific course
+     * @param courseId The course ID
+     * @return List of enrollments for the course
+     */
+    public ArrayList<Enrollment> findByCourseId(int courseId) {
+        return OptimisticReads.read(lock, () -> findAllById(courseIndex.get(courseId)));
+    }
+    
+    /**
+     * Returns one page of the enrollments in a course, in ID order
+     * @param courseId The course ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments for the course
+     */
+    public ArrayList<Enrollment> findByCourseId(int courseId, int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> findAllById(courseIndex.page(courseId, afterId, limit)));
+    }
+    
+    /**
+     * Finds all active enrollments for a student
+     * @param studentId The student ID
+     * @return List of active enrollments
+     */
+    public ArrayList<Enrollment> findActiveByStudentId(int studentId) {
+        return OptimisticReads.read(lock, () -> {
+            ArrayList<Enrollment> result = new ArrayList<>();
+            for (int id : studentIndex.get(studentId)) {
+                int slot = idIndex.get(id);
+                if (store.getStatus(slot) == EnrollmentStatus.ACTIVE) {
+                    result.add(store.get(slot));
+                }
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * Returns one page of the active enrollments of a student, in ID order.
+     * Walks the student's enrollments after the cursor until the page is full.
+     * @param studentId The student ID
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit active enrollments
+     */
+    public ArrayList<Enrollment> findActiveByStudentId(int studentId, int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> {
+            ArrayList<Enrollment> result = new ArrayList<>();
+            int[] ids = studentIndex.page(studentId, afterId, limit);
+            while (ids.length > 0 && result.size() < limit) {
+                for (int i = 0; i < ids.length && result.size() < limit; i++) {
+                    int slot = idIndex.get(ids[i]);
+                    if (store.getStatus(slot) == EnrollmentStatus.ACTIVE) {
+                        result.add(store.get(slot));
+                    }
+                }
+                ids = studentIndex.page(studentId, ids[ids.length - 1], limit);
+            }
+            return result;
+        });
+    }
+    
+    /**
+     * Finds enrollment by student and course IDs.
+     * If the pair has an active enrollment, that one is returned.
+     * @param studentId The student ID
+     * @param courseId The course ID
+     * @return The enrollment if found, null otherwise
+     */
+    public Enrollment findByStudentAndCourse(int studentId, int courseId) {
+        return OptimisticReads.read(lock,
+            () -> enrollmentById(pairIndex.get(LongIntHashMap.pack(studentId, courseId))));
+    }
+    
+    /**
+     * Finds all enrollments with a specific status.
+     * Statuses are compared on the store's columns; only matches are materialized.
+     * @param status The status to filter by
+     * @return List of enrollments with the given status
+     */
+    public ArrayList<Enrollment> findByStatus(EnrollmentStatus status) {
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Enrollment> result = new ArrayList<>(statusCounts[status.ordinal()]);
+            int slotCount = store.slotCount();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (store.isOccupied(slot) && store.getStatus(slot) == status) {
+                    result.add(store.get(slot));
+                }
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Returns one page of the enrollments with a specific status, in ID order
+     * @param status The status to filter by
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments with the given status
+     */
+    public ArrayList<Enrollment> findByStatus(EnrollmentStatus status, int afterId, int limit) {
+        return OptimisticReads.read(lock,
+            () -> findAllById(statusOrders[status.ordinal()].after(afterId, limit)));
+    }
+    
+    /**
+     * Deletes an enrollment by ID
+     * @param id The ID of the enrollment to delete
+     * @return true if deleted, false if not found
+     */
+    public boolean delete(int id) {
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            logPosition = deleteLocked(id);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        if (logPosition < 0) {
+            return false;
+        }
+        awaitLogged(logPosition);
+        return true;
+    }
+    
+    /**
+     * Deletes an enrollment while the caller holds the write lock
+     * @return The log position to wait for once the lock is released, or -1 if not found
+     */
+    long deleteLocked(int id) {
+        int slot = idIndex.get(id);
+        if (slot < 0) {
+            return -1;
+        }
+        long logPosition = logDelete(id);
+        removeSlot(id, slot);
+        compactIfSparse();
+        return logPosition;
+    }
+    
+    /**
+     * Deletes every enrollment with a given status in one pass over the store,
+     * compacting at most once at the end. Does not wait for the log, so that
+     * EnrollmentRepository can run shards on pool threads and wait once, on
+     * the calling thread, for all of them.
+     * @param status The status to purge (e.g. CANCELLED)
+     * @param logPosition Raised to the last log position written
+     * @return IDs of the enrollments deleted
+     */
+    int[] deleteByStatus(EnrollmentStatus status, LongAccumulator logPosition) {
+        long stamp = lock.writeLock();
+        try {
+            int[] ids = new int[statusCounts[status.ordinal()]];
+            int deleted = 0;
+            int slotCount = store.slotCount();
+            for (int slot = 0; slot < slotCount; slot++) {
+                if (store.isOccupied(slot) && store.getStatus(slot) == status) {
+                    int id = store.getId(slot);
+                    logPosition.accumulate(logDelete(id));
+                    removeSlot(id, slot);
+                    ids[deleted++] = id;
+                }
+            }
+            compactIfSparse();
+            return ids;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Moves all records to the front of the store, releasing freed slots,
+     * and rebuilds the id index. Linear in the number of slots.
+     */
+    public void compact() {
+        long stamp = lock.writeLock();
+        try {
+            compactStore();
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+    
+    /**
+     * Updates an existing enrollment
+     * @param enrollment The enrollment with updated information
+     * @return true if updated, false if the shard does not hold it
+     */
+    public boolean update(Enrollment enrollment) {
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            int slot = idIndex.get(enrollment.getId());
+            if (slot < 0) {
+                return false;
+            }
+            logPosition = updateSlot(slot, enrollment);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
+        return true;
+    }
+    
+    /**
+     * Updates an enrollment only if its student, course and status are still
+     * those of an earlier read; the student must not change
+     * @param expected The enrollment as read before
+     * @param enrollment The enrollment with updated information
+     * @return true if updated, false if it was deleted or changed meanwhile
+     */
+    public boolean replace(Enrollment expected, Enrollment enrollment) {
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            int slot = idIndex.get(enrollment.getId());
+            if (slot < 0 || store.getStudentId(slot) != expected.getStudentId() ||
+                store.getCourseId(slot) != expected.getCourseId() ||
+                store.getStatus(slot) != expected.getStatus()) {
+                return false;
+            }
+            logPosition = updateSlot(slot, enrollment);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
+        return true;
+    }
+    
+    /**
+     * Returns the total number of enrollments
+     * @return Count of enrollments
+     */
+    public int count() {
+        return OptimisticReads.readInt(lock, () -> store.size());
+    }
+    
+    /**
+     * Returns the count of active enrollments
+     * @return Count of active enrollments
+     */
+    public int countActive() {
+        return OptimisticReads.readInt(lock, () -> statusCounts[EnrollmentStatus.ACTIVE.ordinal()]);
+    }
+    
+    /**
+     * Returns the count of completed enrollments
+     * @return Count of completed enrollments
+     */
+    public int countCompleted() {
+        return OptimisticReads.readInt(lock, () -> statusCounts[EnrollmentStatus.COMPLETED.ordinal()]);
+    }
+    
+    /**
+     * Returns the count of enrollments with a specific status
+     * @param status The status to count
+     * @return Count of enrollments with the given status
+     */
+    public int countByStatus(EnrollmentStatus status) {
+        return OptimisticReads.readInt(lock, () -> statusCounts[status.ordinal()]);
+    }
+    
+    /**
+     * Checks if a student is already enrolled in a course with active status
+     * @param studentId The student ID
+     * @param courseId The course ID
+     * @return true if actively enrolled, false otherwise
+     */
+    public boolean isActivelyEnrolled(int studentId, int courseId) {
+        return OptimisticReads.read(lock, () -> {
+            int slot = idIndex.get(pairIndex.get(LongIntHashMap.pack(studentId, courseId)));
+            return slot >= 0 && store.getStatus(slot) == EnrollmentStatus.ACTIVE;
+        });
+    }
+    
+    /**
+     * Checks if an enrollment with the given ID exists
+     * @param id The enrollment ID
+     * @return true if exists, false otherwise
+     */
+    public boolean exists(int id) {
+        return OptimisticReads.read(lock, () -> idIndex.containsKey(id));
+    }
+    
+    /**
+     * Appends an enrollment's new state to the log, if any. Called under the
+     * write lock before the change is applied, so the log orders each
+     * enrollment's changes as they were applied.
+     * @return The log position to wait for, or 0 if nothing was logged
+     */
+    private long logPut(Enrollment enrollment) {
+        return log == null ? 0 : log.logEnrollment(enrollment);
+    }
+    
+    private long logDelete(int id) {
+        return log == null ? 0 : log.logEnrollmentDelete(id);
+    }
+    
+    /**
+     * Takes the shard's write lock for a change spanning several shards.
+     * Callers lock shards in index order.
+     * @return The stamp to pass to unlockWrite
+     */
+    long writeLock() {
+        return lock.writeLock();
+    }
+    
+    void unlockWrite(long stamp) {
+        lock.unlockWrite(stamp);
+    }
+    
+    /**
+     * Waits, after the write lock is released, until the log is durable up to a position
+     */
+    void awaitLogged(long logPosition) {
+        if (logPosition > 0) {
+            log.sync(logPosition);
+        }
+    }
+    
+    /**
+     * Points the composite index at the enrollment if the pair has no entry yet,
+     * or if the enrollment is active and so takes precedence over the current one.
+     */
+    private void indexPair(int id, int studentId, int courseId, EnrollmentStatus status) {
+        long key = LongIntHashMap.pack(studentId, courseId);
+        int currentId = pairIndex.get(key);
+        if (currentId == id) {
+            return;
+        }
+        int currentSlot = idIndex.get(currentId);
+        if (currentSlot < 0 || status == EnrollmentStatus.ACTIVE ||
+            store.getStatus(currentSlot) != EnrollmentStatus.ACTIVE) {
+            pairIndex.put(key, id);
+        }
+    }
+    
+    /**
+     * Drops the enrollment from the composite index and, if it was the indexed
+     * entry for its pair, promotes another enrollment of the same pair.
+     * Only walks the student's enrollments when the indexed entry itself goes away.
+     */
+    private void unindexPair(int id, int studentId, int courseId) {
+        long key = LongIntHashMap.pack(studentId, courseId);
+        if (pairIndex.get(key) != id) {
+            return;
+        }
+        pairIndex.remove(key);
+        for (int otherId : studentIndex.get(studentId)) {
+            int slot = idIndex.get(otherId);
+            if (otherId != id && store.getCourseId(slot) == courseId) {
+                indexPair(otherId, studentId, courseId, store.getStatus(slot));
+            }
+        }
+    }
+    
+    /**
+     * Applies an update to the record in a slot, under the write lock
+     * @return The log position to wait for once the lock is released
+     */
+    private long updateSlot(int slot, Enrollment enrollment) {
+        int id = enrollment.getId();
+        capture(id, slot);
+        long logPosition = logPut(enrollment);
+        // The store still holds the previously indexed values
+        int oldStudentId = store.getStudentId(slot);
+        int oldCourseId = store.getCourseId(slot);
+        countStatus(id, store.getStatus(slot), -1);
+        store.update(slot, enrollment);
+        countStatus(id, enrollment.getStatus(), 1);
+        
+        if (oldStudentId != enrollment.getStudentId() || oldCourseId != enrollment.getCourseId()) {
+            unindexKeys(id, oldStudentId, oldCourseId);
+            unindexPair(id, oldStudentId, oldCourseId);
+            indexKeys(id, enrollment.getStudentId(), enrollment.getCourseId());
+        }
+        indexPair(id, enrollment.getStudentId(), enrollment.getCourseId(), enrollment.getStatus());
+        return logPosition;
+    }
+    
+    private void removeSlot(int id, int slot) {
+        capture(id, slot);
+        int studentId = store.getStudentId(slot);
+        int courseId = store.getCourseId(slot);
+        countStatus(id, store.getStatus(slot), -1);
+        idIndex.remove(id);
+        idOrder.remove(id);
+        store.free(slot);
+        unindexKeys(id, studentId, courseId);
+        unindexPair(id, studentId, courseId);
+    }
+    
+    /**
+     * Records an enrollment's state for the snapshots being taken, unless
+     * it was already written since they began; called before each write
+     * @param slot The enrollment's slot, or -1 if it is not stored yet
+     */
+    private void capture(int id, int slot) {
+        for (HashMap<Integer, Enrollment> capture : captures) {
+            if (!capture.containsKey(id)) {
+                capture.put(id, slot < 0 ? null : store.get(slot));
+            }
+        }
+    }
+    
+    private void compactStore() {
+        store.compact();
+        idIndex.clear();
+        int slotCount = store.slotCount();
+        for (int slot = 0; slot < slotCount; slot++) {
+            idIndex.put(store.getId(slot), slot);
+        }
+    }
+    
+    private void compactIfSparse() {
+        int freed = store.slotCount() - store.size();
+        if (freed >= AppConstants.COMPACTION_MIN_TOMBSTONES && freed > store.size()) {
+            compactStore();
+        }
+    }
+    
+    private Enrollment enrollmentById(int id) {
+        int slot = idIndex.get(id);
+        return slot < 0 ? null : store.get(slot);
+    }
+    
+    private void indexKeys(int id, int studentId, int courseId) {
+        studentIndex.add(studentId, id);
+        courseIndex.add(courseId, id);
+    }
+    
+    private void unindexKeys(int id, int studentId, int courseId) {
+        studentIndex.remove(studentId, id);
+        courseIndex.remove(courseId, id);
+    }
+    
+    private void countStatus(int id, EnrollmentStatus status, int delta) {
+        if (status != null) {
+            statusCounts[status.ordinal()] += delta;
+            if (delta > 0) {
+                statusOrders[status.ordinal()].add(id);
+            } else {
+                statusOrders[status.ordinal()].remove(id);
+            }
+        }
+    }
+    
+    private ArrayList<Enrollment> findAllById(int[] ids) {
+        ArrayList<Enrollment> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(store.get(idIndex.get(id)));
+        }
+        return result;
+    }
+    
+    /**
+     * A store snapshot taken after its point in time, reverted to it: the
+     * records written since are left out, and those that existed at that
+     * point are appended in their earlier state
+     */
+    private static final class RevertedList extends AbstractList<Enrollment> {
+        private final List<Enrollment> copy;
+        // Positions in copy of the records left out, ascending
+        private final int[] skipped;
+        private final ArrayList<Enrollment> restored;
+        
+        RevertedList(List<Enrollment> copy, Map<Integer, Enrollment> earlier) {
+            this.copy = copy;
+            int[] positions = new int[Math.min(earlier.size(), copy.size())];
+            int count = 0;
+            int position = 0;
+            for (Enrollment enrollment : copy) {
+                // An enrollment moved between shards may be in neither copy or in both
+                if (earlier.containsKey(enrollment.getId())) {
+                    if (count == positions.length) {
+                        positions = Arrays.copyOf(positions, count * 2 + 1);
+                    }
+                    positions[count++] = position;
+                }
+                position++;
+            }
+            this.skipped = Arrays.copyOf(positions, count);
+            this.restored = new ArrayList<>();
+            for (Enrollment enrollment : earlier.values()) {
+                if (enrollment != null) {
+                    restored.add(enrollment);
+                }
+            }
+        }
+        
+        @Override
+        public Enrollment get(int index) {
+            int kept = copy.size() - skipped.length;
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            if (index >= kept) {
+                return restored.get(index - kept);
+            }
+            // Smallest position with index kept records before it
+            int skippedBefore = 0;
+            while (true) {
+                int position = index + skippedBefore;
+                int atOrBelow = upperBound(position);
+                if (atOrBelow == skippedBefore) {
+                    return copy.get(position);
+                }
+                skippedBefore = atOrBelow;
+            }
+        }
+        
+        private int upperBound(int position) {
+            int found = Arrays.binarySearch(skipped, position);
+            return found >= 0 ? found + 1 : -found - 1;
+        }
+        
+        @Override
+        public int size() {
+            return copy.size() - skipped.length + restored.size();
+        }
+        
+        @Override
+        public Iterator<Enrollment> iterator() {
+            return new Iterator<Enrollment>() {
+                private final Iterator<Enrollment> copied = copy.iterator();
+                private int position;
+                private int nextSkipped;
+                private int restoredIndex;
+                
+                @Override
+                public boolean hasNext() {
+                    while (nextSkipped < skipped.length && skipped[nextSkipped] == position) {
+                        copied.next();
+                        position++;
+                        nextSkipped++;
+                    }
+                    return copied.hasNext() || restoredIndex < restored.size();
+                }
+                
+                @Override
+                public Enrollment next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    if (copied.hasNext()) {
+                        position++;
+                        return copied.next();
+                    }
+                    return restored.get(restoredIndex++);
+                }
+            };
+        }
+    }
+}
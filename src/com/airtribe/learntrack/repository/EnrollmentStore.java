@@ -0,0 +1,96 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import java.util.List;
+
+/**
+ * Storage backend for EnrollmentRepository.
+ * Records live in numbered slots. A slot keeps its number until the record
+ * is freed, so the repository's indexes can refer to slots directly.
+ * Field accessors return the values as of the last insert or update of the
+ * slot, which lets the repository scan and maintain its indexes without
+ * materializing Enrollment objects.
+ */
+public interface EnrollmentStore {
+    // Returned by getEpochDay for an enrollment without a date
+    int NO_DATE = Integer.MIN_VALUE;
+    
+    /**
+     * Stores a new record, reusing a freed slot when one is available
+     * @param enrollment The enrollment to store
+     * @return The slot the record was stored in
+     */
+    int insert(Enrollment enrollment);
+    
+    /**
+     * Replaces the record in an occupied slot
+     * @param slot The slot
+     * @param enrollment The enrollment with updated information
+     */
+    void update(int slot, Enrollment enrollment);
+    
+    /**
+     * Frees an occupied slot
+     * @param slot The slot
+     */
+    void free(int slot);
+    
+    /**
+     * Moves all occupied records down to slots [0, size()), keeping their
+     * relative order, and releases the memory held by freed slots.
+     * Slot numbers change, so callers must rebuild any slot references.
+     */
+    void compact();
+    
+    /**
+     * Returns a read-only list of all records in slot order, as of this call.
+     * Later writes do not change the list. Calls without writes in between may
+     * return the same list. Must not run concurrently with writes.
+     * @return The records
+     */
+    List<Enrollment> snapshot();
+    
+    /**
+     * Returns whether snapshot() copies the records, costing O(n) after a
+     * write, rather than sharing them in O(1)
+     * @return true if taking a snapshot copies
+     */
+    boolean snapshotCopies();
+    
+    /**
+     * Returns the record in a slot as an Enrollment
+     * @param slot An occupied slot
+     * @return The stored enrollment, or a copy materialized from the stored fields
+     */
+    Enrollment get(int slot);
+    
+    /**
+     * Returns the number of slots in use or freed; every occupied slot is below it
+     * @return Upper bound of slot numbers
+     */
+    int slotCount();
+    
+    /**
+     * Returns the number of occupied slots
+     * @return Count of stored records
+     */
+    int size();
+    
+    boolean isOccupied(int slot);
+    
+    int getId(int slot);
+    
+    int getStudentId(int slot);
+    
+    int getCourseId(int slot);
+    
+    /**
+     * Returns the enrollment date of the record in a slot as a day count
+     * @param slot An occupied slot
+     * @return Days since 1970-01-01, or NO_DATE if the enrollment has no date
+     */
+    int getEpochDay(int slot);
+    
+    EnrollmentStatus getStatus(int slot);
+}
@@ -0,0 +1,335 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+
+/**
+ * Read-only enrollment table in a binary file that is memory-mapped rather
+ * than loaded, for processes that only query the data.
+ * The file is a 16-byte header (magic, version, record count) followed by
+ * fixed-width 20-byte records in ascending ID order, laid out like
+ * OffHeapEnrollmentStore's: id, studentId, courseId, epoch day and a status
+ * byte, little-endian. Opening maps the file without reading it, so it takes
+ * the same time for any size; queries read the fields straight from the
+ * mapped pages and only materialize the enrollments they return. Since the
+ * mapping is read-only and shared, processes on the same machine that open
+ * the same file share one copy of it in the page cache.
+ * Lookups by ID and ID-ordered pages use binary search; the other queries
+ * scan the records. Thread-safe: the table never changes once opened.
+ * A file larger than 2 GB is mapped in several chunks.
+ */
+public class MappedEnrollmentTable implements Closeable {
+    public static final int RECORD_SIZE = 20;
+    
+    private static final int MAGIC = 0x4C54454E;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    // Enrollments read from the repository per page while writing
+    private static final int WRITE_PAGE_SIZE = 4096;
+    
+    private static final int ID_OFFSET = 0;
+    private static final int STUDENT_ID_OFFSET = 4;
+    private static final int COURSE_ID_OFFSET = 8;
+    private static final int EPOCH_DAY_OFFSET = 12;
+    private static final int STATUS_OFFSET = 16;
+    
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    private static final byte NO_STATUS = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    
+    private final FileChannel channel;
+    private final ByteBuffer[] chunks;
+    private final int size;
+    
+    private MappedEnrollmentTable(FileChannel channel, ByteBuffer[] chunks, int size) {
+        this.channel = channel;
+        this.chunks = chunks;
+        this.size = size;
+    }
+    
+    /**
+     * Writes all enrollments in a repository to a table file, replacing it.
+     * The repository is read a page at a time in ID order, so memory use does
+     * not grow with its size; changes made meanwhile may or may not be included.
+     * The file is written under a temporary name and renamed once complete.
+     * @param file The table file
+     * @param repository The enrollments to write
+     * @return Number of enrollments written
+     * @throws IOException if the file cannot be written
+     */
+    public static int write(Path file, EnrollmentRepository repository) throws IOException {
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        int count = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_PAGE_SIZE * RECORD_SIZE)
+                                          .order(ByteOrder.LITTLE_ENDIAN);
+            long offset = HEADER_SIZE;
+            int afterId = 0;
+            while (true) {
+                ArrayList<Enrollment> page = repository.findAll(afterId, WRITE_PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                for (Enrollment enrollment : page) {
+                    putRecord(buffer, enrollment);
+                }
+                offset = writeFully(out, buffer, offset);
+                count += page.size();
+                afterId = page.get(page.size() - 1).getId();
+            }
+            
+            buffer.putInt(MAGIC);
+            buffer.putInt(VERSION);
+            buffer.putLong(count);
+            writeFully(out, buffer, 0);
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+    
+    /**
+     * Opens a table file for reading
+     * @param file The table file
+     * @return The table; close it to release the file
+     * @throws IOException if the file cannot be read or is not a complete table
+     */
+    public static MappedEnrollmentTable open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw new IOException(file + " is not an enrollment table");
+            }
+            long count = header.getLong();
+            if (count < 0 || count > Integer.MAX_VALUE || channel.size() != HEADER_SIZE + count * RECORD_SIZE) {
+                throw new IOException("Enrollment table " + file + " is incomplete");
+            }
+            int size = (int) count;
+            ByteBuffer[] chunks = new ByteBuffer[(size + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT];
+            for (int i = 0; i < chunks.length; i++) {
+                int records = Math.min(CHUNK_RECORDS, size - (i << CHUNK_SHIFT));
+                MappedByteBuffer chunk = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                     HEADER_SIZE + ((long) i << CHUNK_SHIFT) * RECORD_SIZE,
+                                                     (long) records * RECORD_SIZE);
+                chunks[i] = chunk.order(ByteOrder.LITTLE_ENDIAN);
+            }
+            return new MappedEnrollmentTable(channel, chunks, size);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Returns the number of enrollments in the table
+     * @return Count of records
+     */
+    public int count() {
+        return size;
+    }
+    
+    /**
+     * Finds an enrollment by its ID
+     * @param id The enrollment ID to search for
+     * @return The enrollment if found, null otherwise
+     */
+    public Enrollment findById(int id) {
+        int index = search(id);
+        return index < size && getId(index) == id ? get(index) : null;
+    }
+    
+    /**
+     * Returns one page of enrollments in ID order
+     * @param afterId Cursor: only enrollments with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of enrollments to return
+     * @return Up to limit enrollments; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Enrollment> findAll(int afterId, int limit) {
+        int from = search(afterId);
+        if (from < size && getId(from) == afterId) {
+            from++;
+        }
+        int to = (int) Math.min(size, (long) from + limit);
+        ArrayList<Enrollment> page = new ArrayList<>(Math.max(0, to - from));
+        for (int index = from; index < to; index++) {
+            page.add(get(index));
+        }
+        return page;
+    }
+    
+    /**
+     * Finds all enrollments for a specific student
+     * @param studentId The student ID
+     * @return List of enrollments for the student, in ID order
+     */
+    public ArrayList<Enrollment> findByStudentId(int studentId) {
+        ArrayList<Enrollment> result = new ArrayList<>();
+        for (int index = 0; index < size; index++) {
+            if (getInt(index, STUDENT_ID_OFFSET) == studentId) {
+                result.add(get(index));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Finds all enrollments for a specific course
+     * @param courseId The course ID
+     * @return List of enrollments for the course, in ID order
+     */
+    public ArrayList<Enrollment> findByCourseId(int courseId) {
+        ArrayList<Enrollment> result = new ArrayList<>();
+        for (int index = 0; index < size; index++) {
+            if (getInt(index, COURSE_ID_OFFSET) == courseId) {
+                result.add(get(index));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Finds all enrollments with a specific status
+     * @param status The enrollment status
+     * @return List of enrollments with the status, in ID order
+     */
+    public ArrayList<Enrollment> findByStatus(EnrollmentStatus status) {
+        byte code = statusCode(status);
+        ArrayList<Enrollment> result = new ArrayList<>();
+        for (int index = 0; index < size; index++) {
+            if (getStatusCode(index) == code) {
+                result.add(get(index));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Counts the enrollments of every status in one scan
+     * @return Counts indexed by EnrollmentStatus ordinal
+     */
+    public int[] countByStatus() {
+        int[] counts = new int[STATUSES.length];
+        for (int index = 0; index < size; index++) {
+            byte code = getStatusCode(index);
+            if (code >= 0) {
+                counts[code]++;
+            }
+        }
+        return counts;
+    }
+    
+    /**
+     * Checks if a student has an ACTIVE enrollment in a course
+     * @param studentId The student ID
+     * @param courseId The course ID
+     * @return true if such an enrollment exists
+     */
+    public boolean isActivelyEnrolled(int studentId, int courseId) {
+        byte active = statusCode(EnrollmentStatus.ACTIVE);
+        for (int index = 0; index < size; index++) {
+            if (getInt(index, STUDENT_ID_OFFSET) == studentId && getInt(index, COURSE_ID_OFFSET) == courseId &&
+                getStatusCode(index) == active) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Closes the file. The mapping is released once the garbage collector
+     * reclaims it; the table must not be used afterwards.
+     * @throws IOException if closing fails
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /**
+     * Returns the index of the first record with an ID not below id
+     */
+    private int search(int id) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getId(mid) < id) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+    
+    private Enrollment get(int index) {
+        int epochDay = getInt(index, EPOCH_DAY_OFFSET);
+        LocalDate date = epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+        byte status = getStatusCode(index);
+        return new Enrollment(getId(index), getInt(index, STUDENT_ID_OFFSET), getInt(index, COURSE_ID_OFFSET),
+                              date, status < 0 ? null : STATUSES[status]);
+    }
+    
+    private int getId(int index) {
+        return getInt(index, ID_OFFSET);
+    }
+    
+    private int getInt(int index, int field) {
+        return chunks[index >>> CHUNK_SHIFT].getInt((index & CHUNK_MASK) * RECORD_SIZE + field);
+    }
+    
+    private byte getStatusCode(int index) {
+        return chunks[index >>> CHUNK_SHIFT].get((index & CHUNK_MASK) * RECORD_SIZE + STATUS_OFFSET);
+    }
+    
+    private static byte statusCode(EnrollmentStatus status) {
+        return status == null ? NO_STATUS : (byte) status.ordinal();
+    }
+    
+    private static void putRecord(ByteBuffer buffer, Enrollment enrollment) {
+        LocalDate date = enrollment.getEnrollmentDate();
+        buffer.putInt(enrollment.getId());
+        buffer.putInt(enrollment.getStudentId());
+        buffer.putInt(enrollment.getCourseId());
+        buffer.putInt(date == null ? NO_DATE : (int) date.toEpochDay());
+        buffer.put(statusCode(enrollment.getStatus()));
+        // Pad to 4-byte alignment
+        buffer.put((byte) 0);
+        buffer.putShort((short) 0);
+    }
+    
+    /**
+     * Writes the buffer's contents at an offset and clears it
+     * @return The offset after the written bytes
+     */
+    private static long writeFully(FileChannel out, ByteBuffer buffer, long offset) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            offset += out.write(buffer, offset);
+        }
+        buffer.clear();
+        return offset;
+    }
+}
@@ -0,0 +1,164 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.util.SnapshotArray;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enrollment store that keeps the Enrollment objects themselves.
+ * get returns the stored instance. The indexed fields are also copied into
+ * primitive columns, so scans and index maintenance see the values from the
+ * last insert/update even if the caller has mutated the object since.
+ * The objects are held in a SnapshotArray, so snapshot() copies nothing.
+ */
+public class ObjectEnrollmentStore implements EnrollmentStore {
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    private static final byte NO_STATUS = -1;
+    private static final int INITIAL_CAPACITY = 16;
+    
+    // Freed slots hold null
+    private SnapshotArray<Enrollment> records;
+    private int[] studentIds;
+    private int[] courseIds;
+    private byte[] statuses;
+    private int slotCount;
+    private int size;
+    // Stack of freed slots, reused by insert
+    private int[] freeSlots;
+    private int freeCount;
+    
+    public ObjectEnrollmentStore() {
+        this.records = new SnapshotArray<>();
+        this.studentIds = new int[INITIAL_CAPACITY];
+        this.courseIds = new int[INITIAL_CAPACITY];
+        this.statuses = new byte[INITIAL_CAPACITY];
+        this.freeSlots = new int[INITIAL_CAPACITY];
+    }
+    
+    @Override
+    public int insert(Enrollment enrollment) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == studentIds.length) {
+                resize(slotCount * 2);
+            }
+            slot = slotCount++;
+        }
+        write(slot, enrollment);
+        size++;
+        return slot;
+    }
+    
+    @Override
+    public void update(int slot, Enrollment enrollment) {
+        write(slot, enrollment);
+    }
+    
+    @Override
+    public void free(int slot) {
+        records.set(slot, null);
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+    
+    @Override
+    public void compact() {
+        int live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (records.get(slot) != null) {
+                records.set(live, records.get(slot));
+                studentIds[live] = studentIds[slot];
+                courseIds[live] = courseIds[slot];
+                statuses[live] = statuses[slot];
+                live++;
+            }
+        }
+        records.truncate(live);
+        slotCount = live;
+        freeCount = 0;
+        freeSlots = new int[INITIAL_CAPACITY];
+        resize(Math.max(live, INITIAL_CAPACITY));
+    }
+    
+    @Override
+    public Enrollment get(int slot) {
+        return records.get(slot);
+    }
+    
+    @Override
+    public List<Enrollment> snapshot() {
+        return records.snapshot();
+    }
+    
+    @Override
+    public boolean snapshotCopies() {
+        return false;
+    }
+    
+    @Override
+    public int slotCount() {
+        return slotCount;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isOccupied(int slot) {
+        return records.get(slot) != null;
+    }
+    
+    @Override
+    public int getId(int slot) {
+        return records.get(slot).getId();
+    }
+    
+    @Override
+    public int getStudentId(int slot) {
+        return studentIds[slot];
+    }
+    
+    @Override
+    public int getCourseId(int slot) {
+        return courseIds[slot];
+    }
+    
+    @Override
+    public int getEpochDay(int slot) {
+        LocalDate date = records.get(slot).getEnrollmentDate();
+        return date == null ? NO_DATE : (int) date.toEpochDay();
+    }
+    
+    @Override
+    public EnrollmentStatus getStatus(int slot) {
+        byte status = statuses[slot];
+        return status == NO_STATUS ? null : STATUSES[status];
+    }
+    
+    private void write(int slot, Enrollment enrollment) {
+        if (slot == records.size()) {
+            records.add(enrollment);
+        } else {
+            records.set(slot, enrollment);
+        }
+        studentIds[slot] = enrollment.getStudentId();
+        courseIds[slot] = enrollment.getCourseId();
+        statuses[slot] = enrollment.getStatus() == null ? NO_STATUS : (byte) enrollment.getStatus().ordinal();
+    }
+    
+    private void resize(int capacity) {
+        studentIds = Arrays.copyOf(studentIds, capacity);
+        courseIds = Arrays.copyOf(courseIds, capacity);
+        statuses = Arrays.copyOf(statuses, capacity);
+    }
+}
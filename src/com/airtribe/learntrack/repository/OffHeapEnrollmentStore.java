@@ -0,0 +1,259 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Enrollment store that keeps fixed-width records in direct (off-heap) memory.
+ * Records are 20 bytes: id, studentId, courseId, epoch day (4 bytes each) and
+ * a status byte, padded to 4-byte alignment. Memory is allocated in chunks of
+ * up to CHUNK_RECORDS records. A new chunk starts at FIRST_CHUNK_RECORDS and
+ * doubles, copying only its own records, until it is full size; full chunks
+ * are never copied. An empty or small store (e.g. one shard of many) therefore
+ * holds kilobytes of direct memory, not a whole chunk. The garbage collector
+ * only sees the chunk buffers and the free-slot stack, not the records.
+ * Direct memory is bounded by -XX:MaxDirectMemorySize.
+ */
+public class OffHeapEnrollmentStore implements EnrollmentStore {
+    public static final int RECORD_SIZE = 20;
+    
+    private static final int CHUNK_SHIFT = 20;
+    private static final int CHUNK_RECORDS = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_RECORDS - 1;
+    private static final int FIRST_CHUNK_RECORDS = 1 << 10;
+    
+    private static final int ID_OFFSET = 0;
+    private static final int STUDENT_ID_OFFSET = 4;
+    private static final int COURSE_ID_OFFSET = 8;
+    private static final int EPOCH_DAY_OFFSET = 12;
+    private static final int STATUS_OFFSET = 16;
+    
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    private static final byte NO_STATUS = -1;
+    private static final byte FREE = -2;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    
+    private ByteBuffer[] chunks;
+    private int chunkCount;
+    // Slots the allocated chunks can hold; only the last chunk may be below full size
+    private int capacity;
+    private int slotCount;
+    private int size;
+    // Stack of freed slots, reused by insert
+    private int[] freeSlots;
+    private int freeCount;
+    // Column copy handed out by snapshot(), reused until the next write
+    private ColumnSnapshot snapshot;
+    
+    public OffHeapEnrollmentStore() {
+        this.chunks = new ByteBuffer[4];
+        this.freeSlots = new int[16];
+    }
+    
+    @Override
+    public int insert(Enrollment enrollment) {
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else {
+            if (slotCount == capacity) {
+                grow();
+            }
+            slot = slotCount++;
+        }
+        write(slot, enrollment);
+        size++;
+        return slot;
+    }
+    
+    @Override
+    public void update(int slot, Enrollment enrollment) {
+        write(slot, enrollment);
+    }
+    
+    @Override
+    public void free(int slot) {
+        chunk(slot).put(offset(slot) + STATUS_OFFSET, FREE);
+        snapshot = null;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+    
+    @Override
+    public void compact() {
+        snapshot = null;
+        int live = 0;
+        for (int slot = 0; slot < slotCount; slot++) {
+            if (isOccupied(slot)) {
+                if (live != slot) {
+                    copyRecord(slot, live);
+                }
+                live++;
+            }
+        }
+        slotCount = live;
+        freeCount = 0;
+        freeSlots = new int[16];
+        // Drop chunks that no longer hold records so their direct memory can be reclaimed
+        int neededChunks = (live + CHUNK_RECORDS - 1) >>> CHUNK_SHIFT;
+        Arrays.fill(chunks, neededChunks, chunkCount, null);
+        chunkCount = neededChunks;
+        capacity = chunkCount == 0 ? 0
+            : ((chunkCount - 1) << CHUNK_SHIFT) + chunks[chunkCount - 1].capacity() / RECORD_SIZE;
+    }
+    
+    @Override
+    public Enrollment get(int slot) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        int epochDay = chunk.getInt(offset + EPOCH_DAY_OFFSET);
+        LocalDate date = epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+        return new Enrollment(chunk.getInt(offset + ID_OFFSET),
+                              chunk.getInt(offset + STUDENT_ID_OFFSET),
+                              chunk.getInt(offset + COURSE_ID_OFFSET),
+                              date, getStatus(slot));
+    }
+    
+    /**
+     * Copies the fields of the live records onto the heap into a
+     * ColumnSnapshot, which builds each Enrollment only when it is read.
+     * This is O(n) after a write and holds 17 bytes per record on the heap,
+     * in five primitive arrays the garbage collector need not trace, for as
+     * long as the caller keeps the list. Scans that should not copy at all
+     * use EnrollmentCursor instead. The copy is cached, so repeated listings
+     * without writes in between are free.
+     */
+    @Override
+    public synchronized List<Enrollment> snapshot() {
+        if (snapshot == null) {
+            ColumnSnapshot copy = new ColumnSnapshot(size);
+            int index = 0;
+            for (int slot = 0; slot < slotCount; slot++) {
+                ByteBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                byte status = chunk.get(offset + STATUS_OFFSET);
+                if (status != FREE) {
+                    copy.ids[index] = chunk.getInt(offset + ID_OFFSET);
+                    copy.studentIds[index] = chunk.getInt(offset + STUDENT_ID_OFFSET);
+                    copy.courseIds[index] = chunk.getInt(offset + COURSE_ID_OFFSET);
+                    copy.epochDays[index] = chunk.getInt(offset + EPOCH_DAY_OFFSET);
+                    copy.statuses[index] = status;
+                    index++;
+                }
+            }
+            snapshot = copy;
+        }
+        return snapshot;
+    }
+    
+    @Override
+    public boolean snapshotCopies() {
+        return true;
+    }
+    
+    @Override
+    public int slotCount() {
+        return slotCount;
+    }
+    
+    @Override
+    public int size() {
+        return size;
+    }
+    
+    @Override
+    public boolean isOccupied(int slot) {
+        return chunk(slot).get(offset(slot) + STATUS_OFFSET) != FREE;
+    }
+    
+    @Override
+    public int getId(int slot) {
+        return chunk(slot).getInt(offset(slot) + ID_OFFSET);
+    }
+    
+    @Override
+    public int getStudentId(int slot) {
+        return chunk(slot).getInt(offset(slot) + STUDENT_ID_OFFSET);
+    }
+    
+    @Override
+    public int getCourseId(int slot) {
+        return chunk(slot).getInt(offset(slot) + COURSE_ID_OFFSET);
+    }
+    
+    @Override
+    public int getEpochDay(int slot) {
+        return chunk(slot).getInt(offset(slot) + EPOCH_DAY_OFFSET);
+    }
+    
+    @Override
+    public EnrollmentStatus getStatus(int slot) {
+        byte status = chunk(slot).get(offset(slot) + STATUS_OFFSET);
+        return status < 0 ? null : STATUSES[status];
+    }
+    
+    private void write(int slot, Enrollment enrollment) {
+        snapshot = null;
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        LocalDate date = enrollment.getEnrollmentDate();
+        chunk.putInt(offset + ID_OFFSET, enrollment.getId());
+        chunk.putInt(offset + STUDENT_ID_OFFSET, enrollment.getStudentId());
+        chunk.putInt(offset + COURSE_ID_OFFSET, enrollment.getCourseId());
+        chunk.putInt(offset + EPOCH_DAY_OFFSET, date == null ? NO_DATE : (int) date.toEpochDay());
+        chunk.put(offset + STATUS_OFFSET,
+                  enrollment.getStatus() == null ? NO_STATUS : (byte) enrollment.getStatus().ordinal());
+    }
+    
+    private void copyRecord(int from, int to) {
+        ByteBuffer source = chunk(from);
+        ByteBuffer target = chunk(to);
+        int sourceOffset = offset(from);
+        int targetOffset = offset(to);
+        for (int i = 0; i < STATUS_OFFSET; i += 4) {
+            target.putInt(targetOffset + i, source.getInt(sourceOffset + i));
+        }
+        target.put(targetOffset + STATUS_OFFSET, source.get(sourceOffset + STATUS_OFFSET));
+    }
+    
+    /**
+     * Doubles the last chunk if it is below full size, otherwise adds a new small chunk
+     */
+    private void grow() {
+        int lastRecords = chunkCount == 0 ? CHUNK_RECORDS : chunks[chunkCount - 1].capacity() / RECORD_SIZE;
+        if (lastRecords < CHUNK_RECORDS) {
+            ByteBuffer last = chunks[chunkCount - 1].duplicate();
+            last.clear();
+            ByteBuffer larger = allocate(lastRecords * 2);
+            larger.put(last).clear();
+            chunks[chunkCount - 1] = larger;
+            capacity += lastRecords;
+            return;
+        }
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+        }
+        chunks[chunkCount++] = allocate(FIRST_CHUNK_RECORDS);
+        capacity += FIRST_CHUNK_RECORDS;
+    }
+    
+    private static ByteBuffer allocate(int records) {
+        return ByteBuffer.allocateDirect(records * RECORD_SIZE).order(ByteOrder.nativeOrder());
+    }
+    
+    private ByteBuffer chunk(int slot) {
+        return chunks[slot >>> CHUNK_SHIFT];
+    }
+    
+    private static int offset(int slot) {
+        return (slot & CHUNK_MASK) * RECORD_SIZE;
+    }
+}
@@ -0,0 +1,61 @@
+package com.airtribe.learntrack.repository;
+
+/**
+ * Outcome of WriteAheadLog.recover: how much was loaded from the newest
+ * snapshot and how many logged changes were replayed after it, and how long it took.
+ */
+public class RecoveryResult {
+    private final long snapshotRecords;
+    private final long logRecords;
+    private final long truncatedBytes;
+    private final long elapsedNanos;
+    
+    RecoveryResult(long snapshotRecords, long logRecords, long truncatedBytes, long elapsedNanos) {
+        this.snapshotRecords = snapshotRecords;
+        this.logRecords = logRecords;
+        this.truncatedBytes = truncatedBytes;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /**
+     * Returns the number of entities loaded from the snapshot
+     * @return Count of records, 0 if there was no snapshot
+     */
+    public long getSnapshotRecords() {
+        return snapshotRecords;
+    }
+    
+    /**
+     * Returns the number of changes replayed from the log after the snapshot
+     * @return Count of records
+     */
+    public long getLogRecords() {
+        return logRecords;
+    }
+    
+    /**
+     * Returns the number of log bytes that were not replayed because they did
+     * not hold complete, undamaged records; a segment other than the last one
+     * that was cut off on an earlier start is counted again
+     * @return Count of bytes, 0 if every segment was intact
+     */
+    public long getTruncatedBytes() {
+        return truncatedBytes;
+    }
+    
+    /**
+     * Returns whether any saved data was found
+     * @return true if a snapshot or logged change was loaded
+     */
+    public boolean hasData() {
+        return snapshotRecords > 0 || logRecords > 0;
+    }
+    
+    /**
+     * Returns the time taken to load the snapshot and replay the log
+     * @return Elapsed time in milliseconds
+     */
+    public long getElapsedMillis() {
+        return elapsedNanos / 1_000_000;
+    }
+}
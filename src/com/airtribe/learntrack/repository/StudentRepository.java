@@ -1,17 +1,71 @@
 package com.airtribe.learntrack.repository;
 
+import com.airtribe.learntrack.constants.AppConstants;
 import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.util.IntIntHashMap;
+import com.airtribe.learntrack.util.IntPostingIndex;
+import com.airtribe.learntrack.util.OptimisticReads;
+import com.airtribe.learntrack.util.SnapshotArray;
+import com.airtribe.learntrack.util.SortedIntList;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.HashMap;
+import java.util.Objects;
+import java.util.concurrent.locks.StampedLock;
 
 /**
  * Repository for managing Student data storage and retrieval.
- * Uses ArrayList for in-memory storage.
+ * Uses ArrayList for in-memory storage, with a primitive id index
+ * mapping each student ID to its position in the list. Active counts are
+ * maintained incrementally on save, update and delete, and students are
+ * indexed by batch for cohort queries and bulk operations.
+ * IDs of all students and of active students are also kept in sorted order,
+ * so the paged queries fetch a page in O(limit) however deep it is.
+ * Deletes leave a null tombstone in the list; the list is compacted once
+ * tombstones outnumber live students.
+ * Thread-safe: writes take a StampedLock's write lock, lookups by id and
+ * counts read optimistically, and scans hold the read lock.
+ * With a WriteAheadLog attached, every change is logged before it is applied.
  */
 public class StudentRepository {
-    private ArrayList<Student> students;
+    // Deleted students leave a null tombstone until the next compaction; snapshots
+    // of this array back findAll
+    private SnapshotArray<Student> students;
+    private IntIntHashMap idIndex;
+    // Student IDs in ascending order, for keyset pagination
+    private SortedIntList idOrder;
+    private SortedIntList activeOrder;
+    // id -> 1 if the student was active when last saved or updated, 0 otherwise
+    private IntIntHashMap activeFlags;
+    private int activeCount;
+    // Batch name -> small int code used as the key of batchIndex
+    private HashMap<String, Integer> batchCodes;
+    private IntPostingIndex batchIndex;
+    // Batch each student is currently indexed under, parallel to the students list
+    private ArrayList<String> indexedBatches;
+    private final StampedLock lock;
+    // Change log, or null while changes are not logged
+    private WriteAheadLog log;
     
     public StudentRepository() {
-        this.students = new ArrayList<>();
+        this.students = new SnapshotArray<>();
+        this.idIndex = new IntIntHashMap();
+        this.idOrder = new SortedIntList();
+        this.activeOrder = new SortedIntList();
+        this.activeFlags = new IntIntHashMap();
+        this.batchCodes = new HashMap<>();
+        this.batchIndex = new IntPostingIndex();
+        this.indexedBatches = new ArrayList<>();
+        this.lock = new StampedLock();
+    }
+    
+    /**
+     * Starts logging every change to a write-ahead log. Call before the
+     * repository is shared between threads.
+     * @param log The log
+     */
+    public void setLog(WriteAheadLog log) {
+        this.log = log;
     }
     
     /**
@@ -19,7 +73,20 @@ public class StudentRepository {
      * @param student The student to save
      */
     public void save(Student student) {
-        students.add(student);
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            logPosition = logPut(student);
+            idIndex.put(student.getId(), students.size());
+            students.add(student);
+            idOrder.add(student.getId());
+            trackActive(student);
+            indexedBatches.add(student.getBatch());
+            indexBatch(student.getId(), student.getBatch());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
     }
     
     /**
@@ -28,20 +95,31 @@ public class StudentRepository {
      * @return The student if found, null otherwise
      */
     public Student findById(int id) {
-        for (Student student : students) {
-            if (student.getId() == id) {
-                return student;
-            }
-        }
-        return null;
+        return OptimisticReads.read(lock, () -> studentById(id));
     }
     
     /**
      * Returns all students in the repository
-     * @return A copy of the students list
+     * @return A read-only snapshot of the students, taken in O(1) without copying;
+     *         later changes to the repository do not affect it
      */
-    public ArrayList<Student> findAll() {
-        return new ArrayList<>(students);
+    public List<Student> findAll() {
+        long stamp = lock.readLock();
+        try {
+            return students.snapshot();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Returns one page of students in ID order
+     * @param afterId Cursor: only students with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of students to return
+     * @return Up to limit students; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Student> findAll(int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> studentsById(idOrder.after(afterId, limit)));
     }
     
     /**
@@ -49,13 +127,29 @@ public class StudentRepository {
      * @return List of active students
      */
     public ArrayList<Student> findAllActive() {
-        ArrayList<Student> activeStudents = new ArrayList<>();
-        for (Student student : students) {
-            if (student.isActive()) {
-                activeStudents.add(student);
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Student> activeStudents = new ArrayList<>();
+            for (int i = 0; i < students.size(); i++) {
+                Student student = students.get(i);
+                if (student != null && student.isActive()) {
+                    activeStudents.add(student);
+                }
             }
+            return activeStudents;
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return activeStudents;
+    }
+    
+    /**
+     * Returns one page of active students in ID order
+     * @param afterId Cursor: only students with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of students to return
+     * @return Up to limit active students
+     */
+    public ArrayList<Student> findAllActive(int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> studentsById(activeOrder.after(afterId, limit)));
     }
     
     /**
@@ -64,13 +158,99 @@ public class StudentRepository {
      * @return List of students in the batch
      */
     public ArrayList<Student> findByBatch(String batch) {
-        ArrayList<Student> result = new ArrayList<>();
-        for (Student student : students) {
-            if (batch.equals(student.getBatch())) {
-                result.add(student);
+        long stamp = lock.readLock();
+        try {
+            ArrayList<Student> result = new ArrayList<>();
+            Integer code = batchCodes.get(batch);
+            if (code == null) {
+                return result;
             }
+            for (int id : batchIndex.get(code)) {
+                result.add(studentById(id));
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
         }
-        return result;
+    }
+    
+    /**
+     * Returns one page of the students in a batch, in ID order
+     * @param batch The batch name to search for
+     * @param afterId Cursor: only students with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of students to return
+     * @return Up to limit students in the batch
+     */
+    public ArrayList<Student> findByBatch(String batch, int afterId, int limit) {
+        return OptimisticReads.read(lock, () -> {
+            Integer code = batchCodes.get(batch);
+            return studentsById(code == null ? new int[0] : batchIndex.page(code, afterId, limit));
+        });
+    }
+    
+    /**
+     * Deactivates every student in a batch in one pass over the batch index
+     * @param batch The batch name
+     * @return Number of students that were active and are now deactivated
+     */
+    public int deactivateBatch(String batch) {
+        long logPosition = 0;
+        int deactivated = 0;
+        long stamp = lock.writeLock();
+        try {
+            Integer code = batchCodes.get(batch);
+            if (code == null) {
+                return 0;
+            }
+            for (int id : batchIndex.get(code)) {
+                int index = idIndex.get(id);
+                if (students.get(index).isActive()) {
+                    Student student = new Student(students.get(index));
+                    student.setActive(false);
+                    logPosition = logPut(student);
+                    students.set(index, student);
+                    trackActive(student);
+                    deactivated++;
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
+        return deactivated;
+    }
+    
+    /**
+     * Moves every student of one batch into another batch. The batch index
+     * is updated with a single merge instead of one update per student.
+     * @param fromBatch The current batch name
+     * @param toBatch The new batch name
+     * @return Number of students moved
+     */
+    public int moveBatch(String fromBatch, String toBatch) {
+        long logPosition = 0;
+        int[] ids;
+        long stamp = lock.writeLock();
+        try {
+            Integer fromCode = batchCodes.get(fromBatch);
+            if (fromCode == null || toBatch == null || fromBatch.equals(toBatch)) {
+                return 0;
+            }
+            ids = batchIndex.removeKey(fromCode);
+            for (int id : ids) {
+                int index = idIndex.get(id);
+                Student student = new Student(students.get(index));
+                student.setBatch(toBatch);
+                logPosition = logPut(student);
+                students.set(index, student);
+                indexedBatches.set(index, toBatch);
+            }
+            batchIndex.addAll(batchCode(toBatch), ids);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        awaitLogged(logPosition);
+        return ids.length;
     }
     
     /**
@@ -79,12 +259,31 @@ public class StudentRepository {
      * @return true if deleted, false if not found
      */
     public boolean delete(int id) {
-        Student student = findById(id);
-        if (student != null) {
-            students.remove(student);
-            return true;
+        long logPosition;
+        long stamp = lock.writeLock();
+        try {
+            int index = idIndex.get(id);
+            if (index < 0) {
+                return false;
+            }
+            logPosition = log == null ? 0 : log.logStudentDelete(id);
+            idIndex.remove(id);
+            if (activeFlags.remove(id) == 1) {
+                activeCount--;
+            }
+            idOrder.remove(id);
+            activeOrder.remove(id);
+            students.set(index, null);
+            unindexBatch(id, indexedBatches.set(index, null));
+            int tombstones = students.size() - students.liveCount();
+            if (tombstones >= AppConstants.COMPACTION_MIN_TOMBSTONES && tombstones > students.liveCount()) {
+                removeTombstones();
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return false;
+        awaitLogged(logPosition);
+        return true;
     }
     
     /**
@@ -92,11 +291,24 @@ public class StudentRepository {
      * @param student The student with updated information
      */
     public void update(Student student) {
-        Student existing = findById(student.getId());
-        if (existing != null) {
-            int index = students.indexOf(existing);
-            students.set(index, student);
+        long logPosition = 0;
+        long stamp = lock.writeLock();
+        try {
+            int index = idIndex.get(student.getId());
+            if (index >= 0) {
+                logPosition = logPut(student);
+                students.set(index, student);
+                trackActive(student);
+                String previousBatch = indexedBatches.set(index, student.getBatch());
+                if (!Objects.equals(previousBatch, student.getBatch())) {
+                    unindexBatch(student.getId(), previousBatch);
+                    indexBatch(student.getId(), student.getBatch());
+                }
+            }
+        } finally {
+            lock.unlockWrite(stamp);
         }
+        awaitLogged(logPosition);
     }
     
     /**
@@ -104,7 +316,7 @@ public class StudentRepository {
      * @return Count of students
      */
     public int count() {
-        return students.size();
+        return OptimisticReads.readInt(lock, () -> students.liveCount());
     }
     
     /**
@@ -112,13 +324,29 @@ public class StudentRepository {
      * @return Count of active students
      */
     public int countActive() {
-        int count = 0;
-        for (Student student : students) {
-            if (student.isActive()) {
-                count++;
-            }
+        return OptimisticReads.readInt(lock, () -> activeCount);
+    }
+    
+    /**
+     * Returns the count of inactive students
+     * @return Count of inactive students
+     */
+    public int countInactive() {
+        return OptimisticReads.readInt(lock, () -> students.liveCount() - activeCount);
+    }
+    
+    /**
+     * Removes tombstones left by deletes and rebuilds the id index.
+     * Runs in time linear in the list size; called automatically by delete
+     * once tombstones outnumber live students.
+     */
+    public void compact() {
+        long stamp = lock.writeLock();
+        try {
+            removeTombstones();
+        } finally {
+            lock.unlockWrite(stamp);
         }
-        return count;
     }
     
     /**
@@ -127,6 +355,88 @@ public class StudentRepository {
      * @return true if exists, false otherwise
      */
     public boolean exists(int id) {
-        return findById(id) != null;
+        return OptimisticReads.read(lock, () -> idIndex.containsKey(id));
+    }
+    
+    private Student studentById(int id) {
+        int index = idIndex.get(id);
+        return index < 0 ? null : students.get(index);
+    }
+    
+    private ArrayList<Student> studentsById(int[] ids) {
+        ArrayList<Student> result = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            result.add(studentById(id));
+        }
+        return result;
+    }
+    
+    private void removeTombstones() {
+        int live = 0;
+        for (int i = 0; i < students.size(); i++) {
+            Student student = students.get(i);
+            if (student != null) {
+                students.set(live, student);
+                indexedBatches.set(live, indexedBatches.get(i));
+                idIndex.put(student.getId(), live);
+                live++;
+            }
+        }
+        students.truncate(live);
+        indexedBatches.subList(live, indexedBatches.size()).clear();
+        indexedBatches.trimToSize();
+    }
+    
+    /**
+     * Appends a student's new state to the log, if any. Called under the write
+     * lock before the change is applied, so the log orders each student's
+     * changes as they were applied.
+     * @return The log position to wait for, or 0 if nothing was logged
+     */
+    private long logPut(Student student) {
+        return log == null ? 0 : log.logStudent(student);
+    }
+    
+    /**
+     * Waits, after the write lock is released, until the log is durable up to a position
+     */
+    private void awaitLogged(long logPosition) {
+        if (logPosition > 0) {
+            log.sync(logPosition);
+        }
+    }
+    
+    private void trackActive(Student student) {
+        int wasActive = activeFlags.put(student.getId(), student.isActive() ? 1 : 0);
+        if (wasActive == 1) {
+            activeCount--;
+        }
+        if (student.isActive()) {
+            activeCount++;
+            activeOrder.add(student.getId());
+        } else {
+            activeOrder.remove(student.getId());
+        }
+    }
+    
+    private void indexBatch(int id, String batch) {
+        if (batch != null) {
+            batchIndex.add(batchCode(batch), id);
+        }
+    }
+    
+    private void unindexBatch(int id, String batch) {
+        if (batch != null) {
+            batchIndex.remove(batchCodes.get(batch), id);
+        }
+    }
+    
+    private int batchCode(String batch) {
+        Integer code = batchCodes.get(batch);
+        if (code == null) {
+            code = batchCodes.size();
+            batchCodes.put(batch, code);
+        }
+        return code;
     }
 }
@@ -0,0 +1,939 @@
+package com.airtribe.learntrack.repository;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.enums.LogSyncMode;
+import com.airtribe.learntrack.util.IdGenerator;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+/**
+ * Durable append-only log of every save, update and delete made to the three
+ * repositories, with periodic snapshots so that startup replays only the log
+ * written since the newest one.
+ * A repository appends the record while holding its write lock, so the log has
+ * each entity's changes in the order they were applied. It waits for
+ * durability only after releasing the lock.
+ * Group commit: records collect in a buffer while a background thread writes
+ * the previous batch through a FileChannel and forces it, so all writers that
+ * arrive during one force() share the next one. A thread making many changes
+ * in a row can also defer its waits between beginGroup and endGroup, and wait
+ * once for all of them.
+ * Each record is its payload length and CRC32C (4 bytes each), then the
+ * payload: a type byte, the entity ID and, for a save or update, the entity's
+ * fields. Records only carry whole entity states, so replaying a record that
+ * is already reflected in the data is harmless.
+ * Files live in one directory and are named by their log position (the
+ * number of log bytes before them): segments learntrack-POSITION.wal and
+ * snapshots learntrack-POSITION.snapshot. A snapshot holds the data as of at
+ * least its position, as save records; recovery loads it and replays the
+ * segments from that position on. Replay stops at the first incomplete or
+ * corrupt record of the last segment, which is what a crash in the middle of
+ * a write leaves, and cuts the file there.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final byte STUDENT_PUT = 1;
+    private static final byte STUDENT_DELETE = 2;
+    private static final byte COURSE_PUT = 3;
+    private static final byte COURSE_DELETE = 4;
+    private static final byte ENROLLMENT_PUT = 5;
+    private static final byte ENROLLMENT_DELETE = 6;
+    
+    private static final int HEADER_SIZE = 8;
+    // A longer payload can only come from a corrupt header
+    private static final int MAX_RECORD_SIZE = 1 << 26;
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    private static final byte NO_STATUS = -1;
+    private static final int NO_DATE = Integer.MIN_VALUE;
+    private static final int NO_STRING = -1;
+    
+    private static final String FILE_PREFIX = "learntrack-";
+    private static final String SEGMENT_SUFFIX = ".wal";
+    private static final String SNAPSHOT_SUFFIX = ".snapshot";
+    private static final String TEMPORARY_SUFFIX = ".tmp";
+    // Snapshot header: magic, version, log position, last reserved student,
+    // course and enrollment IDs, record count
+    private static final int SNAPSHOT_MAGIC = 0x4C54534E;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int SNAPSHOT_HEADER_SIZE = 36;
+    
+    // Waits deferred by the current thread between beginGroup and endGroup
+    private static final ThreadLocal<Group> groups = ThreadLocal.withInitial(Group::new);
+    // Per-thread buffer each record is encoded in before it is copied into the shared buffer
+    private static final ThreadLocal<Encoder> encoders = ThreadLocal.withInitial(Encoder::new);
+    
+    private final Path directory;
+    private final LogSyncMode syncMode;
+    private final ReentrantLock lock;
+    // Signalled when the flusher has work: the first record of a batch (unless
+    // in INTERVAL mode), a full buffer, or close
+    private final Condition dataAvailable;
+    // Signalled when the flusher takes a batch, freeing buffer space, when a
+    // batch is durable, and when a roll ends
+    private final Condition flushed;
+    // The segment being appended to, and the log position of its first byte
+    private FileChannel channel;
+    private long segmentStart;
+    // Records appended since the flusher last took a batch
+    private ByteBuffer active;
+    // The other buffer; null while the flusher is writing it
+    private ByteBuffer spare;
+    // Log positions: the end of the last appended record, and the end of the
+    // data known to be durable (or, in NONE mode, written)
+    private long appendedPosition;
+    private long durablePosition;
+    private boolean flushRequested;
+    // Set while roll switches segments; appends wait
+    private boolean rolling;
+    private boolean closed;
+    private IOException failure;
+    private Thread flusher;
+    
+    /**
+     * Creates a log kept in a directory. Call recover, then attach.
+     * @param directory The directory for log segments and snapshots; created if missing
+     * @param syncMode When records are forced to disk
+     * @throws IOException if the directory cannot be created
+     */
+    public WriteAheadLog(Path directory, LogSyncMode syncMode) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.syncMode = syncMode;
+        this.lock = new ReentrantLock();
+        this.dataAvailable = lock.newCondition();
+        this.flushed = lock.newCondition();
+        this.active = ByteBuffer.allocateDirect(AppConstants.WAL_BUFFER_SIZE);
+        this.spare = ByteBuffer.allocateDirect(AppConstants.WAL_BUFFER_SIZE);
+    }
+    
+    /**
+     * Loads the newest snapshot into repositories that have no log attached
+     * yet, replays the log segments written after it and cuts off a torn tail
+     * left by a crash. A segment other than the last one is normally complete,
+     * since roll forces it before switching; if one ends in a damaged record
+     * anyway, it is cut off there too and replay continues with the next
+     * segment, losing only the changes in the cut-off bytes. The result
+     * reports how many bytes were cut off, now or (as the gap before the next
+     * segment) on an earlier start. Leftovers of an interrupted
+     * checkpoint are removed. The ID sequences are then advanced past every
+     * ID in use before the restart, so IDs of deleted entities are not issued
+     * again.
+     * @return What was loaded
+     * @throws IOException if a file cannot be read, the snapshot is damaged or
+     *         the log following it is missing
+     */
+    public RecoveryResult recover(StudentRepository students, CourseRepository courses,
+                                  EnrollmentRepository enrollments) throws IOException {
+        long start = System.nanoTime();
+        TreeMap<Long, Path> snapshots = new TreeMap<>();
+        TreeMap<Long, Path> segments = new TreeMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (name.endsWith(TEMPORARY_SUFFIX)) {
+                    Files.delete(file);
+                } else if (name.endsWith(SNAPSHOT_SUFFIX)) {
+                    snapshots.put(parsePosition(name, SNAPSHOT_SUFFIX), file);
+                } else if (name.endsWith(SEGMENT_SUFFIX)) {
+                    segments.put(parsePosition(name, SEGMENT_SUFFIX), file);
+                }
+            }
+        }
+        
+        // Highest student, course and enrollment ID in use
+        int[] lastIds = new int[3];
+        long[] counter = new long[1];
+        long position = 0;
+        long snapshotRecords = 0;
+        if (!snapshots.isEmpty()) {
+            position = snapshots.lastKey();
+            snapshotRecords = loadSnapshot(snapshots.lastEntry().getValue(), students, courses, enrollments, lastIds);
+            deleteBefore(snapshots, position);
+        }
+        // Segments before the snapshot remain if a checkpoint was interrupted
+        deleteBefore(segments, position);
+        
+        long logRecords = 0;
+        long truncatedBytes = 0;
+        for (Map.Entry<Long, Path> segment : segments.entrySet()) {
+            if (segment.getKey() > position && segment.getKey() != segments.firstKey()) {
+                // The previous segment's tail was cut off on an earlier start
+                truncatedBytes += segment.getKey() - position;
+                position = segment.getKey();
+            }
+            if (segment.getKey() != position) {
+                throw new IOException("Log data between positions " + position + " and " + segment.getKey()
+                                      + " is missing");
+            }
+            try (FileChannel in = FileChannel.open(segment.getValue(), StandardOpenOption.READ,
+                                                   StandardOpenOption.WRITE)) {
+                counter[0] = 0;
+                long end = applyRecords(in, 0, Long.MAX_VALUE, students, courses, enrollments, lastIds, counter);
+                logRecords += counter[0];
+                long size = in.size();
+                if (end < size) {
+                    truncatedBytes += size - end;
+                    in.truncate(end);
+                    in.force(false);
+                }
+                // The next segment is named after this one's original end, so
+                // only the last segment's end moves back with a truncation
+                position += segment.getKey() == segments.lastKey() ? end : size;
+            }
+        }
+        
+        // Continue the last segment, or start one where the snapshot ends
+        segmentStart = segments.isEmpty() ? position : segments.lastKey();
+        channel = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE);
+        appendedPosition = position;
+        durablePosition = position;
+        IdGenerator.advanceStudentIds(lastIds[0]);
+        IdGenerator.advanceCourseIds(lastIds[1]);
+        IdGenerator.advanceEnrollmentIds(lastIds[2]);
+        return new RecoveryResult(snapshotRecords, logRecords, truncatedBytes, System.nanoTime() - start);
+    }
+    
+    /**
+     * Starts logging every later change made to the repositories. Call after
+     * recover and before the repositories are shared between threads.
+     */
+    public void attach(StudentRepository students, CourseRepository courses, EnrollmentRepository enrollments) {
+        flusher = new Thread(this::flushLoop, "learntrack-wal");
+        flusher.setDaemon(true);
+        flusher.start();
+        students.setLog(this);
+        courses.setLog(this);
+        enrollments.setLog(this);
+    }
+    
+    /**
+     * Returns the log position after the last appended record
+     * @return Number of log bytes written since the log was created
+     */
+    public long position() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Starts a new segment, so that everything before the returned position
+     * can later be dropped by writeSnapshot. Waits until all records appended
+     * so far are written; appends wait while the segment is switched.
+     * @return The log position where the new segment starts
+     * @throws IOException if the new segment cannot be created
+     */
+    public long roll() throws IOException {
+        lock.lock();
+        try {
+            checkWritable();
+            rolling = true;
+            try {
+                while (active.position() > 0 || spare == null) {
+                    flushRequested = true;
+                    dataAvailable.signal();
+                    flushed.awaitUninterruptibly();
+                    checkWritable();
+                }
+                if (appendedPosition == segmentStart) {
+                    return segmentStart;
+                }
+                FileChannel next = FileChannel.open(segmentPath(appendedPosition), StandardOpenOption.CREATE,
+                                                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+                channel.force(false);
+                channel.close();
+                channel = next;
+                segmentStart = appendedPosition;
+                forceDirectory();
+                return segmentStart;
+            } finally {
+                rolling = false;
+                flushed.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Writes a snapshot and then deletes the segments and snapshots it makes
+     * obsolete. The data must have been read after roll returned position,
+     * so it reflects every record before it; records after it that are also
+     * reflected are replayed harmlessly. The snapshot is written to a
+     * temporary file and renamed once complete, so a crash never leaves a
+     * partial snapshot in place.
+     * @param position The position returned by roll
+     * @param enrollments A fresh cursor; enrollments are streamed from it
+     *        without being materialized
+     * @throws IOException if the snapshot cannot be written; the log is kept intact
+     */
+    public void writeSnapshot(long position, List<Student> students, List<Course> courses,
+                              EnrollmentCursor enrollments) throws IOException {
+        Path file = directory.resolve(FILE_PREFIX + format(position) + SNAPSHOT_SUFFIX);
+        Path temporary = directory.resolve(file.getFileName() + TEMPORARY_SUFFIX);
+        long count = 0;
+        try (FileChannel out = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                                                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(AppConstants.WAL_BUFFER_SIZE);
+            // The header is written last, once the record count is known
+            buffer.position(SNAPSHOT_HEADER_SIZE);
+            long offset = 0;
+            for (Student student : students) {
+                offset = put(out, buffer, offset, encodeStudent(student));
+                count++;
+            }
+            for (Course course : courses) {
+                offset = put(out, buffer, offset, encodeCourse(course));
+                count++;
+            }
+            while (enrollments.next()) {
+                for (int i = 0; i < enrollments.size(); i++) {
+                    offset = put(out, buffer, offset,
+                                 encodeEnrollment(enrollments.getId(i), enrollments.getStudentId(i),
+                                                  enrollments.getCourseId(i), enrollments.getEpochDay(i),
+                                                  enrollments.getStatus(i)));
+                    count++;
+                }
+            }
+            writeFully(out, buffer, offset);
+            
+            // Read after the data, so no ID in it is above these
+            int lastStudentId = IdGenerator.lastReservedStudentId();
+            int lastCourseId = IdGenerator.lastReservedCourseId();
+            int lastEnrollmentId = IdGenerator.lastReservedEnrollmentId();
+            
+            buffer.clear();
+            buffer.putInt(SNAPSHOT_MAGIC);
+            buffer.putInt(SNAPSHOT_VERSION);
+            buffer.putLong(position);
+            buffer.putInt(lastStudentId);
+            buffer.putInt(lastCourseId);
+            buffer.putInt(lastEnrollmentId);
+            buffer.putLong(count);
+            writeFully(out, buffer, 0);
+            out.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory();
+        
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, FILE_PREFIX + "*")) {
+            for (Path obsolete : files) {
+                String name = obsolete.getFileName().toString();
+                if ((name.endsWith(SEGMENT_SUFFIX) && parsePosition(name, SEGMENT_SUFFIX) < position) ||
+                    (name.endsWith(SNAPSHOT_SUFFIX) && parsePosition(name, SNAPSHOT_SUFFIX) < position)) {
+                    Files.delete(obsolete);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Defers the calling thread's durability waits until the matching endGroup.
+     * Groups nest; only the outermost endGroup waits.
+     */
+    public static void beginGroup() {
+        groups.get().depth++;
+    }
+    
+    /**
+     * Ends a group, waiting once until every change the thread made since the
+     * outermost beginGroup is durable
+     */
+    public static void endGroup() {
+        Group group = groups.get();
+        if (--group.depth == 0 && group.log != null) {
+            WriteAheadLog log = group.log;
+            long position = group.position;
+            group.log = null;
+            group.position = 0;
+            log.awaitDurable(position);
+        }
+    }
+    
+    /**
+     * Appends the save or update of a student
+     * @return The log position to pass to sync
+     */
+    long logStudent(Student student) {
+        return append(encodeStudent(student));
+    }
+    
+    long logStudentDelete(int id) {
+        return logDelete(STUDENT_DELETE, id);
+    }
+    
+    long logCourse(Course course) {
+        return append(encodeCourse(course));
+    }
+    
+    long logCourseDelete(int id) {
+        return logDelete(COURSE_DELETE, id);
+    }
+    
+    long logEnrollment(Enrollment enrollment) {
+        return append(encodeEnrollment(enrollment));
+    }
+    
+    long logEnrollmentDelete(int id) {
+        return logDelete(ENROLLMENT_DELETE, id);
+    }
+    
+    /**
+     * Waits, in SYNC mode, until the log is durable up to a position returned
+     * by an append; inside a group the wait is deferred to endGroup
+     */
+    void sync(long position) {
+        Group group = groups.get();
+        if (group.depth > 0) {
+            group.log = this;
+            group.position = Math.max(group.position, position);
+            return;
+        }
+        awaitDurable(position);
+    }
+    
+    /**
+     * Writes and forces everything appended so far, then closes the current
+     * segment. Changes attempted afterwards fail. Does nothing if already closed.
+     * @throws IOException if the background writer or the final force failed
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            boolean interrupted = false;
+            while (flusher.isAlive()) {
+                try {
+                    flusher.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (channel == null) {
+            return;
+        }
+        try {
+            if (failure != null) {
+                throw failure;
+            }
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+    }
+    
+    private static ByteBuffer encodeStudent(Student student) {
+        Encoder encoder = encoders.get();
+        encoder.begin(STUDENT_PUT, student.getId());
+        encoder.putString(student.getFirstName());
+        encoder.putString(student.getLastName());
+        encoder.putString(student.getEmail());
+        encoder.putString(student.getBatch());
+        encoder.putByte(student.isActive() ? (byte) 1 : 0);
+        return encoder.finish();
+    }
+    
+    private static ByteBuffer encodeCourse(Course course) {
+        Encoder encoder = encoders.get();
+        encoder.begin(COURSE_PUT, course.getId());
+        encoder.putString(course.getCourseName());
+        encoder.putString(course.getDescription());
+        encoder.putInt(course.getDurationInWeeks());
+        encoder.putByte(course.isActive() ? (byte) 1 : 0);
+        return encoder.finish();
+    }
+    
+    private static ByteBuffer encodeEnrollment(Enrollment enrollment) {
+        LocalDate date = enrollment.getEnrollmentDate();
+        return encodeEnrollment(enrollment.getId(), enrollment.getStudentId(), enrollment.getCourseId(),
+                                date == null ? NO_DATE : (int) date.toEpochDay(), enrollment.getStatus());
+    }
+    
+    private static ByteBuffer encodeEnrollment(int id, int studentId, int courseId, int epochDay,
+                                               EnrollmentStatus status) {
+        Encoder encoder = encoders.get();
+        encoder.begin(ENROLLMENT_PUT, id);
+        encoder.putInt(studentId);
+        encoder.putInt(courseId);
+        encoder.putInt(epochDay);
+        encoder.putByte(status == null ? NO_STATUS : (byte) status.ordinal());
+        return encoder.finish();
+    }
+    
+    private long logDelete(byte type, int id) {
+        Encoder encoder = encoders.get();
+        encoder.begin(type, id);
+        return append(encoder.finish());
+    }
+    
+    private long append(ByteBuffer record) {
+        int size = record.remaining();
+        lock.lock();
+        try {
+            checkWritable();
+            while (rolling) {
+                flushed.awaitUninterruptibly();
+            }
+            while (active.remaining() < size) {
+                if (active.position() == 0) {
+                    // A record larger than the buffer gets a buffer of its own
+                    active = ByteBuffer.allocateDirect(size);
+                    break;
+                }
+                flushRequested = true;
+                dataAvailable.signal();
+                flushed.awaitUninterruptibly();
+                checkWritable();
+            }
+            boolean first = active.position() == 0;
+            active.put(record);
+            appendedPosition += size;
+            if (first && syncMode != LogSyncMode.INTERVAL) {
+                dataAvailable.signal();
+            }
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void awaitDurable(long position) {
+        if (syncMode != LogSyncMode.SYNC) {
+            return;
+        }
+        lock.lock();
+        try {
+            while (durablePosition < position) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    private void checkWritable() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+    }
+    
+    /**
+     * Background writer: takes the collected records, writes them at the end
+     * of the current segment and forces them, then publishes the new durable
+     * position. Writers that append while a batch is being forced form the next batch.
+     */
+    private void flushLoop() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(AppConstants.WAL_SYNC_INTERVAL_MS);
+        long nextSync = System.nanoTime() + interval;
+        while (true) {
+            ByteBuffer batch;
+            long batchEnd;
+            FileChannel target;
+            long targetStart;
+            lock.lock();
+            try {
+                while (active.position() == 0 || (syncMode == LogSyncMode.INTERVAL && !closed &&
+                                                   !flushRequested && System.nanoTime() - nextSync < 0)) {
+                    if (closed && active.position() == 0) {
+                        return;
+                    }
+                    if (syncMode == LogSyncMode.INTERVAL) {
+                        long wait = nextSync - System.nanoTime();
+                        if (wait <= 0) {
+                            // Nothing was written during the last interval
+                            nextSync = System.nanoTime() + interval;
+                            wait = interval;
+                        }
+                        try {
+                            dataAvailable.awaitNanos(wait);
+                        } catch (InterruptedException e) {
+                            // Only close stops the writer
+                        }
+                    } else {
+                        dataAvailable.awaitUninterruptibly();
+                    }
+                }
+                batch = active;
+                active = spare;
+                spare = null;
+                batchEnd = appendedPosition;
+                target = channel;
+                targetStart = segmentStart;
+                flushRequested = false;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            
+            nextSync = System.nanoTime() + interval;
+            IOException error = null;
+            try {
+                batch.flip();
+                long offset = batchEnd - batch.remaining() - targetStart;
+                while (batch.hasRemaining()) {
+                    offset += target.write(batch, offset);
+                }
+                if (syncMode != LogSyncMode.NONE) {
+                    target.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+            
+            lock.lock();
+            try {
+                batch.clear();
+                spare = batch;
+                if (error != null) {
+                    failure = error;
+                } else {
+                    durablePosition = batchEnd;
+                }
+                flushed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Loads a snapshot's records. They are applied like log records, so an
+     * entity the snapshot holds twice is updated rather than saved again; the
+     * snapshot is written while the repositories keep changing.
+     * @return Number of records loaded
+     */
+    private long loadSnapshot(Path file, StudentRepository students, CourseRepository courses,
+                              EnrollmentRepository enrollments, int[] lastIds) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+            while (header.hasRemaining() && in.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+            header.flip();
+            if (header.remaining() < SNAPSHOT_HEADER_SIZE || header.getInt() != SNAPSHOT_MAGIC ||
+                header.getInt() != SNAPSHOT_VERSION) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            header.getLong();
+            lastIds[0] = header.getInt();
+            lastIds[1] = header.getInt();
+            lastIds[2] = header.getInt();
+            long count = header.getLong();
+            long[] loaded = new long[1];
+            long end = applyRecords(in, SNAPSHOT_HEADER_SIZE, count, students, courses, enrollments,
+                                    lastIds, loaded);
+            if (loaded[0] != count || end != in.size()) {
+                throw new IOException("Snapshot " + file + " is damaged at offset " + end);
+            }
+            return count;
+        }
+    }
+    
+    /**
+     * Applies up to maxRecords records read from a file, starting at an offset,
+     * until the file ends or a record is incomplete or corrupt. A put of an
+     * entity that already exists updates it.
+     * @param lastIds Raised to the highest student, course and enrollment ID seen
+     * @param applied Incremented per record applied
+     * @return The file offset after the last record applied
+     */
+    private static long applyRecords(FileChannel in, long offset, long maxRecords,
+                                     StudentRepository students, CourseRepository courses,
+                                     EnrollmentRepository enrollments, int[] lastIds, long[] applied)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(AppConstants.WAL_BUFFER_SIZE);
+        buffer.limit(0);
+        in.position(offset);
+        CRC32C crc = new CRC32C();
+        long position = offset;
+        for (long record = 0; record < maxRecords; record++) {
+            if (buffer.remaining() < HEADER_SIZE && !fill(in, buffer, HEADER_SIZE)) {
+                break;
+            }
+            int length = buffer.getInt(buffer.position());
+            int checksum = buffer.getInt(buffer.position() + 4);
+            if (length <= 0 || length > MAX_RECORD_SIZE) {
+                break;
+            }
+            if (buffer.remaining() < HEADER_SIZE + length) {
+                if (buffer.capacity() < HEADER_SIZE + length) {
+                    ByteBuffer larger = ByteBuffer.allocate(HEADER_SIZE + length);
+                    larger.put(buffer).flip();
+                    buffer = larger;
+                }
+                if (!fill(in, buffer, HEADER_SIZE + length)) {
+                    break;
+                }
+            }
+            int start = buffer.position() + HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + start, length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            buffer.position(start);
+            byte type = buffer.get();
+            int id = buffer.getInt();
+            apply(type, id, buffer, students, courses, enrollments, position);
+            // Types come in put/delete pairs per entity
+            lastIds[(type - 1) / 2] = Math.max(lastIds[(type - 1) / 2], id);
+            buffer.position(start + length);
+            position += HEADER_SIZE + length;
+            applied[0]++;
+        }
+        return position;
+    }
+    
+    /**
+     * Reads more of the file until the buffer holds at least needed bytes
+     * @return false if the file ends first
+     */
+    private static boolean fill(FileChannel in, ByteBuffer buffer, int needed) throws IOException {
+        buffer.compact();
+        try {
+            while (buffer.position() < needed) {
+                if (in.read(buffer) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        } finally {
+            buffer.flip();
+        }
+    }
+    
+    private static void apply(byte type, int id, ByteBuffer in, StudentRepository students,
+                              CourseRepository courses, EnrollmentRepository enrollments, long position)
+            throws IOException {
+        switch (type) {
+            case STUDENT_PUT:
+                Student student = new Student(id, getString(in), getString(in), getString(in), getString(in));
+                student.setActive(in.get() != 0);
+                if (students.exists(id)) {
+                    students.update(student);
+                } else {
+                    students.save(student);
+                }
+                break;
+            case STUDENT_DELETE:
+                students.delete(id);
+                break;
+            case COURSE_PUT:
+                Course course = new Course(id, getString(in), getString(in), in.getInt());
+                course.setActive(in.get() != 0);
+                if (courses.exists(id)) {
+                    courses.update(course);
+                } else {
+                    courses.save(course);
+                }
+                break;
+            case COURSE_DELETE:
+                courses.delete(id);
+                break;
+            case ENROLLMENT_PUT:
+                int studentId = in.getInt();
+                int courseId = in.getInt();
+                int epochDay = in.getInt();
+                byte status = in.get();
+                Enrollment enrollment = new Enrollment(id, studentId, courseId,
+                                                       epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay),
+                                                       status == NO_STATUS ? null : STATUSES[status]);
+                if (enrollments.exists(id)) {
+                    enrollments.update(enrollment);
+                } else {
+                    enrollments.save(enrollment);
+                }
+                break;
+            case ENROLLMENT_DELETE:
+                enrollments.delete(id);
+                break;
+            default:
+                throw new IOException("Unknown write-ahead log record type " + type + " at offset " + position);
+        }
+    }
+    
+    private static String getString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NO_STRING) {
+            return null;
+        }
+        String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return value;
+    }
+    
+    /**
+     * Copies a record into the write buffer, writing the buffer out first if it is full
+     * @return The file offset the buffer will be written at
+     */
+    private static long put(FileChannel out, ByteBuffer buffer, long offset, ByteBuffer record) throws IOException {
+        if (buffer.remaining() < record.remaining()) {
+            offset = writeFully(out, buffer, offset);
+            if (buffer.capacity() < record.remaining()) {
+                writeFully(out, record, offset);
+                return offset + record.limit();
+            }
+        }
+        buffer.put(record);
+        return offset;
+    }
+    
+    /**
+     * Writes the buffer's contents at an offset and clears it
+     * @return The offset after the written bytes
+     */
+    private static long writeFully(FileChannel out, ByteBuffer buffer, long offset) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            offset += out.write(buffer, offset);
+        }
+        buffer.clear();
+        return offset;
+    }
+    
+    private void deleteBefore(TreeMap<Long, Path> files, long position) throws IOException {
+        Map<Long, Path> obsolete = files.headMap(position);
+        for (Path file : obsolete.values()) {
+            Files.delete(file);
+        }
+        obsolete.clear();
+    }
+    
+    /**
+     * Makes a file creation or rename in the log directory durable
+     */
+    private void forceDirectory() {
+        try (FileChannel dir = FileChannel.open(directory, StandardOpenOption.READ)) {
+            dir.force(true);
+        } catch (IOException e) {
+            // Not every platform can force a directory; the data files are forced regardless
+        }
+    }
+    
+    private Path segmentPath(long position) {
+        return directory.resolve(FILE_PREFIX + format(position) + SEGMENT_SUFFIX);
+    }
+    
+    // Zero-padded so that file names sort in log order
+    private static String format(long position) {
+        return String.format("%020d", position);
+    }
+    
+    private static long parsePosition(String name, String suffix) throws IOException {
+        try {
+            return Long.parseLong(name.substring(FILE_PREFIX.length(), name.length() - suffix.length()));
+        } catch (NumberFormatException e) {
+            throw new IOException("Unexpected file name in log directory: " + name);
+        }
+    }
+    
+    /**
+     * Encodes one record into a reusable heap buffer, header first
+     */
+    private static class Encoder {
+        private ByteBuffer buffer = ByteBuffer.allocate(256);
+        private final CRC32C crc = new CRC32C();
+        
+        void begin(byte type, int id) {
+            buffer.clear();
+            buffer.position(HEADER_SIZE);
+            buffer.put(type);
+            buffer.putInt(id);
+        }
+        
+        void putByte(byte value) {
+            ensure(1);
+            buffer.put(value);
+        }
+        
+        void putInt(int value) {
+            ensure(4);
+            buffer.putInt(value);
+        }
+        
+        void putString(String value) {
+            if (value == null) {
+                putInt(NO_STRING);
+                return;
+            }
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            ensure(4 + bytes.length);
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+        
+        ByteBuffer finish() {
+            int length = buffer.position() - HEADER_SIZE;
+            crc.reset();
+            crc.update(buffer.array(), buffer.arrayOffset() + HEADER_SIZE, length);
+            buffer.putInt(0, length);
+            buffer.putInt(4, (int) crc.getValue());
+            buffer.flip();
+            return buffer;
+        }
+        
+        private void ensure(int bytes) {
+            if (buffer.remaining() < bytes) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+                buffer.flip();
+                larger.put(buffer);
+                buffer = larger;
+            }
+        }
+    }
+    
+    /**
+     * Durability waits deferred by one thread
+     */
+    private static class Group {
+        int depth;
+        WriteAheadLog log;
+        long position;
+    }
+}
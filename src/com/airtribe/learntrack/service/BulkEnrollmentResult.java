@@ -0,0 +1,97 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import java.util.Arrays;
+
+/**
+ * Outcome of EnrollmentService.enrollAll.
+ * Item i corresponds to request i: it either has an enrollment or an error
+ * message, never both. Also reports batch throughput and per-item latency.
+ */
+public class BulkEnrollmentResult {
+    private final Enrollment[] enrollments;
+    private final String[] errors;
+    private final long[] latencyNanos;
+    private final long elapsedNanos;
+    private final int successCount;
+    
+    BulkEnrollmentResult(Enrollment[] enrollments, String[] errors, long[] latencyNanos, long elapsedNanos) {
+        this.enrollments = enrollments;
+        this.errors = errors;
+        this.latencyNanos = latencyNanos;
+        this.elapsedNanos = elapsedNanos;
+        int successes = 0;
+        for (Enrollment enrollment : enrollments) {
+            if (enrollment != null) {
+                successes++;
+            }
+        }
+        this.successCount = successes;
+    }
+    
+    /**
+     * Returns the number of requests in the batch
+     * @return Count of items
+     */
+    public int size() {
+        return enrollments.length;
+    }
+    
+    /**
+     * Returns the enrollment created for a request
+     * @param index Position of the request in the batch
+     * @return The enrollment, or null if the request failed
+     */
+    public Enrollment getEnrollment(int index) {
+        return enrollments[index];
+    }
+    
+    /**
+     * Returns why a request failed
+     * @param index Position of the request in the batch
+     * @return The error message, or null if the request succeeded
+     */
+    public String getError(int index) {
+        return errors[index];
+    }
+    
+    public int getSuccessCount() {
+        return successCount;
+    }
+    
+    public int getFailureCount() {
+        return enrollments.length - successCount;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Returns batch throughput in requests per second, over wall-clock time
+     * @return Requests processed per second
+     */
+    public double getThroughputPerSecond() {
+        return elapsedNanos == 0 ? 0 : enrollments.length * 1_000_000_000.0 / elapsedNanos;
+    }
+    
+    /**
+     * Returns the 99th percentile of per-item processing time
+     * @return p99 latency in nanoseconds, or 0 for an empty batch
+     */
+    public long getP99LatencyNanos() {
+        if (latencyNanos.length == 0) {
+            return 0;
+        }
+        long[] sorted = latencyNanos.clone();
+        Arrays.sort(sorted);
+        return sorted[(int) Math.ceil(sorted.length * 0.99) - 1];
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d enrolled, %d failed in %.1f ms (%.0f/s, p99 %.1f us)",
+                             successCount, getFailureCount(), elapsedNanos / 1_000_000.0,
+                             getThroughputPerSecond(), getP99LatencyNanos() / 1_000.0);
+    }
+}
@@ -0,0 +1,108 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.repository.WriteAheadLog;
+import java.io.IOException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes snapshots of the repositories to the write-ahead log's directory in
+ * the background, so that startup loads the newest snapshot and replays only
+ * the changes logged after it instead of the whole history.
+ * A checkpoint starts a new log segment, then writes out the students' and
+ * courses' copy-free snapshots and streams the enrollments through an
+ * EnrollmentCursor, so no enrollment is materialized whatever the storage
+ * mode; writers are only held up while the segment is switched. Changes made
+ * while the data is read may be both in the snapshot and in the new
+ * segment, which is harmless because replay applies whole entity states.
+ * A checkpoint runs once the log has grown by CHECKPOINT_LOG_BYTES, or has
+ * grown at all and CHECKPOINT_INTERVAL_SECONDS have passed since the last one.
+ */
+public class Checkpointer implements AutoCloseable {
+    private TransactionManager transactionManager;
+    private WriteAheadLog log;
+    private final ScheduledExecutorService scheduler;
+    // Log position the last checkpoint started at, and when it finished
+    private long checkpointPosition;
+    private long checkpointNanos;
+    private volatile Exception lastFailure;
+    
+    public Checkpointer(TransactionManager transactionManager, WriteAheadLog log) {
+        this.transactionManager = transactionManager;
+        this.log = log;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "learntrack-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.checkpointPosition = log.position();
+        this.checkpointNanos = System.nanoTime();
+    }
+    
+    /**
+     * Starts checking every CHECKPOINT_CHECK_SECONDS whether a checkpoint is due
+     */
+    public void start() {
+        scheduler.scheduleWithFixedDelay(this::checkpointIfDue, AppConstants.CHECKPOINT_CHECK_SECONDS,
+                                         AppConstants.CHECKPOINT_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+    
+    /**
+     * Writes a snapshot now and drops the log before it
+     * @throws IOException if the snapshot could not be written; the log is kept intact
+     */
+    public synchronized void checkpoint() throws IOException {
+        long position = log.roll();
+        log.writeSnapshot(position, transactionManager.students().findAll(), transactionManager.courses().findAll(),
+                          transactionManager.enrollments().cursor(AppConstants.CHECKPOINT_BATCH_SIZE));
+        checkpointPosition = position;
+        checkpointNanos = System.nanoTime();
+    }
+    
+    /**
+     * Returns why the last background checkpoint failed
+     * @return The error, or null if the last one succeeded or none has run
+     */
+    public Exception getLastFailure() {
+        return lastFailure;
+    }
+    
+    /**
+     * Stops the background checks, waiting for a checkpoint in progress to finish
+     */
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (scheduler.awaitTermination(1, TimeUnit.MINUTES)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private synchronized void checkpointIfDue() {
+        long growth = log.position() - checkpointPosition;
+        long elapsed = System.nanoTime() - checkpointNanos;
+        if (growth < AppConstants.CHECKPOINT_LOG_BYTES &&
+            (growth == 0 || elapsed < TimeUnit.SECONDS.toNanos(AppConstants.CHECKPOINT_INTERVAL_SECONDS))) {
+            return;
+        }
+        try {
+            checkpoint();
+            lastFailure = null;
+        } catch (IOException | RuntimeException e) {
+            // Retried at the next check; the log still holds every change
+            lastFailure = e;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.exception.EntityNotFoundException;
+import com.airtribe.learntrack.exception.InvalidInputException;
+import com.airtribe.learntrack.repository.WriteAheadLog;
+import com.airtribe.learntrack.util.MpscRingBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Optional single-writer execution mode for mutations.
+ * Callers on any thread submit commands into a ring buffer and get a
+ * CompletableFuture back; one writer thread drains the buffer in batches and
+ * applies the commands to the services in submission order. Since only the
+ * writer mutates, repository write locks are never contended, and readers keep
+ * calling the services directly using the repositories' optimistic reads.
+ * Futures are completed on the writer thread, so dependent work should use
+ * the *Async variants of CompletableFuture to keep the writer free.
+ * With a write-ahead log attached, a batch waits once for the log to be
+ * durable, and its futures are completed only after that.
+ */
+public class CommandPipeline implements AutoCloseable {
+    /**
+     * A mutation to run on the writer thread
+     */
+    @FunctionalInterface
+    public interface Command<T> {
+        T execute() throws EntityNotFoundException, InvalidInputException;
+    }
+    
+    private StudentService studentService;
+    private CourseService courseService;
+    private EnrollmentService enrollmentService;
+    
+    private final MpscRingBuffer<PendingCommand<?>> buffer;
+    private final Thread writer;
+    private volatile boolean running;
+    private volatile boolean writerParked;
+    // Producers between their running check and their put; the writer waits for them on close
+    private final AtomicInteger submitting;
+    
+    public CommandPipeline(StudentService studentService, CourseService courseService,
+                           EnrollmentService enrollmentService) {
+        this.studentService = studentService;
+        this.courseService = courseService;
+        this.enrollmentService = enrollmentService;
+        this.buffer = new MpscRingBuffer<>(AppConstants.COMMAND_BUFFER_CAPACITY);
+        this.submitting = new AtomicInteger();
+        this.writer = new Thread(this::drainLoop, "learntrack-writer");
+        this.writer.setDaemon(true);
+    }
+    
+    /**
+     * Starts the writer thread
+     */
+    public void start() {
+        running = true;
+        writer.start();
+    }
+    
+    /**
+     * Submits a command for the writer thread
+     * @param command The mutation to run
+     * @return Future completed with the command's result, or exceptionally with its exception
+     */
+    public <T> CompletableFuture<T> submit(Command<T> command) {
+        PendingCommand<T> pending = new PendingCommand<>(command);
+        submitting.incrementAndGet();
+        try {
+            if (!running) {
+                pending.future.completeExceptionally(new IllegalStateException("Command pipeline is not running"));
+                return pending.future;
+            }
+            buffer.put(pending);
+        } finally {
+            submitting.decrementAndGet();
+        }
+        if (writerParked) {
+            LockSupport.unpark(writer);
+        }
+        return pending.future;
+    }
+    
+    public CompletableFuture<Student> addStudent(String firstName, String lastName, String email, String batch) {
+        return submit(() -> studentService.addStudent(firstName, lastName, email, batch));
+    }
+    
+    public CompletableFuture<Course> addCourse(String courseName, String description, int durationInWeeks) {
+        return submit(() -> courseService.addCourse(courseName, description, durationInWeeks));
+    }
+    
+    public CompletableFuture<Enrollment> enrollStudent(int studentId, int courseId) {
+        return submit(() -> enrollmentService.enrollStudent(studentId, courseId));
+    }
+    
+    public CompletableFuture<Void> updateEnrollmentStatus(int enrollmentId, EnrollmentStatus status) {
+        return submit(() -> {
+            enrollmentService.updateEnrollmentStatus(enrollmentId, status);
+            return null;
+        });
+    }
+    
+    public CompletableFuture<Boolean> deleteEnrollment(int enrollmentId) {
+        return submit(() -> enrollmentService.deleteEnrollment(enrollmentId));
+    }
+    
+    /**
+     * Stops accepting commands, applies everything already submitted and
+     * waits for the writer thread to finish. If interrupted while waiting,
+     * returns early with the interrupt status set; the writer still drains.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    private void drainLoop() {
+        ArrayList<PendingCommand<?>> batch = new ArrayList<>(AppConstants.COMMAND_BATCH_SIZE);
+        while (true) {
+            batch.clear();
+            if (buffer.drainTo(batch, AppConstants.COMMAND_BATCH_SIZE) == 0) {
+                if (!running && submitting.get() == 0 && buffer.isEmpty()) {
+                    return;
+                }
+                // Announce the park before the final emptiness check, so a producer
+                // publishing in between sees the flag and unparks us
+                writerParked = true;
+                if (buffer.isEmpty() && running) {
+                    LockSupport.park(this);
+                }
+                writerParked = false;
+                continue;
+            }
+            Throwable logFailure = null;
+            WriteAheadLog.beginGroup();
+            try {
+                for (PendingCommand<?> pending : batch) {
+                    pending.run();
+                }
+            } finally {
+                try {
+                    WriteAheadLog.endGroup();
+                } catch (Throwable e) {
+                    logFailure = e;
+                }
+            }
+            for (PendingCommand<?> pending : batch) {
+                pending.complete(logFailure);
+            }
+        }
+    }
+    
+    private static class PendingCommand<T> {
+        private final Command<T> command;
+        private final CompletableFuture<T> future;
+        // Outcome of run, held until the batch is durable
+        private T result;
+        private Throwable error;
+        
+        PendingCommand(Command<T> command) {
+            this.command = command;
+            this.future = new CompletableFuture<>();
+        }
+        
+        /**
+         * Runs the command, keeping anything it throws for its future, so
+         * that neither the writer thread nor the rest of the batch is lost
+         */
+        void run() {
+            try {
+                result = command.execute();
+            } catch (Throwable e) {
+                error = e;
+            }
+        }
+        
+        void complete(Throwable logFailure) {
+            if (error != null) {
+                future.completeExceptionally(error);
+            } else if (logFailure != null) {
+                future.completeExceptionally(logFailure);
+            } else {
+                future.complete(result);
+            }
+        }
+    }
+}
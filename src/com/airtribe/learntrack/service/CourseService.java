@@ -7,16 +7,21 @@ import com.airtribe.learntrack.exception.InvalidInputException;
 import com.airtribe.learntrack.util.IdGenerator;
 import com.airtribe.learntrack.util.InputValidator;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service class for Course business logic.
  * Handles validation and coordinates with CourseRepository.
+ * Each write goes through the TransactionManager, so transactions that read
+ * the courses it changes conflict with it.
  */
 public class CourseService {
     private CourseRepository courseRepository;
+    private TransactionManager transactionManager;
     
-    public CourseService(CourseRepository courseRepository) {
+    public CourseService(CourseRepository courseRepository, TransactionManager transactionManager) {
         this.courseRepository = courseRepository;
+        this.transactionManager = transactionManager;
     }
     
     /**
@@ -38,7 +43,13 @@ public class CourseService {
         
         int id = IdGenerator.getNextCourseId();
         Course course = new Course(id, courseName, description, durationInWeeks);
-        courseRepository.save(course);
+        long stamp = transactionManager.beginWrite();
+        try {
+            courseRepository.save(course);
+            transactionManager.written(TransactionManager.COURSE, id);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
         
         return course;
     }
@@ -59,12 +70,22 @@ public class CourseService {
     
     /**
      * Gets all courses in the system
-     * @return List of all courses
+     * @return Read-only snapshot of all courses
      */
-    public ArrayList<Course> getAllCourses() {
+    public List<Course> getAllCourses() {
         return courseRepository.findAll();
     }
     
+    /**
+     * Gets one page of courses in ID order
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit courses; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Course> getAllCourses(int afterId, int limit) {
+        return courseRepository.findAll(afterId, limit);
+    }
+    
     /**
      * Gets all active courses
      * @return List of active courses
@@ -73,6 +94,16 @@ public class CourseService {
         return courseRepository.findAllActive();
     }
     
+    /**
+     * Gets one page of active courses in ID order
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit active courses
+     */
+    public ArrayList<Course> getActiveCourses(int afterId, int limit) {
+        return courseRepository.findAllActive(afterId, limit);
+    }
+    
     /**
      * Searches for courses by name
      * @param name Course name to search for
@@ -82,6 +113,17 @@ public class CourseService {
         return courseRepository.findByName(name);
     }
     
+    /**
+     * Searches for one page of courses by name, in ID order
+     * @param name Course name to search for
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit matching courses
+     */
+    public ArrayList<Course> searchCoursesByName(String name, int afterId, int limit) {
+        return courseRepository.findByName(name, afterId, limit);
+    }
+    
     /**
      * Finds courses by duration
      * @param durationInWeeks The duration to search for
@@ -91,15 +133,31 @@ public class CourseService {
         return courseRepository.findByDuration(durationInWeeks);
     }
     
+    /**
+     * Finds one page of courses by duration, in ID order
+     * @param durationInWeeks The duration to search for
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit courses with matching duration
+     */
+    public ArrayList<Course> getCoursesByDuration(int durationInWeeks, int afterId, int limit) {
+        return courseRepository.findByDuration(durationInWeeks, afterId, limit);
+    }
+    
     /**
      * Toggles the active status of a course
      * @param id The course ID
      * @throws EntityNotFoundException if course not found
      */
     public void toggleCourseStatus(int id) throws EntityNotFoundException {
-        Course course = findCourseById(id);
-        course.setActive(!course.isActive());
-        courseRepository.update(course);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Course course = new Course(findCourseById(id));
+            course.setActive(!course.isActive());
+            update(course);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -108,9 +166,14 @@ public class CourseService {
      * @throws EntityNotFoundException if course not found
      */
     public void deactivateCourse(int id) throws EntityNotFoundException {
-        Course course = findCourseById(id);
-        course.setActive(false);
-        courseRepository.update(course);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Course course = new Course(findCourseById(id));
+            course.setActive(false);
+            update(course);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -119,9 +182,14 @@ public class CourseService {
      * @throws EntityNotFoundException if course not found
      */
     public void activateCourse(int id) throws EntityNotFoundException {
-        Course course = findCourseById(id);
-        course.setActive(true);
-        courseRepository.update(course);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Course course = new Course(findCourseById(id));
+            course.setActive(true);
+            update(course);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -135,27 +203,32 @@ public class CourseService {
      */
     public void updateCourse(int id, String courseName, String description, int durationInWeeks) 
             throws EntityNotFoundException, InvalidInputException {
-        Course course = findCourseById(id);
-        
-        if (courseName != null && !courseName.isEmpty()) {
-            if (!InputValidator.isValidName(courseName)) {
-                throw new InvalidInputException("Course name must be between 2-50 characters");
+        long stamp = transactionManager.beginWrite();
+        try {
+            Course course = new Course(findCourseById(id));
+            
+            if (courseName != null && !courseName.isEmpty()) {
+                if (!InputValidator.isValidName(courseName)) {
+                    throw new InvalidInputException("Course name must be between 2-50 characters");
+                }
+                course.setCourseName(courseName);
             }
-            course.setCourseName(courseName);
-        }
-        
-        if (description != null && !description.isEmpty()) {
-            course.setDescription(description);
-        }
-        
-        if (durationInWeeks > 0) {
-            if (!InputValidator.isValidDuration(durationInWeeks)) {
-                throw new InvalidInputException("Duration must be between 1 and 52 weeks");
+            
+            if (description != null && !description.isEmpty()) {
+                course.setDescription(description);
             }
-            course.setDurationInWeeks(durationInWeeks);
+            
+            if (durationInWeeks > 0) {
+                if (!InputValidator.isValidDuration(durationInWeeks)) {
+                    throw new InvalidInputException("Duration must be between 1 and 52 weeks");
+                }
+                course.setDurationInWeeks(durationInWeeks);
+            }
+            
+            update(course);
+        } finally {
+            transactionManager.endWrite(stamp);
         }
-        
-        courseRepository.update(course);
     }
     
     /**
@@ -164,7 +237,16 @@ public class CourseService {
      * @return true if deleted, false if not found
      */
     public boolean deleteCourse(int id) {
-        return courseRepository.delete(id);
+        long stamp = transactionManager.beginWrite();
+        try {
+            boolean deleted = courseRepository.delete(id);
+            if (deleted) {
+                transactionManager.written(TransactionManager.COURSE, id);
+            }
+            return deleted;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -182,4 +264,12 @@ public class CourseService {
     public int getActiveCourseCount() {
         return courseRepository.countActive();
     }
+    
+    /**
+     * Stores a changed course. Call between beginWrite and endWrite.
+     */
+    private void update(Course course) {
+        courseRepository.update(course);
+        transactionManager.written(TransactionManager.COURSE, course.getId());
+    }
 }
\ No newline at end of file
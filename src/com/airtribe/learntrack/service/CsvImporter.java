@@ -0,0 +1,251 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.exception.EntityNotFoundException;
+import com.airtribe.learntrack.exception.InvalidInputException;
+import com.airtribe.learntrack.repository.WriteAheadLog;
+import com.airtribe.learntrack.util.CsvFormat;
+import com.airtribe.learntrack.util.IdGenerator;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Imports students, courses and enrollments from CSV files of any size.
+ * The file is read line by line and cut into chunks of CSV_IMPORT_CHUNK_ROWS
+ * rows. Worker threads parse and validate each chunk and add its rows
+ * through the services, so the services' InputValidator checks and business
+ * rules run in parallel. Each chunk waits once for the write-ahead log.
+ * At most two chunks per worker are in memory at a time, so memory use does
+ * not depend on the file size.
+ * Rows that fail are written, in file order, to a rejects file with their
+ * line number and the reason; the other rows are still imported. IDs are
+ * assigned as rows are added, so they do not follow the file order.
+ * Expected columns, after an optional header line with these names:
+ * students: firstName,lastName,email,batch
+ * courses: courseName,description,durationInWeeks
+ * enrollments: studentId,courseId
+ */
+public class CsvImporter {
+    private static final String[] STUDENT_COLUMNS = { "firstName", "lastName", "email", "batch" };
+    private static final String[] COURSE_COLUMNS = { "courseName", "description", "durationInWeeks" };
+    private static final String[] ENROLLMENT_COLUMNS = { "studentId", "courseId" };
+    
+    /**
+     * Adds the entity described by one parsed row
+     */
+    @FunctionalInterface
+    private interface RowHandler {
+        void add(String[] fields) throws EntityNotFoundException, InvalidInputException;
+    }
+    
+    private StudentService studentService;
+    private CourseService courseService;
+    private EnrollmentService enrollmentService;
+    
+    public CsvImporter(StudentService studentService, CourseService courseService,
+                       EnrollmentService enrollmentService) {
+        this.studentService = studentService;
+        this.courseService = courseService;
+        this.enrollmentService = enrollmentService;
+    }
+    
+    /**
+     * Adds a student per row
+     * @param file CSV file with columns firstName,lastName,email,batch
+     * @param rejectsFile Where to write the rejected rows, replaced if it exists
+     * @return Counts and throughput
+     * @throws IOException if a file cannot be read or written
+     */
+    public ImportResult importStudents(Path file, Path rejectsFile) throws IOException {
+        return importFile(file, rejectsFile, STUDENT_COLUMNS,
+                          fields -> studentService.addStudent(fields[0], fields[1], fields[2], fields[3]));
+    }
+    
+    /**
+     * Adds a course per row
+     * @param file CSV file with columns courseName,description,durationInWeeks
+     * @param rejectsFile Where to write the rejected rows, replaced if it exists
+     * @return Counts and throughput
+     * @throws IOException if a file cannot be read or written
+     */
+    public ImportResult importCourses(Path file, Path rejectsFile) throws IOException {
+        return importFile(file, rejectsFile, COURSE_COLUMNS,
+                          fields -> courseService.addCourse(fields[0], fields[1],
+                                                            parseNumber(fields[2], "Duration")));
+    }
+    
+    /**
+     * Enrolls a student in a course per row
+     * @param file CSV file with columns studentId,courseId
+     * @param rejectsFile Where to write the rejected rows, replaced if it exists
+     * @return Counts and throughput
+     * @throws IOException if a file cannot be read or written
+     */
+    public ImportResult importEnrollments(Path file, Path rejectsFile) throws IOException {
+        return importFile(file, rejectsFile, ENROLLMENT_COLUMNS,
+                          fields -> enrollmentService.enrollStudent(parseNumber(fields[0], "Student ID"),
+                                                                    parseNumber(fields[1], "Course ID")));
+    }
+    
+    private ImportResult importFile(Path file, Path rejectsFile, String[] columns, RowHandler handler)
+            throws IOException {
+        long start = System.nanoTime();
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads, IdGenerator.releasingThreadFactory());
+        // Chunks submitted and not yet written out, oldest first
+        ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+        long[] counts = new long[2];
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+             BufferedWriter rejects = Files.newBufferedWriter(rejectsFile, StandardCharsets.UTF_8)) {
+            rejects.write("line,reason,row");
+            rejects.newLine();
+            Chunk chunk = new Chunk();
+            int lineNumber = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && isHeader(line, columns))) {
+                    continue;
+                }
+                chunk.add(lineNumber, line);
+                if (chunk.size == AppConstants.CSV_IMPORT_CHUNK_ROWS) {
+                    Chunk full = chunk;
+                    pending.add(executor.submit(() -> full.process(columns.length, handler)));
+                    chunk = new Chunk();
+                    if (pending.size() > 2 * threads) {
+                        finish(pending.poll(), rejects, counts);
+                    }
+                }
+            }
+            if (chunk.size > 0) {
+                Chunk last = chunk;
+                pending.add(executor.submit(() -> last.process(columns.length, handler)));
+            }
+            while (!pending.isEmpty()) {
+                finish(pending.poll(), rejects, counts);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return new ImportResult(counts[0], counts[1], rejectsFile, System.nanoTime() - start);
+    }
+    
+    /**
+     * Waits for a chunk, even if interrupted, and writes out its rejected rows
+     * @param counts Imported and rejected totals, incremented
+     */
+    private static void finish(Future<Chunk> future, BufferedWriter rejects, long[] counts) throws IOException {
+        Chunk chunk = getUninterruptibly(future);
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < chunk.size; i++) {
+            if (chunk.reasons[i] == null) {
+                counts[0]++;
+                continue;
+            }
+            counts[1]++;
+            row.setLength(0);
+            row.append(chunk.lineNumbers[i]).append(',');
+            CsvFormat.appendField(row, chunk.reasons[i]);
+            row.append(',');
+            CsvFormat.appendField(row, chunk.lines[i]);
+            rejects.write(row.toString());
+            rejects.newLine();
+        }
+    }
+    
+    private static Chunk getUninterruptibly(Future<Chunk> future) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException) {
+                        throw (RuntimeException) cause;
+                    }
+                    throw (Error) cause;
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+    
+    private static boolean isHeader(String line, String[] columns) {
+        try {
+            String[] fields = CsvFormat.parseLine(line);
+            if (fields.length != columns.length) {
+                return false;
+            }
+            for (int i = 0; i < fields.length; i++) {
+                if (!fields[i].equalsIgnoreCase(columns[i])) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InvalidInputException e) {
+            return false;
+        }
+    }
+    
+    private static int parseNumber(String value, String field) throws InvalidInputException {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new InvalidInputException(field + " must be a number: " + value);
+        }
+    }
+    
+    /**
+     * A run of consecutive rows, with the outcome of each once processed
+     */
+    private static class Chunk {
+        final int[] lineNumbers = new int[AppConstants.CSV_IMPORT_CHUNK_ROWS];
+        final String[] lines = new String[AppConstants.CSV_IMPORT_CHUNK_ROWS];
+        // Why each row was rejected, or null if it was imported
+        final String[] reasons = new String[AppConstants.CSV_IMPORT_CHUNK_ROWS];
+        int size;
+        
+        void add(int lineNumber, String line) {
+            lineNumbers[size] = lineNumber;
+            lines[size] = line;
+            size++;
+        }
+        
+        Chunk process(int columnCount, RowHandler handler) {
+            // The chunk waits once for the log to be durable, not once per row
+            WriteAheadLog.beginGroup();
+            try {
+                for (int i = 0; i < size; i++) {
+                    try {
+                        String[] fields = CsvFormat.parseLine(lines[i]);
+                        if (fields.length != columnCount) {
+                            throw new InvalidInputException("Expected " + columnCount + " fields, found "
+                                                            + fields.length);
+                        }
+                        handler.add(fields);
+                    } catch (EntityNotFoundException | InvalidInputException e) {
+                        reasons[i] = e.getMessage();
+                    }
+                }
+            } finally {
+                WriteAheadLog.endGroup();
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.enums.ExportFormat;
+import com.airtribe.learntrack.repository.EnrollmentCursor;
+import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.EnrollmentStore;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+
+/**
+ * Streams enrollments to a CSV or JSON Lines file.
+ * Enrollments are read through an EnrollmentCursor, so no Enrollment objects
+ * or lists are created, and filtered on their primitive fields. Matching rows
+ * are encoded as ASCII straight into one reused byte buffer, which is
+ * written through a FileChannel whenever it fills. Memory use is the same for
+ * any number of enrollments.
+ * The export reads the shards in batches without stopping writers, so it is
+ * not a point-in-time copy: enrollments changed during the export may appear
+ * in either state. Rows come out in ID order, and each ID at most once, even
+ * for an enrollment moved to another shard while the export runs.
+ * Columns: id, studentId, courseId, enrollmentDate (yyyy-MM-dd, empty or
+ * null without a date) and status.
+ */
+public class EnrollmentExporter {
+    private static final byte[] CSV_HEADER =
+        "id,studentId,courseId,enrollmentDate,status\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_ID = "{\"id\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_STUDENT_ID = ",\"studentId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_COURSE_ID = ",\"courseId\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_DATE = ",\"enrollmentDate\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_STATUS = ",\"status\":".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] JSON_NULL = "null".getBytes(StandardCharsets.US_ASCII);
+    // Status names by ordinal, pre-encoded
+    private static final byte[][] STATUS_NAMES = new byte[EnrollmentStatus.values().length][];
+    // Longest row either format can produce, so a row is never split across writes
+    private static final int MAX_ROW_SIZE = 160;
+    
+    static {
+        for (EnrollmentStatus status : EnrollmentStatus.values()) {
+            STATUS_NAMES[status.ordinal()] = status.name().getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+    
+    private EnrollmentRepository enrollmentRepository;
+    
+    public EnrollmentExporter(EnrollmentRepository enrollmentRepository) {
+        this.enrollmentRepository = enrollmentRepository;
+    }
+    
+    /**
+     * Writes the enrollments matching a filter to a file, replacing it
+     * @param file The output file
+     * @param format CSV (with a header line) or JSON Lines
+     * @param filter Which enrollments to write
+     * @return Rows and bytes written, with throughput
+     * @throws IOException if the file cannot be written
+     */
+    public ExportResult export(Path file, ExportFormat format, EnrollmentFilter filter) throws IOException {
+        long start = System.nanoTime();
+        long rows = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RowWriter out = new RowWriter(channel);
+            if (format == ExportFormat.CSV) {
+                out.put(CSV_HEADER);
+            }
+            EnrollmentCursor cursor = enrollmentRepository.cursor(AppConstants.EXPORT_BATCH_SIZE);
+            while (cursor.next()) {
+                for (int i = 0; i < cursor.size(); i++) {
+                    EnrollmentStatus status = cursor.getStatus(i);
+                    int epochDay = cursor.getEpochDay(i);
+                    if (!filter.matches(status, cursor.getCourseId(i), epochDay)) {
+                        continue;
+                    }
+                    out.reserve(MAX_ROW_SIZE);
+                    if (format == ExportFormat.CSV) {
+                        writeCsvRow(out, cursor.getId(i), cursor.getStudentId(i), cursor.getCourseId(i), epochDay,
+                                    status);
+                    } else {
+                        writeJsonRow(out, cursor.getId(i), cursor.getStudentId(i), cursor.getCourseId(i), epochDay,
+                                     status);
+                    }
+                    rows++;
+                }
+            }
+            out.flush();
+            return new ExportResult(rows, out.written, System.nanoTime() - start);
+        }
+    }
+    
+    private static void writeCsvRow(RowWriter out, int id, int studentId, int courseId, int epochDay,
+                                    EnrollmentStatus status) {
+        out.putInt(id);
+        out.put((byte) ',');
+        out.putInt(studentId);
+        out.put((byte) ',');
+        out.putInt(courseId);
+        out.put((byte) ',');
+        if (epochDay != EnrollmentStore.NO_DATE) {
+            out.putDate(epochDay);
+        }
+        out.put((byte) ',');
+        if (status != null) {
+            out.put(STATUS_NAMES[status.ordinal()]);
+        }
+        out.put((byte) '\n');
+    }
+    
+    private static void writeJsonRow(RowWriter out, int id, int studentId, int courseId, int epochDay,
+                                     EnrollmentStatus status) {
+        out.put(JSON_ID);
+        out.putInt(id);
+        out.put(JSON_STUDENT_ID);
+        out.putInt(studentId);
+        out.put(JSON_COURSE_ID);
+        out.putInt(courseId);
+        out.put(JSON_DATE);
+        if (epochDay == EnrollmentStore.NO_DATE) {
+            out.put(JSON_NULL);
+        } else {
+            out.put((byte) '"');
+            out.putDate(epochDay);
+            out.put((byte) '"');
+        }
+        out.put(JSON_STATUS);
+        if (status == null) {
+            out.put(JSON_NULL);
+        } else {
+            out.put((byte) '"');
+            out.put(STATUS_NAMES[status.ordinal()]);
+            out.put((byte) '"');
+        }
+        out.put((byte) '}');
+        out.put((byte) '\n');
+    }
+    
+    /**
+     * Encodes values into a reused byte array and writes it to a channel when full
+     */
+    private static class RowWriter {
+        private final FileChannel channel;
+        private final byte[] buffer = new byte[AppConstants.EXPORT_BUFFER_SIZE];
+        private final ByteBuffer wrapper = ByteBuffer.wrap(buffer);
+        private int position;
+        // Bytes handed to the channel so far
+        long written;
+        
+        RowWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+        
+        /**
+         * Makes room for at least size more bytes, writing out the buffer if needed
+         */
+        void reserve(int size) throws IOException {
+            if (buffer.length - position < size) {
+                flush();
+            }
+        }
+        
+        void flush() throws IOException {
+            wrapper.clear().limit(position);
+            while (wrapper.hasRemaining()) {
+                channel.write(wrapper);
+            }
+            written += position;
+            position = 0;
+        }
+        
+        void put(byte value) {
+            buffer[position++] = value;
+        }
+        
+        void put(byte[] bytes) {
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+        }
+        
+        void putInt(int value) {
+            if (value < 0) {
+                if (value == Integer.MIN_VALUE) {
+                    put(Integer.toString(value).getBytes(StandardCharsets.US_ASCII));
+                    return;
+                }
+                put((byte) '-');
+                value = -value;
+            }
+            int digits = 1;
+            for (int rest = value / 10; rest > 0; rest /= 10) {
+                digits++;
+            }
+            int end = position + digits;
+            for (int i = end - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position = end;
+        }
+        
+        /**
+         * Writes a day count as yyyy-MM-dd without creating a LocalDate,
+         * using the days-to-civil-date conversion of the proleptic Gregorian calendar
+         */
+        void putDate(int epochDay) {
+            long z = epochDay + 719468L;
+            long era = Math.floorDiv(z, 146097);
+            int dayOfEra = (int) (z - era * 146097);
+            int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+            int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+            int shiftedMonth = (5 * dayOfYear + 2) / 153;
+            int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+            int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+            long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+            if (year < 0 || year > 9999) {
+                put(LocalDate.ofEpochDay(epochDay).toString().getBytes(StandardCharsets.US_ASCII));
+                return;
+            }
+            putDigits((int) year, 4);
+            put((byte) '-');
+            putDigits(month, 2);
+            put((byte) '-');
+            putDigits(day, 2);
+        }
+        
+        private void putDigits(int value, int width) {
+            for (int i = position + width - 1; i >= position; i--) {
+                buffer[i] = (byte) ('0' + value % 10);
+                value /= 10;
+            }
+            position += width;
+        }
+    }
+}
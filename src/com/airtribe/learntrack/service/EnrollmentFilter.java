@@ -0,0 +1,59 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.repository.EnrollmentStore;
+import java.time.LocalDate;
+
+/**
+ * Which enrollments EnrollmentExporter writes: those matching every
+ * condition that is set. Works on the primitive fields of an
+ * EnrollmentCursor, so rows that do not match are never formatted.
+ */
+public class EnrollmentFilter {
+    private final EnrollmentStatus status;
+    private final int courseId;
+    // Inclusive bounds as epoch days
+    private final long fromDay;
+    private final long toDay;
+    private final boolean dateRange;
+    
+    /**
+     * Creates a filter; leave a condition unset to not filter on it
+     * @param status Only this status, or null for any
+     * @param courseId Only this course, or 0 for any
+     * @param from Only enrollments on or after this date, or null for no lower bound
+     * @param to Only enrollments on or before this date, or null for no upper bound
+     */
+    public EnrollmentFilter(EnrollmentStatus status, int courseId, LocalDate from, LocalDate to) {
+        this.status = status;
+        this.courseId = courseId;
+        this.fromDay = from == null ? Long.MIN_VALUE : from.toEpochDay();
+        this.toDay = to == null ? Long.MAX_VALUE : to.toEpochDay();
+        this.dateRange = from != null || to != null;
+    }
+    
+    /**
+     * Returns a filter that matches every enrollment
+     */
+    public static EnrollmentFilter all() {
+        return new EnrollmentFilter(null, 0, null, null);
+    }
+    
+    /**
+     * Checks an enrollment's fields against the filter; with a date range set,
+     * enrollments without a date do not match
+     * @param epochDay Enrollment date as a day count, or EnrollmentStore.NO_DATE
+     */
+    public boolean matches(EnrollmentStatus status, int courseId, int epochDay) {
+        if (this.status != null && this.status != status) {
+            return false;
+        }
+        if (this.courseId != 0 && this.courseId != courseId) {
+            return false;
+        }
+        if (dateRange && (epochDay == EnrollmentStore.NO_DATE || epochDay < fromDay || epochDay > toDay)) {
+            return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,27 @@
+package com.airtribe.learntrack.service;
+
+/**
+ * A (student, course) pair to enroll, used by EnrollmentService.enrollAll
+ */
+public class EnrollmentRequest {
+    private final int studentId;
+    private final int courseId;
+    
+    public EnrollmentRequest(int studentId, int courseId) {
+        this.studentId = studentId;
+        this.courseId = courseId;
+    }
+    
+    public int getStudentId() {
+        return studentId;
+    }
+    
+    public int getCourseId() {
+        return courseId;
+    }
+    
+    @Override
+    public String toString() {
+        return "EnrollmentRequest{studentId=" + studentId + ", courseId=" + courseId + "}";
+    }
+}
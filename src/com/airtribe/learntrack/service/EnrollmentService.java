@@ -1,29 +1,47 @@
 package com.airtribe.learntrack.service;
 
+import com.airtribe.learntrack.constants.AppConstants;
 import com.airtribe.learntrack.entity.Enrollment;
 import com.airtribe.learntrack.entity.Student;
 import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
 import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.MappedEnrollmentTable;
+import com.airtribe.learntrack.repository.WriteAheadLog;
 import com.airtribe.learntrack.exception.EntityNotFoundException;
 import com.airtribe.learntrack.exception.InvalidInputException;
 import com.airtribe.learntrack.util.IdGenerator;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Service class for Enrollment business logic.
  * Handles validation and coordinates with multiple repositories.
+ * Each write goes through the TransactionManager, so transactions that read
+ * the enrollments it changes, or the set of a student's enrollments, conflict
+ * with it, and a commit cannot slip between its checks and its write.
  */
 public class EnrollmentService {
     private EnrollmentRepository enrollmentRepository;
     private StudentService studentService;
     private CourseService courseService;
+    private TransactionManager transactionManager;
     
     public EnrollmentService(EnrollmentRepository enrollmentRepository, 
                             StudentService studentService, 
-                            CourseService courseService) {
+                            CourseService courseService,
+                            TransactionManager transactionManager) {
         this.enrollmentRepository = enrollmentRepository;
         this.studentService = studentService;
         this.courseService = courseService;
+        this.transactionManager = transactionManager;
     }
     
     /**
@@ -36,29 +54,60 @@ public class EnrollmentService {
      */
     public Enrollment enrollStudent(int studentId, int courseId) 
             throws EntityNotFoundException, InvalidInputException {
-        // Verify student exists and is active
-        Student student = studentService.findStudentById(studentId);
-        if (!student.isActive()) {
-            throw new InvalidInputException("Cannot enroll inactive student");
-        }
+        return createEnrollment(studentId, courseId);
+    }
+    
+    /**
+     * Enrolls many (student, course) pairs at once, e.g. at term start.
+     * Each distinct student and course is looked up and validated once up
+     * front, so requests for invalid ones fail without further work; each
+     * enrollment checks its student and course again as it is created. The
+     * requests are processed in chunks on a pool of worker threads.
+     * A failing request is reported in the result and does not stop the others.
+     * @param requests The pairs to enroll
+     * @return Per-request enrollments or error messages, with throughput and latency
+     */
+    public BulkEnrollmentResult enrollAll(List<EnrollmentRequest> requests) {
+        long start = System.nanoTime();
+        int size = requests.size();
+        Enrollment[] enrollments = new Enrollment[size];
+        String[] errors = new String[size];
+        long[] latencies = new long[size];
         
-        // Verify course exists and is active
-        Course course = courseService.findCourseById(courseId);
-        if (!course.isActive()) {
-            throw new InvalidInputException("Cannot enroll in inactive course");
+        // id -> validation error, or null if the student/course can be enrolled
+        HashMap<Integer, String> studentErrors = new HashMap<>();
+        HashMap<Integer, String> courseErrors = new HashMap<>();
+        for (EnrollmentRequest request : requests) {
+            if (!studentErrors.containsKey(request.getStudentId())) {
+                studentErrors.put(request.getStudentId(), checkStudent(request.getStudentId()));
+            }
+            if (!courseErrors.containsKey(request.getCourseId())) {
+                courseErrors.put(request.getCourseId(), checkCourse(request.getCourseId()));
+            }
         }
         
-        // Check for duplicate enrollment
-        if (enrollmentRepository.isActivelyEnrolled(studentId, courseId)) {
-            throw new InvalidInputException("Student is already enrolled in this course");
+        int chunkSize = AppConstants.BULK_ENROLLMENT_CHUNK_SIZE;
+        int chunkCount = (size + chunkSize - 1) / chunkSize;
+        if (chunkCount <= 1) {
+            enrollRange(requests, 0, size, studentErrors, courseErrors, enrollments, errors, latencies);
+        } else {
+            int threads = Math.min(chunkCount, Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads, IdGenerator.releasingThreadFactory());
+            try {
+                List<Future<?>> futures = new ArrayList<>(chunkCount);
+                for (int from = 0; from < size; from += chunkSize) {
+                    int chunkStart = from;
+                    int chunkEnd = Math.min(size, from + chunkSize);
+                    futures.add(executor.submit(() -> enrollRange(requests, chunkStart, chunkEnd,
+                                                                  studentErrors, courseErrors,
+                                                                  enrollments, errors, latencies)));
+                }
+                awaitAll(futures);
+            } finally {
+                executor.shutdown();
+            }
         }
-        
-        // Create enrollment
-        int id = IdGenerator.getNextEnrollmentId();
-        Enrollment enrollment = new Enrollment(id, studentId, courseId);
-        enrollmentRepository.save(enrollment);
-        
-        return enrollment;
+        return new BulkEnrollmentResult(enrollments, errors, latencies, System.nanoTime() - start);
     }
     
     /**
@@ -74,6 +123,21 @@ public class EnrollmentService {
         return enrollmentRepository.findByStudentId(studentId);
     }
     
+    /**
+     * Gets one page of the enrollments of a student, in ID order
+     * @param studentId The student ID
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit enrollments
+     * @throws EntityNotFoundException if student not found
+     */
+    public ArrayList<Enrollment> getEnrollmentsByStudent(int studentId, int afterId, int limit) 
+            throws EntityNotFoundException {
+        // Verify student exists
+        studentService.findStudentById(studentId);
+        return enrollmentRepository.findByStudentId(studentId, afterId, limit);
+    }
+    
     /**
      * Gets all active enrollments for a student
      * @param studentId The student ID
@@ -87,6 +151,21 @@ public class EnrollmentService {
         return enrollmentRepository.findActiveByStudentId(studentId);
     }
     
+    /**
+     * Gets one page of the active enrollments of a student, in ID order
+     * @param studentId The student ID
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit active enrollments
+     * @throws EntityNotFoundException if student not found
+     */
+    public ArrayList<Enrollment> getActiveEnrollmentsByStudent(int studentId, int afterId, int limit) 
+            throws EntityNotFoundException {
+        // Verify student exists
+        studentService.findStudentById(studentId);
+        return enrollmentRepository.findActiveByStudentId(studentId, afterId, limit);
+    }
+    
     /**
      * Gets all enrollments for a specific course
      * @param courseId The course ID
@@ -100,31 +179,70 @@ public class EnrollmentService {
         return enrollmentRepository.findByCourseId(courseId);
     }
     
+    /**
+     * Gets one page of the enrollments in a course, in ID order
+     * @param courseId The course ID
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit enrollments
+     * @throws EntityNotFoundException if course not found
+     */
+    public ArrayList<Enrollment> getEnrollmentsByCourse(int courseId, int afterId, int limit) 
+            throws EntityNotFoundException {
+        // Verify course exists
+        courseService.findCourseById(courseId);
+        return enrollmentRepository.findByCourseId(courseId, afterId, limit);
+    }
+    
     /**
      * Gets all enrollments in the system
-     * @return List of all enrollments
+     * @return Read-only snapshot of all enrollments
      */
-    public ArrayList<Enrollment> getAllEnrollments() {
+    public List<Enrollment> getAllEnrollments() {
         return enrollmentRepository.findAll();
     }
     
+    /**
+     * Gets one page of enrollments in ID order
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit enrollments; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Enrollment> getAllEnrollments(int afterId, int limit) {
+        return enrollmentRepository.findAll(afterId, limit);
+    }
+    
     /**
      * Gets enrollments by status
      * @param status The status to filter by
      * @return List of enrollments with the given status
      */
-    public ArrayList<Enrollment> getEnrollmentsByStatus(String status) {
+    public ArrayList<Enrollment> getEnrollmentsByStatus(EnrollmentStatus status) {
         return enrollmentRepository.findByStatus(status);
     }
     
+    /**
+     * Gets one page of the enrollments with a status, in ID order
+     * @param status The status to filter by
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit enrollments with the given status
+     */
+    public ArrayList<Enrollment> getEnrollmentsByStatus(EnrollmentStatus status, int afterId, int limit) {
+        return enrollmentRepository.findByStatus(status, afterId, limit);
+    }
+    
     /**
      * Updates the status of an enrollment
      * @param enrollmentId The enrollment ID
-     * @param status The new status (ACTIVE, COMPLETED, CANCELLED, DROPPED)
-     * @throws EntityNotFoundException if enrollment not found
-     * @throws InvalidInputException if status is invalid
+     * @param status The new status
+     * @throws EntityNotFoundException if enrollment not found, or it is being
+     *         reactivated and its student or course no longer exists
+     * @throws InvalidInputException if status is missing, or is ACTIVE while the
+     *         student or course is inactive or the student has another active
+     *         enrollment in the course
      */
-    public void updateEnrollmentStatus(int enrollmentId, String status) 
+    public void updateEnrollmentStatus(int enrollmentId, EnrollmentStatus status) 
             throws EntityNotFoundException, InvalidInputException {
         Enrollment enrollment = enrollmentRepository.findById(enrollmentId);
         if (enrollment == null) {
@@ -132,13 +250,41 @@ public class EnrollmentService {
         }
         
         // Validate status
-        if (!isValidStatus(status)) {
+        if (status == null) {
             throw new InvalidInputException(
                 "Invalid status. Valid options: ACTIVE, COMPLETED, CANCELLED, DROPPED");
         }
         
-        enrollment.setStatus(status);
-        enrollmentRepository.update(enrollment);
+        // Status changes of a pair are serialized with enrollStudent for that pair.
+        // The log wait is deferred until the write has ended.
+        long stamp = transactionManager.beginWrite();
+        try {
+            while (true) {
+                // Reactivating enrolls again, so it is checked like a new enrollment
+                if (status == EnrollmentStatus.ACTIVE && enrollment.getStatus() != EnrollmentStatus.ACTIVE) {
+                    checkEnrollable(enrollment.getStudentId(), enrollment.getCourseId());
+                }
+                synchronized (transactionManager.pairLock(enrollment.getStudentId(), enrollment.getCourseId())) {
+                    if (status == EnrollmentStatus.ACTIVE && enrollment.getStatus() != EnrollmentStatus.ACTIVE &&
+                        enrollmentRepository.isActivelyEnrolled(enrollment.getStudentId(), enrollment.getCourseId())) {
+                        throw new InvalidInputException("Student is already enrolled in this course");
+                    }
+                    Enrollment updated = new Enrollment(enrollment);
+                    updated.setStatus(status);
+                    // Applied only if unchanged since it was read, so a concurrent change or delete is not overwritten
+                    if (enrollmentRepository.replace(enrollment, updated)) {
+                        written(updated);
+                        return;
+                    }
+                }
+                enrollment = enrollmentRepository.findById(enrollmentId);
+                if (enrollment == null) {
+                    throw new EntityNotFoundException("Enrollment with ID " + enrollmentId + " not found");
+                }
+            }
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -149,7 +295,7 @@ public class EnrollmentService {
      */
     public void completeEnrollment(int enrollmentId) 
             throws EntityNotFoundException, InvalidInputException {
-        updateEnrollmentStatus(enrollmentId, "COMPLETED");
+        updateEnrollmentStatus(enrollmentId, EnrollmentStatus.COMPLETED);
     }
     
     /**
@@ -160,7 +306,7 @@ public class EnrollmentService {
      */
     public void cancelEnrollment(int enrollmentId) 
             throws EntityNotFoundException, InvalidInputException {
-        updateEnrollmentStatus(enrollmentId, "CANCELLED");
+        updateEnrollmentStatus(enrollmentId, EnrollmentStatus.CANCELLED);
     }
     
     /**
@@ -171,7 +317,7 @@ public class EnrollmentService {
      */
     public void dropEnrollment(int enrollmentId) 
             throws EntityNotFoundException, InvalidInputException {
-        updateEnrollmentStatus(enrollmentId, "DROPPED");
+        updateEnrollmentStatus(enrollmentId, EnrollmentStatus.DROPPED);
     }
     
     /**
@@ -180,7 +326,46 @@ public class EnrollmentService {
      * @return true if deleted, false if not found
      */
     public boolean deleteEnrollment(int enrollmentId) {
-        return enrollmentRepository.delete(enrollmentId);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Enrollment enrollment = enrollmentRepository.findById(enrollmentId);
+            if (enrollment == null || !enrollmentRepository.delete(enrollmentId)) {
+                return false;
+            }
+            written(enrollment);
+            return true;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
+    }
+    
+    /**
+     * Permanently deletes all enrollments with a given status,
+     * e.g. to purge cancelled enrollments
+     * @param status The status to purge
+     * @return Number of enrollments deleted
+     */
+    public int purgeEnrollments(EnrollmentStatus status) {
+        long stamp = transactionManager.beginWrite();
+        try {
+            int count = enrollmentRepository.deleteByStatus(status);
+            transactionManager.writtenAll(TransactionManager.ENROLLMENT);
+            transactionManager.writtenAll(TransactionManager.STUDENT_ENROLLMENTS);
+            return count;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
+    }
+    
+    /**
+     * Writes all enrollments to a binary table file that read-only processes
+     * can open with MappedEnrollmentTable
+     * @param file The table file, replaced if it exists
+     * @return Number of enrollments written
+     * @throws IOException if the file cannot be written
+     */
+    public int writeEnrollmentTable(Path file) throws IOException {
+        return MappedEnrollmentTable.write(file, enrollmentRepository);
     }
     
     /**
@@ -218,26 +403,13 @@ public class EnrollmentService {
         Student student = studentService.findStudentById(studentId);
         ArrayList<Enrollment> enrollments = enrollmentRepository.findByStudentId(studentId);
         
-        int active = 0;
-        int completed = 0;
-        int cancelled = 0;
-        
-        for (Enrollment e : enrollments) {
-            switch (e.getStatus()) {
-                case "ACTIVE":
-                    active++;
-                    break;
-                case "COMPLETED":
-                    completed++;
-                    break;
-                case "CANCELLED":
-                    cancelled++;
-                    break;
-            }
-        }
+        int[] counts = countByStatus(enrollments);
         
         return String.format("Student: %s\nTotal Enrollments: %d\nActive: %d\nCompleted: %d\nCancelled: %d",
-                           student.getDisplayName(), enrollments.size(), active, completed, cancelled);
+                           student.getDisplayName(), enrollments.size(),
+                           counts[EnrollmentStatus.ACTIVE.ordinal()],
+                           counts[EnrollmentStatus.COMPLETED.ordinal()],
+                           counts[EnrollmentStatus.CANCELLED.ordinal()]);
     }
     
     /**
@@ -251,30 +423,153 @@ public class EnrollmentService {
         Course course = courseService.findCourseById(courseId);
         ArrayList<Enrollment> enrollments = enrollmentRepository.findByCourseId(courseId);
         
-        int active = 0;
-        int completed = 0;
+        int[] counts = countByStatus(enrollments);
         
-        for (Enrollment e : enrollments) {
-            if ("ACTIVE".equals(e.getStatus())) {
-                active++;
-            } else if ("COMPLETED".equals(e.getStatus())) {
-                completed++;
+        return String.format("Course: %s\nTotal Enrollments: %d\nActive: %d\nCompleted: %d",
+                           course.getCourseName(), enrollments.size(),
+                           counts[EnrollmentStatus.ACTIVE.ordinal()],
+                           counts[EnrollmentStatus.COMPLETED.ordinal()]);
+    }
+    
+    /**
+     * Checks that the student and course exist and are active, then checks for
+     * a duplicate and creates the enrollment atomically for this pair;
+     * enrollments of other pairs only contend when they share a lock stripe.
+     * The checks and the write form one service write, so no transaction can
+     * delete the student or course in between. The stripe is released before
+     * waiting for the write-ahead log, so it is never held across an fsync.
+     */
+    private Enrollment createEnrollment(int studentId, int courseId)
+            throws EntityNotFoundException, InvalidInputException {
+        long stamp = transactionManager.beginWrite();
+        try {
+            checkEnrollable(studentId, courseId);
+            synchronized (transactionManager.pairLock(studentId, courseId)) {
+                if (enrollmentRepository.isActivelyEnrolled(studentId, courseId)) {
+                    throw new InvalidInputException("Student is already enrolled in this course");
+                }
+                
+                int id = IdGenerator.getNextEnrollmentId();
+                Enrollment enrollment = new Enrollment(id, studentId, courseId);
+                enrollmentRepository.save(enrollment);
+                written(enrollment);
+                return enrollment;
             }
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
+    }
+    
+    /**
+     * Verifies that the student and course exist and are active
+     */
+    private void checkEnrollable(int studentId, int courseId)
+            throws EntityNotFoundException, InvalidInputException {
+        Student student = studentService.findStudentById(studentId);
+        if (!student.isActive()) {
+            throw new InvalidInputException("Cannot enroll inactive student");
+        }
+        Course course = courseService.findCourseById(courseId);
+        if (!course.isActive()) {
+            throw new InvalidInputException("Cannot enroll in inactive course");
+        }
+    }
+    
+    /**
+     * Records that a service write changed an enrollment, and with it the
+     * set of its student's enrollments. Call between beginWrite and endWrite.
+     */
+    private void written(Enrollment enrollment) {
+        transactionManager.written(TransactionManager.ENROLLMENT, enrollment.getId());
+        transactionManager.written(TransactionManager.STUDENT_ENROLLMENTS, enrollment.getStudentId());
+    }
+    
+    private void enrollRange(List<EnrollmentRequest> requests, int from, int to,
+                             HashMap<Integer, String> studentErrors, HashMap<Integer, String> courseErrors,
+                             Enrollment[] enrollments, String[] errors, long[] latencies) {
+        // The chunk waits once for the log to be durable, not once per enrollment
+        WriteAheadLog.beginGroup();
+        try {
+            for (int i = from; i < to; i++) {
+                long itemStart = System.nanoTime();
+                EnrollmentRequest request = requests.get(i);
+                String error = studentErrors.get(request.getStudentId());
+                if (error == null) {
+                    error = courseErrors.get(request.getCourseId());
+                }
+                if (error == null) {
+                    try {
+                        enrollments[i] = createEnrollment(request.getStudentId(), request.getCourseId());
+                    } catch (EntityNotFoundException | InvalidInputException e) {
+                        error = e.getMessage();
+                    }
+                }
+                errors[i] = error;
+                latencies[i] = System.nanoTime() - itemStart;
+            }
+        } finally {
+            WriteAheadLog.endGroup();
         }
-        
-        return String.format("Course: %s\nTotal Enrollments: %d\nActive: %d\nCompleted: %d",
-                           course.getCourseName(), enrollments.size(), active, completed);
     }
     
     /**
-     * Validates if a status string is valid
-     * @param status The status to validate
-     * @return true if valid, false otherwise
+     * Waits for every chunk, even if interrupted, so the result arrays are
+     * complete and no worker is still writing to them; the interrupt is restored.
      */
-    private boolean isValidStatus(String status) {
-        return "ACTIVE".equals(status) || 
-               "COMPLETED".equals(status) || 
-               "CANCELLED".equals(status) ||
-               "DROPPED".equals(status);
+    private static void awaitAll(List<Future<?>> futures) {
+        boolean interrupted = false;
+        for (Future<?> future : futures) {
+            while (true) {
+                try {
+                    future.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Bulk enrollment worker failed", e.getCause());
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Returns why a student cannot be enrolled, or null if they can
+     */
+    private String checkStudent(int studentId) {
+        try {
+            return studentService.findStudentById(studentId).isActive() ? null : "Cannot enroll inactive student";
+        } catch (EntityNotFoundException e) {
+            return e.getMessage();
+        }
+    }
+    
+    /**
+     * Returns why a course cannot be enrolled in, or null if it can
+     */
+    private String checkCourse(int courseId) {
+        try {
+            return courseService.findCourseById(courseId).isActive() ? null : "Cannot enroll in inactive course";
+        } catch (EntityNotFoundException e) {
+            return e.getMessage();
+        }
+    }
+    
+    /**
+     * Counts enrollments per status. Enrollments without a status are left
+     * out of every count but still included in the total.
+     * @param enrollments The enrollments to count
+     * @return Counts indexed by EnrollmentStatus ordinal
+     */
+    private int[] countByStatus(ArrayList<Enrollment> enrollments) {
+        int[] counts = new int[EnrollmentStatus.values().length];
+        for (Enrollment e : enrollments) {
+            if (e.getStatus() != null) {
+                counts[e.getStatus().ordinal()]++;
+            }
+        }
+        return counts;
     }
 }
\ No newline at end of file
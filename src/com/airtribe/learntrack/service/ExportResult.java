@@ -0,0 +1,47 @@
+package com.airtribe.learntrack.service;
+
+/**
+ * Outcome of an EnrollmentExporter run: rows and bytes written and how fast
+ */
+public class ExportResult {
+    private final long rowCount;
+    private final long byteCount;
+    private final long elapsedNanos;
+    
+    ExportResult(long rowCount, long byteCount, long elapsedNanos) {
+        this.rowCount = rowCount;
+        this.byteCount = byteCount;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    /**
+     * Returns the number of enrollments written, excluding any header line
+     * @return Count of rows
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+    
+    public long getByteCount() {
+        return byteCount;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Returns write throughput over wall-clock time
+     * @return Megabytes (10^6 bytes) written per second
+     */
+    public double getMegabytesPerSecond() {
+        return elapsedNanos == 0 ? 0 : byteCount * 1_000.0 / elapsedNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d enrollments, %.1f MB in %.1f ms (%.0f MB/s)",
+                             rowCount, byteCount / 1_000_000.0, elapsedNanos / 1_000_000.0,
+                             getMegabytesPerSecond());
+    }
+}
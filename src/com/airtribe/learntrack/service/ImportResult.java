@@ -0,0 +1,63 @@
+package com.airtribe.learntrack.service;
+
+import java.nio.file.Path;
+
+/**
+ * Outcome of a CsvImporter run: how many rows were imported and rejected,
+ * where the rejected rows were written, and how fast the file was processed.
+ */
+public class ImportResult {
+    private final long importedCount;
+    private final long rejectedCount;
+    private final Path rejectsFile;
+    private final long elapsedNanos;
+    
+    ImportResult(long importedCount, long rejectedCount, Path rejectsFile, long elapsedNanos) {
+        this.importedCount = importedCount;
+        this.rejectedCount = rejectedCount;
+        this.rejectsFile = rejectsFile;
+        this.elapsedNanos = elapsedNanos;
+    }
+    
+    public long getImportedCount() {
+        return importedCount;
+    }
+    
+    public long getRejectedCount() {
+        return rejectedCount;
+    }
+    
+    /**
+     * Returns the number of data rows read, excluding the header and blank lines
+     * @return Imported plus rejected rows
+     */
+    public long getRowCount() {
+        return importedCount + rejectedCount;
+    }
+    
+    /**
+     * Returns the file listing each rejected row with its line number and reason
+     * @return The rejects file; it only has a header line if nothing was rejected
+     */
+    public Path getRejectsFile() {
+        return rejectsFile;
+    }
+    
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+    
+    /**
+     * Returns throughput over wall-clock time, including reading and rejected rows
+     * @return Rows processed per second
+     */
+    public double getRowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : getRowCount() * 1_000_000_000.0 / elapsedNanos;
+    }
+    
+    @Override
+    public String toString() {
+        return String.format("%d imported, %d rejected in %.1f ms (%.0f rows/s)",
+                             importedCount, rejectedCount, elapsedNanos / 1_000_000.0, getRowsPerSecond());
+    }
+}
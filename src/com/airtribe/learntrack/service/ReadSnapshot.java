@@ -0,0 +1,45 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import java.util.List;
+
+/**
+ * Consistent read-only view of all three repositories at one point in time,
+ * taken by TransactionManager.snapshot. The lists are the repositories'
+ * snapshots, so holding or scanning them never blocks writers.
+ */
+public class ReadSnapshot {
+    private final int version;
+    private final List<Student> students;
+    private final List<Course> courses;
+    private final List<Enrollment> enrollments;
+    
+    ReadSnapshot(int version, List<Student> students, List<Course> courses, List<Enrollment> enrollments) {
+        this.version = version;
+        this.students = students;
+        this.courses = courses;
+        this.enrollments = enrollments;
+    }
+    
+    /**
+     * Returns the commit version the snapshot was taken at
+     * @return Number of transactions committed before the snapshot
+     */
+    public int getVersion() {
+        return version;
+    }
+    
+    public List<Student> getStudents() {
+        return students;
+    }
+    
+    public List<Course> getCourses() {
+        return courses;
+    }
+    
+    public List<Enrollment> getEnrollments() {
+        return enrollments;
+    }
+}
@@ -7,16 +7,21 @@ import com.airtribe.learntrack.exception.InvalidInputException;
 import com.airtribe.learntrack.util.IdGenerator;
 import com.airtribe.learntrack.util.InputValidator;
 import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Service class for Student business logic.
  * Handles validation and coordinates with StudentRepository.
+ * Each write goes through the TransactionManager, so transactions that read
+ * the students it changes conflict with it.
  */
 public class StudentService {
     private StudentRepository studentRepository;
+    private TransactionManager transactionManager;
     
-    public StudentService(StudentRepository studentRepository) {
+    public StudentService(StudentRepository studentRepository, TransactionManager transactionManager) {
         this.studentRepository = studentRepository;
+        this.transactionManager = transactionManager;
     }
     
     /**
@@ -44,7 +49,13 @@ public class StudentService {
         // Create student with auto-generated ID
         int id = IdGenerator.getNextStudentId();
         Student student = new Student(id, firstName, lastName, email, batch);
-        studentRepository.save(student);
+        long stamp = transactionManager.beginWrite();
+        try {
+            studentRepository.save(student);
+            transactionManager.written(TransactionManager.STUDENT, id);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
         
         return student;
     }
@@ -65,12 +76,22 @@ public class StudentService {
     
     /**
      * Gets all students in the system
-     * @return List of all students
+     * @return Read-only snapshot of all students
      */
-    public ArrayList<Student> getAllStudents() {
+    public List<Student> getAllStudents() {
         return studentRepository.findAll();
     }
     
+    /**
+     * Gets one page of students in ID order
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit students; the last one's ID is the cursor for the next page
+     */
+    public ArrayList<Student> getAllStudents(int afterId, int limit) {
+        return studentRepository.findAll(afterId, limit);
+    }
+    
     /**
      * Gets all active students
      * @return List of active students
@@ -79,6 +100,16 @@ public class StudentService {
         return studentRepository.findAllActive();
     }
     
+    /**
+     * Gets one page of active students in ID order
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit active students
+     */
+    public ArrayList<Student> getActiveStudents(int afterId, int limit) {
+        return studentRepository.findAllActive(afterId, limit);
+    }
+    
     /**
      * Finds students by batch
      * @param batch The batch name
@@ -88,15 +119,68 @@ public class StudentService {
         return studentRepository.findByBatch(batch);
     }
     
+    /**
+     * Finds one page of the students in a batch, in ID order
+     * @param batch The batch name
+     * @param afterId Cursor: only entries with a greater ID are returned; 0 starts at the first page
+     * @param limit Maximum number of entries to return
+     * @return Up to limit students in the batch
+     */
+    public ArrayList<Student> getStudentsByBatch(String batch, int afterId, int limit) {
+        return studentRepository.findByBatch(batch, afterId, limit);
+    }
+    
+    /**
+     * Deactivates every student in a batch
+     * @param batch The batch name
+     * @return Number of students deactivated
+     */
+    public int deactivateBatch(String batch) {
+        long stamp = transactionManager.beginWrite();
+        try {
+            int count = studentRepository.deactivateBatch(batch);
+            transactionManager.writtenAll(TransactionManager.STUDENT);
+            return count;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
+    }
+    
+    /**
+     * Moves every student of a batch to another batch
+     * @param fromBatch The current batch name
+     * @param toBatch The new batch name
+     * @return Number of students moved
+     * @throws InvalidInputException if the new batch name is empty
+     */
+    public int moveBatch(String fromBatch, String toBatch) throws InvalidInputException {
+        if (toBatch == null || toBatch.trim().isEmpty()) {
+            throw new InvalidInputException("Batch name cannot be empty");
+        }
+        long stamp = transactionManager.beginWrite();
+        try {
+            int count = studentRepository.moveBatch(fromBatch, toBatch);
+            transactionManager.writtenAll(TransactionManager.STUDENT);
+            return count;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
+    }
+    
     /**
      * Deactivates a student (soft delete)
      * @param id The student ID
      * @throws EntityNotFoundException if student not found
      */
     public void deactivateStudent(int id) throws EntityNotFoundException {
-        Student student = findStudentById(id);
-        student.setActive(false);
-        studentRepository.update(student);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Student student = new Student(findStudentById(id));
+            student.setActive(false);
+            update(student);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -105,9 +189,14 @@ public class StudentService {
      * @throws EntityNotFoundException if student not found
      */
     public void activateStudent(int id) throws EntityNotFoundException {
-        Student student = findStudentById(id);
-        student.setActive(true);
-        studentRepository.update(student);
+        long stamp = transactionManager.beginWrite();
+        try {
+            Student student = new Student(findStudentById(id));
+            student.setActive(true);
+            update(student);
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -122,34 +211,39 @@ public class StudentService {
      */
     public void updateStudent(int id, String firstName, String lastName, String email, String batch) 
             throws EntityNotFoundException, InvalidInputException {
-        Student student = findStudentById(id);
-        
-        if (firstName != null && !firstName.isEmpty()) {
-            if (!InputValidator.isValidName(firstName)) {
-                throw new InvalidInputException("First name must be between 2-50 characters");
+        long stamp = transactionManager.beginWrite();
+        try {
+            Student student = new Student(findStudentById(id));
+            
+            if (firstName != null && !firstName.isEmpty()) {
+                if (!InputValidator.isValidName(firstName)) {
+                    throw new InvalidInputException("First name must be between 2-50 characters");
+                }
+                student.setFirstName(firstName);
             }
-            student.setFirstName(firstName);
-        }
-        
-        if (lastName != null && !lastName.isEmpty()) {
-            if (!InputValidator.isValidName(lastName)) {
-                throw new InvalidInputException("Last name must be between 2-50 characters");
+            
+            if (lastName != null && !lastName.isEmpty()) {
+                if (!InputValidator.isValidName(lastName)) {
+                    throw new InvalidInputException("Last name must be between 2-50 characters");
+                }
+                student.setLastName(lastName);
             }
-            student.setLastName(lastName);
-        }
-        
-        if (email != null && !email.isEmpty()) {
-            if (!InputValidator.isValidEmail(email)) {
-                throw new InvalidInputException("Invalid email format");
+            
+            if (email != null && !email.isEmpty()) {
+                if (!InputValidator.isValidEmail(email)) {
+                    throw new InvalidInputException("Invalid email format");
+                }
+                student.setEmail(email);
             }
-            student.setEmail(email);
-        }
-        
-        if (batch != null && !batch.isEmpty()) {
-            student.setBatch(batch);
+            
+            if (batch != null && !batch.isEmpty()) {
+                student.setBatch(batch);
+            }
+            
+            update(student);
+        } finally {
+            transactionManager.endWrite(stamp);
         }
-        
-        studentRepository.update(student);
     }
     
     /**
@@ -158,7 +252,16 @@ public class StudentService {
      * @return true if deleted, false if not found
      */
     public boolean deleteStudent(int id) {
-        return studentRepository.delete(id);
+        long stamp = transactionManager.beginWrite();
+        try {
+            boolean deleted = studentRepository.delete(id);
+            if (deleted) {
+                transactionManager.written(TransactionManager.STUDENT, id);
+            }
+            return deleted;
+        } finally {
+            transactionManager.endWrite(stamp);
+        }
     }
     
     /**
@@ -176,5 +279,13 @@ public class StudentService {
     public int getActiveStudentCount() {
         return studentRepository.countActive();
     }
+    
+    /**
+     * Stores a changed student. Call between beginWrite and endWrite.
+     */
+    private void update(Student student) {
+        studentRepository.update(student);
+        transactionManager.written(TransactionManager.STUDENT, student.getId());
+    }
 }
 
@@ -0,0 +1,220 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.exception.TransactionConflictException;
+import com.airtribe.learntrack.util.LongIntHashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A unit of reads and writes across students, courses and enrollments,
+ * started by TransactionManager.begin.
+ * Reads see the current committed data plus the transaction's own pending
+ * writes. A read that finds a newer write fails right away with
+ * TransactionConflictException; one racing the read is caught on commit,
+ * which validates every read again. A transaction that only reads must
+ * therefore commit before trusting what it read. Writes are buffered until
+ * commit. Entities returned by reads are private copies, so they can be
+ * modified and passed back to a save method.
+ * Must end with commit or rollback, or the manager keeps versions for it.
+ * Not thread-safe: a transaction belongs to one thread.
+ */
+public class Transaction {
+    private final TransactionManager manager;
+    private final int startVersion;
+    private final HashSet<Long> readKeys;
+    // Key -> new entity, or null for a delete, in write order
+    private final LinkedHashMap<Long, Object> writes;
+    private boolean finished;
+    
+    Transaction(TransactionManager manager, int startVersion) {
+        this.manager = manager;
+        this.startVersion = startVersion;
+        this.readKeys = new HashSet<>();
+        this.writes = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Finds a student by ID
+     * @param id The student ID
+     * @return A copy of the student, or null if not found
+     * @throws TransactionConflictException if the student changed since the transaction began
+     */
+    public Student findStudent(int id) throws TransactionConflictException {
+        long key = LongIntHashMap.pack(TransactionManager.STUDENT, id);
+        if (writes.containsKey(key)) {
+            Student pending = (Student) writes.get(key);
+            return pending == null ? null : new Student(pending);
+        }
+        Student student = manager.students().findById(id);
+        checkRead(key);
+        return student == null ? null : new Student(student);
+    }
+    
+    /**
+     * Finds a course by ID
+     * @param id The course ID
+     * @return A copy of the course, or null if not found
+     * @throws TransactionConflictException if the course changed since the transaction began
+     */
+    public Course findCourse(int id) throws TransactionConflictException {
+        long key = LongIntHashMap.pack(TransactionManager.COURSE, id);
+        if (writes.containsKey(key)) {
+            Course pending = (Course) writes.get(key);
+            return pending == null ? null : new Course(pending);
+        }
+        Course course = manager.courses().findById(id);
+        checkRead(key);
+        return course == null ? null : new Course(course);
+    }
+    
+    /**
+     * Finds an enrollment by ID
+     * @param id The enrollment ID
+     * @return A copy of the enrollment, or null if not found
+     * @throws TransactionConflictException if the enrollment changed since the transaction began
+     */
+    public Enrollment findEnrollment(int id) throws TransactionConflictException {
+        long key = LongIntHashMap.pack(TransactionManager.ENROLLMENT, id);
+        if (writes.containsKey(key)) {
+            Enrollment pending = (Enrollment) writes.get(key);
+            return pending == null ? null : new Enrollment(pending);
+        }
+        Enrollment enrollment = manager.enrollments().findById(id);
+        checkRead(key);
+        return enrollment == null ? null : new Enrollment(enrollment);
+    }
+    
+    /**
+     * Finds all enrollments of a student, including this transaction's pending changes
+     * @param studentId The student ID
+     * @return Copies of the student's enrollments
+     * @throws TransactionConflictException if any enrollment of the student was
+     *         added, changed or removed since the transaction began
+     */
+    public ArrayList<Enrollment> findEnrollmentsByStudent(int studentId) throws TransactionConflictException {
+        ArrayList<Enrollment> committed = manager.enrollments().findByStudentId(studentId);
+        checkRead(LongIntHashMap.pack(TransactionManager.STUDENT_ENROLLMENTS, studentId));
+        ArrayList<Enrollment> result = new ArrayList<>(committed.size());
+        for (Enrollment enrollment : committed) {
+            if (!writes.containsKey(LongIntHashMap.pack(TransactionManager.ENROLLMENT, enrollment.getId()))) {
+                result.add(new Enrollment(enrollment));
+            }
+        }
+        for (Map.Entry<Long, Object> write : writes.entrySet()) {
+            Object entity = write.getValue();
+            if (entity instanceof Enrollment && ((Enrollment) entity).getStudentId() == studentId) {
+                result.add(new Enrollment((Enrollment) entity));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Saves a new student, or replaces the existing student with the same ID, on commit
+     * @param student The student; copied, so later changes to it have no effect
+     */
+    public void saveStudent(Student student) {
+        write(LongIntHashMap.pack(TransactionManager.STUDENT, student.getId()), new Student(student));
+    }
+    
+    /**
+     * Deletes a student on commit. The student's enrollments are not touched.
+     * @param id The student ID
+     */
+    public void deleteStudent(int id) {
+        write(LongIntHashMap.pack(TransactionManager.STUDENT, id), null);
+    }
+    
+    /**
+     * Saves a new course, or replaces the existing course with the same ID, on commit
+     * @param course The course; copied, so later changes to it have no effect
+     */
+    public void saveCourse(Course course) {
+        write(LongIntHashMap.pack(TransactionManager.COURSE, course.getId()), new Course(course));
+    }
+    
+    /**
+     * Deletes a course on commit
+     * @param id The course ID
+     */
+    public void deleteCourse(int id) {
+        write(LongIntHashMap.pack(TransactionManager.COURSE, id), null);
+    }
+    
+    /**
+     * Saves a new enrollment, or replaces the existing enrollment with the same ID, on commit.
+     * The commit fails with TransactionConflictException if this makes the
+     * enrollment active while its student has another active enrollment in the course.
+     * @param enrollment The enrollment; copied, so later changes to it have no effect
+     */
+    public void saveEnrollment(Enrollment enrollment) {
+        write(LongIntHashMap.pack(TransactionManager.ENROLLMENT, enrollment.getId()), new Enrollment(enrollment));
+    }
+    
+    /**
+     * Deletes an enrollment on commit
+     * @param id The enrollment ID
+     */
+    public void deleteEnrollment(int id) {
+        write(LongIntHashMap.pack(TransactionManager.ENROLLMENT, id), null);
+    }
+    
+    /**
+     * Applies all writes atomically, unless something this transaction read or
+     * wrote was changed by another write after this one began, or an
+     * enrollment it saves would be a second active enrollment of its pair.
+     * Ends the transaction either way.
+     * @throws TransactionConflictException on a conflict; no write is applied
+     */
+    public void commit() throws TransactionConflictException {
+        checkOpen();
+        try {
+            manager.commit(startVersion, readKeys, writes);
+        } finally {
+            end();
+        }
+    }
+    
+    /**
+     * Discards all writes and ends the transaction. Does nothing if it has already ended.
+     */
+    public void rollback() {
+        end();
+        writes.clear();
+    }
+    
+    private void checkRead(long key) throws TransactionConflictException {
+        checkOpen();
+        readKeys.add(key);
+        // The version is read after the value, so a newer value always comes with a newer version
+        if (manager.version(key) > startVersion) {
+            throw new TransactionConflictException(
+                TransactionManager.describe(key) + " was changed by a concurrent write");
+        }
+    }
+    
+    private void write(long key, Object entity) {
+        checkOpen();
+        // Re-inserting moves the key to the end, keeping writes in program order
+        writes.remove(key);
+        writes.put(key, entity);
+    }
+    
+    private void end() {
+        if (!finished) {
+            finished = true;
+            manager.end(startVersion);
+        }
+    }
+    
+    private void checkOpen() {
+        if (finished) {
+            throw new IllegalStateException("Transaction has already ended");
+        }
+    }
+}
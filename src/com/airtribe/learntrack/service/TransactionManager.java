@@ -0,0 +1,510 @@
+package com.airtribe.learntrack.service;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.exception.TransactionConflictException;
+import com.airtribe.learntrack.repository.CourseRepository;
+import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.StudentRepository;
+import com.airtribe.learntrack.repository.WriteAheadLog;
+import com.airtribe.learntrack.util.LongIntHashMap;
+import com.airtribe.learntrack.util.OptimisticReads;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Multi-entity transactions over the three repositories, using optimistic
+ * multi-version concurrency control.
+ * The services and repositories never modify a stored entity in place: each
+ * write installs a new object, and the repositories' copy-free snapshots keep
+ * the previous versions alive for as long as a reader holds them. The manager
+ * numbers writes and remembers, per entity, the write that last changed it.
+ * A Transaction buffers its writes and records what it reads. On commit,
+ * anything it read or wrote that was changed since it began is a conflict;
+ * otherwise the writes are applied as one unit.
+ * The services route their own writes through the manager as well (see
+ * beginWrite): each holds the commit lock shared while it checks and writes,
+ * and records the keys it changed, so commits see them as conflicts. Bulk
+ * service writes (e.g. deactivateBatch) mark every key of their type as
+ * changed. Only the validate-and-apply step of a commit, and taking a
+ * snapshot, are exclusive.
+ * Reads inside a transaction see committed data that is not frozen at its
+ * start: a read fails fast when it finds a newer version, but a plain service
+ * write racing the read is only caught when the transaction commits, so a
+ * transaction that only reads must still commit to know its reads were
+ * consistent. snapshot() gives a frozen point-in-time view instead.
+ * Versions no active transaction can conflict with are pruned; a
+ * transaction must therefore always be committed or rolled back.
+ * Writes made directly on the repositories are not versioned.
+ */
+public class TransactionManager {
+    /**
+     * Work to run inside a transaction
+     */
+    @FunctionalInterface
+    public interface Work<T> {
+        T run(Transaction transaction) throws TransactionConflictException;
+    }
+    
+    // Key types, stored in the upper half of the version keys
+    static final int STUDENT = 0;
+    static final int COURSE = 1;
+    static final int ENROLLMENT = 2;
+    // The set of enrollments of one student (id = studentId), so that a
+    // transaction listing them conflicts with one adding or moving an enrollment
+    static final int STUDENT_ENROLLMENTS = 3;
+    
+    private StudentRepository studentRepository;
+    private CourseRepository courseRepository;
+    private EnrollmentRepository enrollmentRepository;
+    // (type, id) -> number of the last write to the key, striped by key, each
+    // stripe guarded by its own monitor; absent if none since the last prune
+    private final LongIntHashMap[] versions;
+    // Per key type, the last bulk write that may have changed any key of the type
+    private final AtomicIntegerArray typeVersions;
+    // Number of the last write, by a commit or a service
+    private final AtomicInteger commitVersion;
+    // Held for writing while a commit validates and applies its writes, and
+    // for reading by each service write
+    private final StampedLock commitLock;
+    // Start version -> number of transactions begun at it that have not ended
+    private final TreeMap<Integer, Integer> activeStarts;
+    // Entries in versions, and the count at which they are next pruned
+    private final AtomicInteger versionEntries;
+    private volatile int pruneThreshold;
+    private final AtomicBoolean pruning;
+    // Striped locks making the duplicate check and insert atomic per
+    // (student, course) pair; taken by EnrollmentService and by commits
+    private final Object[] pairLocks;
+    
+    public TransactionManager(StudentRepository studentRepository, CourseRepository courseRepository,
+                              EnrollmentRepository enrollmentRepository) {
+        this.studentRepository = studentRepository;
+        this.courseRepository = courseRepository;
+        this.enrollmentRepository = enrollmentRepository;
+        this.versions = new LongIntHashMap[AppConstants.TRANSACTION_VERSION_STRIPES];
+        for (int i = 0; i < versions.length; i++) {
+            versions[i] = new LongIntHashMap();
+        }
+        this.typeVersions = new AtomicIntegerArray(STUDENT_ENROLLMENTS + 1);
+        this.commitVersion = new AtomicInteger();
+        this.commitLock = new StampedLock();
+        this.activeStarts = new TreeMap<>();
+        this.versionEntries = new AtomicInteger();
+        this.pruneThreshold = AppConstants.TRANSACTION_PRUNE_ENTRIES;
+        this.pruning = new AtomicBoolean();
+        this.pairLocks = new Object[AppConstants.ENROLLMENT_LOCK_STRIPES];
+        for (int i = 0; i < pairLocks.length; i++) {
+            pairLocks[i] = new Object();
+        }
+    }
+    
+    /**
+     * Starts a transaction that sees the data as of the latest write
+     * @return The new transaction
+     */
+    public Transaction begin() {
+        synchronized (activeStarts) {
+            int startVersion = commitVersion.get();
+            activeStarts.merge(startVersion, 1, Integer::sum);
+            return new Transaction(this, startVersion);
+        }
+    }
+    
+    /**
+     * Runs work in a transaction and commits it, starting over with a fresh
+     * transaction on conflict up to TRANSACTION_MAX_ATTEMPTS times
+     * @param work The reads and writes to perform
+     * @return The work's result
+     * @throws TransactionConflictException if every attempt conflicted
+     */
+    public <T> T execute(Work<T> work) throws TransactionConflictException {
+        for (int attempt = 1; ; attempt++) {
+            Transaction transaction = begin();
+            try {
+                T result = work.run(transaction);
+                transaction.commit();
+                return result;
+            } catch (TransactionConflictException e) {
+                if (attempt >= AppConstants.TRANSACTION_MAX_ATTEMPTS) {
+                    throw e;
+                }
+            } finally {
+                transaction.rollback();
+            }
+        }
+    }
+    
+    /**
+     * Takes a consistent read-only view of all three repositories; reading it
+     * never blocks writers and is never affected by later writes. Fixing its
+     * point in time waits for commits and service writes in progress and
+     * holds off new ones, so all three lists show the same point, but costs
+     * only O(1) per repository (per shard for enrollments). Enrollment stores
+     * that copy their records for a snapshot do so after writes resume.
+     * @return The snapshot
+     */
+    public ReadSnapshot snapshot() {
+        int version;
+        List<Student> students;
+        List<Course> courses;
+        Supplier<List<Enrollment>> enrollments;
+        long stamp = commitLock.writeLock();
+        try {
+            version = commitVersion.get();
+            students = studentRepository.findAll();
+            courses = courseRepository.findAll();
+            enrollments = enrollmentRepository.beginSnapshot();
+        } finally {
+            commitLock.unlockWrite(stamp);
+        }
+        return new ReadSnapshot(version, students, courses, enrollments.get());
+    }
+    
+    StudentRepository students() {
+        return studentRepository;
+    }
+    
+    CourseRepository courses() {
+        return courseRepository;
+    }
+    
+    EnrollmentRepository enrollments() {
+        return enrollmentRepository;
+    }
+    
+    /**
+     * Starts a write made outside a transaction, by a service. Until the
+     * matching endWrite, no commit can validate or apply, so the write lands
+     * either wholly before a commit's validation, which then sees the keys
+     * it records with written, or after the commit. Service writes do not
+     * exclude each other. Must be taken before any pair lock or repository
+     * lock, and not while the thread already holds it.
+     * The write-ahead log wait is deferred to endWrite, after the lock is released.
+     * @return The stamp to pass to endWrite
+     */
+    long beginWrite() {
+        WriteAheadLog.beginGroup();
+        return commitLock.readLock();
+    }
+    
+    /**
+     * Ends a write started with beginWrite, then waits for the log
+     * @param stamp The stamp beginWrite returned
+     */
+    void endWrite(long stamp) {
+        try {
+            commitLock.unlockRead(stamp);
+        } finally {
+            WriteAheadLog.endGroup();
+        }
+    }
+    
+    /**
+     * Records that a service write changed a key. Call after applying the
+     * change and before endWrite.
+     * @param type The key type, e.g. STUDENT
+     * @param id The entity ID
+     */
+    void written(int type, int id) {
+        setVersion(LongIntHashMap.pack(type, id), commitVersion.incrementAndGet());
+    }
+    
+    /**
+     * Records that a bulk service write may have changed any key of a type.
+     * Call after applying the change and before endWrite.
+     * @param type The key type, e.g. STUDENT
+     */
+    void writtenAll(int type) {
+        typeVersions.accumulateAndGet(type, commitVersion.incrementAndGet(), Math::max);
+    }
+    
+    /**
+     * Returns the lock stripe guarding a (student, course) pair
+     */
+    Object pairLock(int studentId, int courseId) {
+        return pairLocks[pairStripe(studentId, courseId)];
+    }
+    
+    /**
+     * Returns the number of the last write to a key, or 0 if none was
+     * recorded since it could matter to an active transaction.
+     * Waits for a commit in progress, so a value read before this call is at
+     * least as old as the returned version if a commit wrote it.
+     */
+    int version(long key) {
+        return OptimisticReads.readInt(commitLock, () -> versionOf(key));
+    }
+    
+    /**
+     * Ends a transaction, so its start no longer holds back pruning
+     * @param startVersion The version the transaction began at
+     */
+    void end(int startVersion) {
+        synchronized (activeStarts) {
+            activeStarts.computeIfPresent(startVersion, (version, count) -> count > 1 ? count - 1 : null);
+        }
+    }
+    
+    /**
+     * Validates a transaction's reads and writes against writes made after it
+     * began, then applies its writes in order and only then records their
+     * versions. If applying a write throws, or an enrollment write would give
+     * a (student, course) pair a second active enrollment, the writes already
+     * applied are undone in reverse order before the exception is rethrown;
+     * the versions are recorded either way, since a racing reader may have seen them.
+     * @param startVersion The version the transaction began at
+     * @param readKeys Keys the transaction read
+     * @param writes Key -> new entity, or null for a delete, in write order
+     * @throws TransactionConflictException if another write changed a key first,
+     *         or the student of an enrollment it activates is already actively
+     *         enrolled in the course
+     */
+    void commit(int startVersion, Set<Long> readKeys, Map<Long, Object> writes)
+            throws TransactionConflictException {
+        // With a write-ahead log, the commit waits once for all its writes to be
+        // durable, after releasing the commit lock
+        WriteAheadLog.beginGroup();
+        long stamp = commitLock.writeLock();
+        try {
+            for (long key : readKeys) {
+                checkUnchanged(key, startVersion);
+            }
+            for (long key : writes.keySet()) {
+                checkUnchanged(key, startVersion);
+            }
+            if (writes.isEmpty()) {
+                return;
+            }
+            long[] keys = new long[writes.size()];
+            Object[] before = new Object[keys.length];
+            Object[] after = new Object[keys.length];
+            int count = 0;
+            for (Map.Entry<Long, Object> write : writes.entrySet()) {
+                keys[count] = write.getKey();
+                before[count] = current(write.getKey());
+                after[count] = write.getValue();
+                count++;
+            }
+            int applied = 0;
+            try {
+                for (; applied < count; applied++) {
+                    apply(keys[applied], before[applied], after[applied], true);
+                }
+            } catch (TransactionConflictException | RuntimeException | Error e) {
+                // The failed write may be half applied, so it is undone too
+                for (int i = Math.min(applied, count - 1); i >= 0; i--) {
+                    try {
+                        apply(keys[i], current(keys[i]), before[i], false);
+                    } catch (RuntimeException | Error undoFailure) {
+                        e.addSuppressed(undoFailure);
+                    }
+                }
+                throw e;
+            } finally {
+                int version = commitVersion.incrementAndGet();
+                for (int i = 0; i < count; i++) {
+                    setVersion(keys[i], version);
+                    if ((int) (keys[i] >>> 32) == ENROLLMENT) {
+                        setStudentEnrollmentsVersion((Enrollment) before[i], version);
+                        setStudentEnrollmentsVersion((Enrollment) after[i], version);
+                    }
+                }
+            }
+        } finally {
+            commitLock.unlockWrite(stamp);
+            WriteAheadLog.endGroup();
+        }
+    }
+    
+    private void checkUnchanged(long key, int startVersion) throws TransactionConflictException {
+        if (versionOf(key) > startVersion) {
+            throw new TransactionConflictException(describe(key) + " was changed by a concurrent write");
+        }
+    }
+    
+    private int versionOf(long key) {
+        LongIntHashMap stripe = versions[versionStripe(key)];
+        int version;
+        synchronized (stripe) {
+            version = stripe.get(key);
+        }
+        return Math.max(Math.max(version, 0), typeVersions.get((int) (key >>> 32)));
+    }
+    
+    private void setVersion(long key, int version) {
+        LongIntHashMap stripe = versions[versionStripe(key)];
+        boolean added;
+        synchronized (stripe) {
+            // Service writes to one key may record their versions out of order
+            int previous = stripe.get(key);
+            added = previous < 0;
+            stripe.put(key, Math.max(previous, version));
+        }
+        if (added && versionEntries.incrementAndGet() >= pruneThreshold) {
+            pruneVersions();
+        }
+    }
+    
+    private void setStudentEnrollmentsVersion(Enrollment enrollment, int version) {
+        if (enrollment != null) {
+            setVersion(LongIntHashMap.pack(STUDENT_ENROLLMENTS, enrollment.getStudentId()), version);
+        }
+    }
+    
+    /**
+     * Drops the versions no active transaction can conflict with: those at or
+     * below the oldest active start, or the latest version if none is active.
+     * A transaction beginning meanwhile starts at a version at least that high.
+     * The next prune runs once the remaining entries have doubled.
+     */
+    private void pruneVersions() {
+        if (!pruning.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int oldest;
+            synchronized (activeStarts) {
+                oldest = activeStarts.isEmpty() ? commitVersion.get() : activeStarts.firstKey();
+            }
+            for (LongIntHashMap stripe : versions) {
+                int removed;
+                synchronized (stripe) {
+                    removed = stripe.removeValuesAtMost(oldest);
+                }
+                versionEntries.addAndGet(-removed);
+            }
+            pruneThreshold = Math.max(AppConstants.TRANSACTION_PRUNE_ENTRIES, versionEntries.get() * 2);
+        } finally {
+            pruning.set(false);
+        }
+    }
+    
+    /**
+     * Returns the entity currently stored under a key, or null if none
+     */
+    private Object current(long key) {
+        int id = (int) key;
+        switch ((int) (key >>> 32)) {
+            case STUDENT:
+                return studentRepository.findById(id);
+            case COURSE:
+                return courseRepository.findById(id);
+            default:
+                return enrollmentRepository.findById(id);
+        }
+    }
+    
+    /**
+     * Replaces the entity stored under a key
+     * @param before The entity stored now, or null if none
+     * @param entity The new entity, or null to delete
+     * @param checkDuplicate Whether an enrollment write must not add a second
+     *        active enrollment to its pair; false when undoing
+     * @throws TransactionConflictException if it would
+     */
+    private void apply(long key, Object before, Object entity, boolean checkDuplicate)
+            throws TransactionConflictException {
+        int id = (int) key;
+        switch ((int) (key >>> 32)) {
+            case STUDENT:
+                if (entity == null) {
+                    studentRepository.delete(id);
+                } else if (before != null) {
+                    studentRepository.update((Student) entity);
+                } else {
+                    studentRepository.save((Student) entity);
+                }
+                break;
+            case COURSE:
+                if (entity == null) {
+                    courseRepository.delete(id);
+                } else if (before != null) {
+                    courseRepository.update((Course) entity);
+                } else {
+                    courseRepository.save((Course) entity);
+                }
+                break;
+            default:
+                applyEnrollment(id, (Enrollment) before, (Enrollment) entity, checkDuplicate);
+        }
+    }
+    
+    /**
+     * Applies an enrollment write under the pair locks of its old and new
+     * (student, course) pairs, taken in stripe order, like EnrollmentService.
+     * The transaction only recorded the enrollment's own key, so a concurrent
+     * enrollment in the same pair is caught here rather than by validation.
+     */
+    private void applyEnrollment(int id, Enrollment before, Enrollment entity, boolean checkDuplicate)
+            throws TransactionConflictException {
+        Enrollment any = before != null ? before : entity;
+        if (any == null) {
+            return;
+        }
+        int first = pairStripe(any.getStudentId(), any.getCourseId());
+        int second = entity != null ? pairStripe(entity.getStudentId(), entity.getCourseId()) : first;
+        synchronized (pairLocks[Math.min(first, second)]) {
+            synchronized (pairLocks[Math.max(first, second)]) {
+                if (checkDuplicate && activates(before, entity) &&
+                    enrollmentRepository.isActivelyEnrolled(entity.getStudentId(), entity.getCourseId())) {
+                    throw new TransactionConflictException("Student " + entity.getStudentId()
+                        + " is already enrolled in course " + entity.getCourseId());
+                }
+                if (entity == null) {
+                    enrollmentRepository.delete(id);
+                } else if (before != null) {
+                    enrollmentRepository.update(entity);
+                } else {
+                    enrollmentRepository.save(entity);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Returns whether a write makes an enrollment active in a pair where it
+     * was not active before; only then can it create a duplicate
+     */
+    private static boolean activates(Enrollment before, Enrollment entity) {
+        if (entity == null || entity.getStatus() != EnrollmentStatus.ACTIVE) {
+            return false;
+        }
+        return before == null || before.getStatus() != EnrollmentStatus.ACTIVE ||
+               before.getStudentId() != entity.getStudentId() || before.getCourseId() != entity.getCourseId();
+    }
+    
+    private int pairStripe(int studentId, int courseId) {
+        int hash = (studentId * 31 + courseId) * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (pairLocks.length - 1);
+    }
+    
+    private static int versionStripe(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash >>> 32) & (AppConstants.TRANSACTION_VERSION_STRIPES - 1);
+    }
+    
+    static String describe(long key) {
+        int id = (int) key;
+        switch ((int) (key >>> 32)) {
+            case STUDENT:
+                return "Student with ID " + id;
+            case COURSE:
+                return "Course with ID " + id;
+            case ENROLLMENT:
+                return "Enrollment with ID " + id;
+            default:
+                return "Enrollments of student " + id;
+        }
+    }
+}
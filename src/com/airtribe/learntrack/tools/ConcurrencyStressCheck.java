@@ -0,0 +1,663 @@
+package com.airtribe.learntrack.tools;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.exception.EntityNotFoundException;
+import com.airtribe.learntrack.exception.InvalidInputException;
+import com.airtribe.learntrack.exception.TransactionConflictException;
+import com.airtribe.learntrack.repository.ColumnarEnrollmentStore;
+import com.airtribe.learntrack.repository.CourseRepository;
+import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.EnrollmentStore;
+import com.airtribe.learntrack.repository.ObjectEnrollmentStore;
+import com.airtribe.learntrack.repository.OffHeapEnrollmentStore;
+import com.airtribe.learntrack.repository.StudentRepository;
+import com.airtribe.learntrack.service.CourseService;
+import com.airtribe.learntrack.service.EnrollmentService;
+import com.airtribe.learntrack.service.ReadSnapshot;
+import com.airtribe.learntrack.service.StudentService;
+import com.airtribe.learntrack.service.TransactionManager;
+import com.airtribe.learntrack.util.IdGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Headless stress check for the concurrent repositories and services.
+ * Worker threads hammer IdGenerator, the three services, the repositories and
+ * TransactionManager with interleaved reads, writes, deletes, bulk batch
+ * moves and transactions, checking what each read and snapshot returns; once
+ * they stop, the final state is checked for no duplicate ids, no duplicate
+ * active enrollments, no active enrollment of a deleted student, and counters
+ * and indexes equal to a recount.
+ * Usage: java com.airtribe.learntrack.tools.ConcurrencyStressCheck [seconds per store] [threads] [store]
+ * where store is object, columnar or offheap (default: all three).
+ * On a single CPU the threads interleave but never run in parallel, so a
+ * pass there says little about races; the tool warns when that is the case.
+ * Prints each violation found and exits with status 1 if there was any.
+ */
+public class ConcurrencyStressCheck {
+    private static final int STUDENTS = 200;
+    private static final int COURSES = 20;
+    private static final String[] BATCHES = { "Stress A", "Stress B" };
+    private static final int IDS_PER_THREAD = 200_000;
+    // Stop recording after this many violations; the run has failed anyway
+    private static final int MAX_VIOLATIONS = 100;
+    
+    private final ConcurrentLinkedQueue<String> violations = new ConcurrentLinkedQueue<>();
+    
+    public static void main(String[] args) throws InterruptedException {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        int threads = args.length > 1 ? Integer.parseInt(args[1])
+                                      : Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+        String[] stores = args.length > 2 ? new String[] { args[2] }
+                                          : new String[] { AppConstants.ENROLLMENT_STORE_OBJECT,
+                                                           AppConstants.ENROLLMENT_STORE_COLUMNAR,
+                                                           AppConstants.ENROLLMENT_STORE_OFF_HEAP };
+        
+        int processors = Runtime.getRuntime().availableProcessors();
+        System.out.println("Running on " + processors + " CPU(s)");
+        if (processors < 2) {
+            System.out.println("Warning: with one CPU the threads never run in parallel; "
+                               + "rerun on a multi-core machine to check for races");
+        }
+        
+        ConcurrencyStressCheck check = new ConcurrencyStressCheck();
+        check.checkIdGenerator(threads);
+        for (String store : stores) {
+            check.checkEnrollments(store, seconds, threads);
+        }
+        
+        if (check.violations.isEmpty()) {
+            System.out.println("PASSED: no violations");
+            return;
+        }
+        for (String violation : check.violations) {
+            System.out.println("VIOLATION: " + violation);
+        }
+        System.out.println("FAILED: " + check.violations.size() + " violation(s)");
+        System.exit(1);
+    }
+    
+    /**
+     * Draws enrollment IDs from many threads at once and checks that none repeats.
+     * Each thread releases its blocks now and then, so the others also draw
+     * from released blocks.
+     */
+    private void checkIdGenerator(int threads) throws InterruptedException {
+        int[][] drawn = new int[threads][IDS_PER_THREAD];
+        runWorkers(threads, worker -> {
+            for (int i = 0; i < IDS_PER_THREAD; i++) {
+                drawn[worker][i] = IdGenerator.getNextEnrollmentId();
+                if (i % 1000 == 999) {
+                    IdGenerator.releaseBlocks();
+                }
+            }
+        });
+        int[] all = new int[threads * IDS_PER_THREAD];
+        for (int worker = 0; worker < threads; worker++) {
+            System.arraycopy(drawn[worker], 0, all, worker * IDS_PER_THREAD, IDS_PER_THREAD);
+        }
+        Arrays.sort(all);
+        for (int i = 1; i < all.length; i++) {
+            if (all[i] == all[i - 1]) {
+                violation("IdGenerator returned ID " + all[i] + " twice");
+            }
+        }
+        System.out.println("IdGenerator: " + all.length + " IDs from " + threads + " threads checked");
+    }
+    
+    /**
+     * Runs student, course, enrollment, transaction and read workers against
+     * a sharded repository for the given time, then checks the final state
+     */
+    private void checkEnrollments(String store, int seconds, int threads) throws InterruptedException {
+        StudentRepository studentRepository = new StudentRepository();
+        CourseRepository courseRepository = new CourseRepository();
+        int shards = Math.max(2, Runtime.getRuntime().availableProcessors());
+        EnrollmentRepository repository = new EnrollmentRepository(shards, storeFactory(store));
+        TransactionManager transactionManager = new TransactionManager(studentRepository, courseRepository, repository);
+        StudentService studentService = new StudentService(studentRepository, transactionManager);
+        CourseService courseService = new CourseService(courseRepository, transactionManager);
+        EnrollmentService enrollmentService = new EnrollmentService(repository, studentService, courseService,
+                                                                    transactionManager);
+        
+        // Slot -> current student; a slot gets a new student when a transaction deletes its student
+        AtomicIntegerArray studentIds = new AtomicIntegerArray(STUDENTS);
+        int[] courseIds = new int[COURSES];
+        try {
+            for (int i = 0; i < STUDENTS; i++) {
+                studentIds.set(i, addStudent(studentService, i));
+            }
+            for (int i = 0; i < COURSES; i++) {
+                courseIds[i] = courseService.addCourse("Stress Course " + i, "Stress", 4).getId();
+            }
+        } catch (InvalidInputException e) {
+            throw new IllegalStateException("Could not seed stress data", e);
+        }
+        
+        AtomicLong operations = new AtomicLong();
+        AtomicLong commits = new AtomicLong();
+        AtomicLong conflicts = new AtomicLong();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        runWorkers(threads, worker -> {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long count = 0;
+            while (System.nanoTime() < deadline) {
+                int slot = random.nextInt(STUDENTS);
+                int studentId = studentIds.get(slot);
+                int courseId = courseIds[random.nextInt(COURSES)];
+                int op = random.nextInt(100);
+                try {
+                    if (op < 30) {
+                        enroll(enrollmentService, studentId, courseId);
+                    } else if (op < 40) {
+                        Enrollment target = pick(repository.findByStudentId(studentId), random);
+                        if (target != null) {
+                            updateStatus(enrollmentService, target.getId(), random);
+                        }
+                    } else if (op < 46) {
+                        Enrollment target = pick(repository.findByStudentId(studentId), random);
+                        if (target != null) {
+                            enrollmentService.deleteEnrollment(target.getId());
+                        }
+                    } else if (op < 47) {
+                        enrollmentService.purgeEnrollments(EnrollmentStatus.DROPPED);
+                    } else if (op < 52) {
+                        changeStudent(studentService, studentId, random);
+                    } else if (op < 53) {
+                        studentService.moveBatch(BATCHES[random.nextInt(BATCHES.length)],
+                                                 BATCHES[random.nextInt(BATCHES.length)]);
+                    } else if (op < 57) {
+                        changeCourse(courseService, courseId, random);
+                    } else if (op < 61) {
+                        if (transfer(transactionManager, studentId, courseId)) {
+                            commits.incrementAndGet();
+                        }
+                    } else if (op < 62) {
+                        if (enrollInTransaction(transactionManager, enrollmentService, repository, studentId,
+                                                courseId, random.nextBoolean())) {
+                            commits.incrementAndGet();
+                        }
+                    } else if (op < 63) {
+                        if (deleteStudent(transactionManager, studentId)) {
+                            commits.incrementAndGet();
+                            studentIds.compareAndSet(slot, studentId, addStudent(studentService, slot));
+                        }
+                    } else if (op < 65) {
+                        checkSnapshot(store, transactionManager.snapshot());
+                    } else {
+                        checkReads(studentRepository, courseRepository, repository, studentId, courseId);
+                    }
+                } catch (TransactionConflictException e) {
+                    // Every attempt lost to a concurrent write: the expected outcome under contention
+                    conflicts.incrementAndGet();
+                } catch (InvalidInputException e) {
+                    violation(store + ": seeded input rejected: " + e.getMessage());
+                } catch (RuntimeException e) {
+                    violation(store + ": operation threw " + e);
+                }
+                count++;
+            }
+            operations.addAndGet(count);
+        });
+        checkFinalState(store, studentRepository, courseRepository, repository, studentIds);
+        System.out.println(store + ": " + operations.get() + " operations on " + threads + " threads, "
+                           + shards + " shards, " + commits.get() + " transactions committed, "
+                           + conflicts.get() + " gave up on conflicts, " + repository.count()
+                           + " enrollments checked");
+    }
+    
+    private static int addStudent(StudentService service, int slot) throws InvalidInputException {
+        return service.addStudent("Stress", "Student", "s" + slot + "@example.com", BATCHES[slot % BATCHES.length])
+                      .getId();
+    }
+    
+    private static void enroll(EnrollmentService service, int studentId, int courseId) {
+        try {
+            service.enrollStudent(studentId, courseId);
+        } catch (EntityNotFoundException | InvalidInputException e) {
+            // Already actively enrolled, the student or course is inactive, or a
+            // transaction deleted the student: expected outcomes of a lost race
+        }
+    }
+    
+    private static void updateStatus(EnrollmentService service, int enrollmentId, ThreadLocalRandom random) {
+        EnrollmentStatus[] statuses = EnrollmentStatus.values();
+        try {
+            service.updateEnrollmentStatus(enrollmentId, statuses[random.nextInt(statuses.length)]);
+        } catch (EntityNotFoundException | InvalidInputException e) {
+            // Deleted concurrently, or reactivating next to another active enrollment
+            // or for an inactive or deleted student or course
+        }
+    }
+    
+    /**
+     * Deactivates, reactivates or moves a student to another batch
+     */
+    private static void changeStudent(StudentService service, int studentId, ThreadLocalRandom random)
+            throws InvalidInputException {
+        try {
+            int change = random.nextInt(3);
+            if (change == 0) {
+                service.deactivateStudent(studentId);
+            } else if (change == 1) {
+                service.activateStudent(studentId);
+            } else {
+                service.updateStudent(studentId, null, null, null, BATCHES[random.nextInt(BATCHES.length)]);
+            }
+        } catch (EntityNotFoundException e) {
+            // Deleted by a transaction
+        }
+    }
+    
+    /**
+     * Toggles a course or renames it, which moves it in the name index
+     */
+    private static void changeCourse(CourseService service, int courseId, ThreadLocalRandom random)
+            throws InvalidInputException {
+        try {
+            if (random.nextBoolean()) {
+                service.toggleCourseStatus(courseId);
+            } else {
+                service.updateCourse(courseId, "Stress Course " + courseId + " v" + random.nextInt(10), null, 0);
+            }
+        } catch (EntityNotFoundException e) {
+            throw new IllegalStateException("Seeded course not found", e);
+        }
+    }
+    
+    /**
+     * Moves one of a student's active enrollments to another course in one
+     * transaction, if the student and the course are active
+     * @return Whether it committed a move
+     */
+    private static boolean transfer(TransactionManager manager, int studentId, int courseId)
+            throws TransactionConflictException {
+        return manager.execute(transaction -> {
+            Student student = transaction.findStudent(studentId);
+            Course course = transaction.findCourse(courseId);
+            if (student == null || !student.isActive() || course == null || !course.isActive()) {
+                return false;
+            }
+            Enrollment from = null;
+            for (Enrollment enrollment : transaction.findEnrollmentsByStudent(studentId)) {
+                if (enrollment.getStatus() == EnrollmentStatus.ACTIVE) {
+                    if (enrollment.getCourseId() == courseId) {
+                        return false;
+                    }
+                    from = enrollment;
+                }
+            }
+            if (from == null) {
+                return false;
+            }
+            from.setStatus(EnrollmentStatus.CANCELLED);
+            transaction.saveEnrollment(from);
+            transaction.saveEnrollment(new Enrollment(IdGenerator.getNextEnrollmentId(), studentId, courseId));
+            return true;
+        });
+    }
+    
+    /**
+     * Enrolls a student in one transaction that checks for an active
+     * enrollment of the pair on the repository, outside the transaction, so
+     * only the commit's own duplicate check stops it racing enroll and
+     * other transactions
+     * @param raceService Whether to also enroll through the service between
+     *        the check and the commit, the race other threads rarely hit in time
+     * @return Whether it committed an enrollment
+     */
+    private static boolean enrollInTransaction(TransactionManager manager, EnrollmentService service,
+                                               EnrollmentRepository repository, int studentId, int courseId,
+                                               boolean raceService) throws TransactionConflictException {
+        boolean[] raced = { !raceService };
+        return manager.execute(transaction -> {
+            Student student = transaction.findStudent(studentId);
+            Course course = transaction.findCourse(courseId);
+            if (student == null || !student.isActive() || course == null || !course.isActive() ||
+                repository.isActivelyEnrolled(studentId, courseId)) {
+                return false;
+            }
+            transaction.saveEnrollment(new Enrollment(IdGenerator.getNextEnrollmentId(), studentId, courseId));
+            if (!raced[0]) {
+                raced[0] = true;
+                enroll(service, studentId, courseId);
+            }
+            return true;
+        });
+    }
+    
+    /**
+     * Cancels a student's active enrollments and deletes the student in one
+     * transaction, as the console does
+     * @return Whether it committed a delete
+     */
+    private static boolean deleteStudent(TransactionManager manager, int studentId)
+            throws TransactionConflictException {
+        return manager.execute(transaction -> {
+            if (transaction.findStudent(studentId) == null) {
+                return false;
+            }
+            for (Enrollment enrollment : transaction.findEnrollmentsByStudent(studentId)) {
+                if (enrollment.getStatus() == EnrollmentStatus.ACTIVE) {
+                    enrollment.setStatus(EnrollmentStatus.CANCELLED);
+                    transaction.saveEnrollment(enrollment);
+                }
+            }
+            transaction.deleteStudent(studentId);
+            return true;
+        });
+    }
+    
+    /**
+     * Checks that a snapshot shows one point in time: no pair has two active
+     * enrollments and every active enrollment's student is in the snapshot
+     */
+    private void checkSnapshot(String store, ReadSnapshot snapshot) {
+        HashSet<Integer> students = new HashSet<>();
+        for (Student student : snapshot.getStudents()) {
+            students.add(student.getId());
+        }
+        HashSet<Long> activePairs = new HashSet<>();
+        for (Enrollment enrollment : snapshot.getEnrollments()) {
+            if (enrollment.getStatus() != EnrollmentStatus.ACTIVE) {
+                continue;
+            }
+            if (!students.contains(enrollment.getStudentId())) {
+                violation(store + ": snapshot " + snapshot.getVersion() + " has active enrollment "
+                          + enrollment.getId() + " of missing student " + enrollment.getStudentId());
+            }
+            if (!activePairs.add(((long) enrollment.getStudentId() << 32) | enrollment.getCourseId())) {
+                violation(store + ": snapshot " + snapshot.getVersion() + " has two active enrollments of student "
+                          + enrollment.getStudentId() + " in course " + enrollment.getCourseId());
+            }
+        }
+    }
+    
+    /**
+     * Checks what concurrent reads return; each must be internally consistent
+     * even while other threads write
+     */
+    private void checkReads(StudentRepository students, CourseRepository courses, EnrollmentRepository repository,
+                            int studentId, int courseId) {
+        for (Enrollment enrollment : repository.findByStudentId(studentId)) {
+            if (enrollment == null || enrollment.getStudentId() != studentId) {
+                violation("findByStudentId(" + studentId + ") returned " + enrollment);
+                continue;
+            }
+            Enrollment byId = repository.findById(enrollment.getId());
+            if (byId != null && byId.getId() != enrollment.getId()) {
+                violation("findById(" + enrollment.getId() + ") returned " + byId);
+            }
+        }
+        for (Enrollment enrollment : repository.findByCourseId(courseId, 0, 50)) {
+            if (enrollment == null || enrollment.getCourseId() != courseId) {
+                violation("findByCourseId(" + courseId + ") page returned " + enrollment);
+            }
+        }
+        Enrollment pair = repository.findByStudentAndCourse(studentId, courseId);
+        if (pair != null && (pair.getStudentId() != studentId || pair.getCourseId() != courseId)) {
+            violation("findByStudentAndCourse(" + studentId + ", " + courseId + ") returned " + pair);
+        }
+        if (repository.count() < 0 || repository.countActive() < 0) {
+            violation("Negative count");
+        }
+        
+        String batch = BATCHES[studentId % BATCHES.length];
+        for (Student student : students.findByBatch(batch)) {
+            if (student == null || !batch.equals(student.getBatch())) {
+                violation("findByBatch(" + batch + ") returned " + student);
+            }
+        }
+        for (Student student : students.findAllActive(0, 50)) {
+            if (student == null || !student.isActive()) {
+                violation("findAllActive page returned " + student);
+            }
+        }
+        Course course = courses.findById(courseId);
+        if (course == null || course.getId() != courseId) {
+            violation("findById(" + courseId + ") returned course " + course);
+        }
+        for (Course match : courses.findByName("Course " + courseId)) {
+            if (match == null || !match.getCourseName().contains("Course " + courseId)) {
+                violation("findByName(Course " + courseId + ") returned " + match);
+            }
+        }
+        if (students.countActive() < 0 || courses.countActive() < 0) {
+            violation("Negative student or course count");
+        }
+    }
+    
+    /**
+     * Recounts everything from findAll once no thread is writing and compares
+     * with the repositories' indexes and counters
+     */
+    private void checkFinalState(String store, StudentRepository students, CourseRepository courses,
+                                 EnrollmentRepository repository, AtomicIntegerArray studentIds) {
+        HashSet<Integer> studentSet = checkStudents(store, students);
+        for (int i = 0; i < studentIds.length(); i++) {
+            if (!studentSet.contains(studentIds.get(i))) {
+                violation(store + ": student " + studentIds.get(i) + " of slot " + i + " is missing");
+            }
+        }
+        int[] courseIds = checkCourses(store, courses);
+        
+        List<Enrollment> all = repository.findAll();
+        HashSet<Integer> ids = new HashSet<>();
+        int[] statusCounts = new int[EnrollmentStatus.values().length];
+        HashMap<Long, Integer> activePerPair = new HashMap<>();
+        for (Enrollment enrollment : all) {
+            if (!ids.add(enrollment.getId())) {
+                violation(store + ": duplicate enrollment ID " + enrollment.getId());
+            }
+            if (enrollment.getStatus() == null) {
+                violation(store + ": enrollment " + enrollment.getId() + " has no status");
+                continue;
+            }
+            statusCounts[enrollment.getStatus().ordinal()]++;
+            if (enrollment.getStatus() == EnrollmentStatus.ACTIVE) {
+                if (!studentSet.contains(enrollment.getStudentId())) {
+                    violation(store + ": active enrollment " + enrollment.getId() + " of deleted student "
+                              + enrollment.getStudentId());
+                }
+                long pair = ((long) enrollment.getStudentId() << 32) | enrollment.getCourseId();
+                if (activePerPair.merge(pair, 1, Integer::sum) > 1) {
+                    violation(store + ": student " + enrollment.getStudentId() + " has two active enrollments in course "
+                              + enrollment.getCourseId());
+                }
+            }
+            Enrollment byId = repository.findById(enrollment.getId());
+            if (byId == null || byId.getStatus() != enrollment.getStatus()) {
+                violation(store + ": findById(" + enrollment.getId() + ") returned " + byId);
+            }
+        }
+        
+        if (repository.count() != all.size()) {
+            violation(store + ": count() is " + repository.count() + " but findAll holds " + all.size());
+        }
+        for (EnrollmentStatus status : EnrollmentStatus.values()) {
+            if (repository.countByStatus(status) != statusCounts[status.ordinal()]) {
+                violation(store + ": countByStatus(" + status + ") is " + repository.countByStatus(status)
+                          + " but recount is " + statusCounts[status.ordinal()]);
+            }
+            int listed = repository.findByStatus(status).size();
+            if (listed != statusCounts[status.ordinal()]) {
+                violation(store + ": findByStatus(" + status + ") lists " + listed
+                          + " but recount is " + statusCounts[status.ordinal()]);
+            }
+        }
+        
+        // Deleted students may still own cancelled enrollments
+        HashSet<Integer> owners = new HashSet<>(studentSet);
+        for (Enrollment enrollment : all) {
+            owners.add(enrollment.getStudentId());
+        }
+        int byStudents = 0;
+        for (int studentId : owners) {
+            byStudents += repository.findByStudentId(studentId).size();
+            for (int courseId : courseIds) {
+                long pair = ((long) studentId << 32) | courseId;
+                boolean active = activePerPair.containsKey(pair);
+                if (repository.isActivelyEnrolled(studentId, courseId) != active) {
+                    violation(store + ": isActivelyEnrolled(" + studentId + ", " + courseId + ") disagrees with recount");
+                }
+            }
+        }
+        int byCourses = 0;
+        for (int courseId : courseIds) {
+            byCourses += repository.findByCourseId(courseId).size();
+        }
+        if (byStudents != all.size() || byCourses != all.size()) {
+            violation(store + ": student index holds " + byStudents + " and course index " + byCourses
+                      + " enrollments, findAll " + all.size());
+        }
+        
+        int paged = 0;
+        int cursor = 0;
+        ArrayList<Enrollment> page = repository.findAll(cursor, AppConstants.PAGE_SIZE);
+        while (!page.isEmpty()) {
+            for (Enrollment enrollment : page) {
+                if (enrollment.getId() <= cursor) {
+                    violation(store + ": paged findAll out of order at ID " + enrollment.getId());
+                }
+                cursor = enrollment.getId();
+            }
+            paged += page.size();
+            page = repository.findAll(cursor, AppConstants.PAGE_SIZE);
+        }
+        if (paged != all.size()) {
+            violation(store + ": paging findAll visits " + paged + " enrollments, findAll holds " + all.size());
+        }
+    }
+    
+    /**
+     * Compares the student counters and batch index with a recount of findAll
+     * @return The IDs of all students
+     */
+    private HashSet<Integer> checkStudents(String store, StudentRepository students) {
+        List<Student> all = students.findAll();
+        HashSet<Integer> ids = new HashSet<>();
+        HashMap<String, Integer> perBatch = new HashMap<>();
+        int active = 0;
+        for (Student student : all) {
+            if (!ids.add(student.getId())) {
+                violation(store + ": duplicate student ID " + student.getId());
+            }
+            if (student.isActive()) {
+                active++;
+            }
+            perBatch.merge(student.getBatch(), 1, Integer::sum);
+            if (students.findById(student.getId()) == null) {
+                violation(store + ": findById(" + student.getId() + ") lost a student");
+            }
+        }
+        if (students.count() != all.size()) {
+            violation(store + ": student count() is " + students.count() + " but findAll holds " + all.size());
+        }
+        if (students.countActive() != active || students.findAllActive().size() != active) {
+            violation(store + ": countActive() is " + students.countActive() + " and findAllActive lists "
+                      + students.findAllActive().size() + " students but recount is " + active);
+        }
+        for (String batch : BATCHES) {
+            int indexed = students.findByBatch(batch).size();
+            int recount = perBatch.getOrDefault(batch, 0);
+            if (indexed != recount) {
+                violation(store + ": findByBatch(" + batch + ") lists " + indexed + " but recount is " + recount);
+            }
+        }
+        return ids;
+    }
+    
+    /**
+     * Compares the course counters and name index with a recount of findAll
+     * @return The IDs of all courses
+     */
+    private int[] checkCourses(String store, CourseRepository courses) {
+        List<Course> all = courses.findAll();
+        int[] ids = new int[all.size()];
+        int active = 0;
+        for (int i = 0; i < ids.length; i++) {
+            Course course = all.get(i);
+            ids[i] = course.getId();
+            if (course.isActive()) {
+                active++;
+            }
+            boolean found = false;
+            for (Course match : courses.findByName(course.getCourseName())) {
+                found |= match.getId() == course.getId();
+            }
+            if (!found) {
+                violation(store + ": findByName(" + course.getCourseName() + ") misses course " + course.getId());
+            }
+        }
+        if (courses.count() != COURSES || all.size() != COURSES) {
+            violation(store + ": course count() is " + courses.count() + " and findAll holds " + all.size()
+                      + " but " + COURSES + " were added");
+        }
+        if (courses.countActive() != active || courses.findAllActive().size() != active) {
+            violation(store + ": course countActive() is " + courses.countActive() + " and findAllActive lists "
+                      + courses.findAllActive().size() + " but recount is " + active);
+        }
+        return ids;
+    }
+    
+    private static Enrollment pick(List<Enrollment> enrollments, ThreadLocalRandom random) {
+        return enrollments.isEmpty() ? null : enrollments.get(random.nextInt(enrollments.size()));
+    }
+    
+    private static Supplier<EnrollmentStore> storeFactory(String store) {
+        if (AppConstants.ENROLLMENT_STORE_COLUMNAR.equalsIgnoreCase(store)) {
+            return ColumnarEnrollmentStore::new;
+        }
+        if (AppConstants.ENROLLMENT_STORE_OFF_HEAP.equalsIgnoreCase(store)) {
+            return OffHeapEnrollmentStore::new;
+        }
+        return ObjectEnrollmentStore::new;
+    }
+    
+    private void violation(String message) {
+        if (violations.size() < MAX_VIOLATIONS) {
+            violations.add(message);
+        }
+    }
+    
+    /**
+     * Starts the workers together and waits for all of them; an exception
+     * escaping a worker is recorded as a violation
+     */
+    private void runWorkers(int threads, Worker worker) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int index = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    worker.run(index);
+                } catch (RuntimeException e) {
+                    violation("Worker " + index + " failed: " + e);
+                }
+            }, "stress-" + i);
+        }
+        for (Thread thread : workers) {
+            thread.start();
+        }
+        for (Thread thread : workers) {
+            thread.join();
+        }
+    }
+    
+    @FunctionalInterface
+    private interface Worker {
+        void run(int index);
+    }
+}
@@ -0,0 +1,51 @@
+package com.airtribe.learntrack.tools;
+
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.repository.MappedEnrollmentTable;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+/**
+ * Read-only report over an enrollment table written from the console's
+ * Data Files menu, for analytics processes that should not load the data.
+ * Opens the table through MappedEnrollmentTable, prints enrollment counts by
+ * status and, if given, the enrollments of a student, with the time each
+ * step took. Several reports can run at once and share the mapped pages.
+ * Usage: java com.airtribe.learntrack.tools.EnrollmentTableReport table-file [studentId]
+ */
+public class EnrollmentTableReport {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("Usage: EnrollmentTableReport table-file [studentId]");
+            System.exit(2);
+        }
+        long start = System.nanoTime();
+        try (MappedEnrollmentTable table = MappedEnrollmentTable.open(Paths.get(args[0]))) {
+            System.out.println("Opened " + table.count() + " enrollments in " + elapsedMillis(start) + " ms");
+            
+            start = System.nanoTime();
+            int[] counts = table.countByStatus();
+            for (EnrollmentStatus status : EnrollmentStatus.values()) {
+                System.out.println("  " + status.getDisplayName() + ": " + counts[status.ordinal()]);
+            }
+            System.out.println("Counted in " + elapsedMillis(start) + " ms");
+            
+            if (args.length > 1) {
+                int studentId = Integer.parseInt(args[1]);
+                start = System.nanoTime();
+                ArrayList<Enrollment> enrollments = table.findByStudentId(studentId);
+                for (Enrollment enrollment : enrollments) {
+                    System.out.println("  " + enrollment);
+                }
+                System.out.println(enrollments.size() + " enrollments of student " + studentId + " found in "
+                                   + elapsedMillis(start) + " ms");
+            }
+        }
+    }
+    
+    private static double elapsedMillis(long start) {
+        return (System.nanoTime() - start) / 1e6;
+    }
+}
@@ -0,0 +1,621 @@
+package com.airtribe.learntrack.tools;
+
+import com.airtribe.learntrack.constants.AppConstants;
+import com.airtribe.learntrack.entity.Course;
+import com.airtribe.learntrack.entity.Enrollment;
+import com.airtribe.learntrack.entity.Student;
+import com.airtribe.learntrack.enums.EnrollmentStatus;
+import com.airtribe.learntrack.exception.EntityNotFoundException;
+import com.airtribe.learntrack.repository.ColumnarEnrollmentStore;
+import com.airtribe.learntrack.repository.CourseRepository;
+import com.airtribe.learntrack.repository.EnrollmentRepository;
+import com.airtribe.learntrack.repository.EnrollmentStore;
+import com.airtribe.learntrack.repository.ObjectEnrollmentStore;
+import com.airtribe.learntrack.repository.OffHeapEnrollmentStore;
+import com.airtribe.learntrack.repository.StudentRepository;
+import com.airtribe.learntrack.service.CourseService;
+import com.airtribe.learntrack.service.EnrollmentService;
+import com.airtribe.learntrack.service.StudentService;
+import com.airtribe.learntrack.service.TransactionManager;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+
+/**
+ * Headless micro-benchmarks for the repositories, using plain timing loops:
+ * the project has no build to pull in JMH. Each case warms up, then prints
+ * the median of several timed rounds. Results are only comparable with other
+ * results from the same machine and JVM, which the tool prints first.
+ * Usage: java -Xmx4g com.airtribe.learntrack.tools.RepositoryBenchmark case [size]
+ * where case is
+ *   lookup [max entities]  findById latency from 1k entities up to max (default 10M)
+ *   status [enrollments]   findByStatus and student stats, enum against String
+ *                          status comparisons (default 1M)
+ *   heap [enrollments]     heap and direct memory per enrollment, findByStatus
+ *                          and countActive for each store (default 10M)
+ *   threads [max threads]  read-only and 90/10 read/write throughput from 1
+ *                          thread up to max, doubling (default 64)
+ *   shards [max shards]    parallel save throughput and fan-out scan times
+ *                          from 1 shard up to max, doubling (default 16)
+ *   gc [enrollments]       GC pauses under a steady update, delete and insert
+ *                          load on each store (default 10M)
+ * Thread and shard scaling say little on a machine with fewer cores than threads.
+ */
+public class RepositoryBenchmark {
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int TIMED_ROUNDS = 7;
+    private static final int LOOKUPS_PER_ROUND = 1_000_000;
+    private static final int SCANS_PER_ROUND = 20;
+    private static final int STATS_PER_ROUND = 10_000;
+    private static final int THREAD_ENROLLMENTS = 1_000_000;
+    private static final long THREAD_WARMUP_NANOS = 1_000_000_000L;
+    private static final long THREAD_MEASURE_NANOS = 2_000_000_000L;
+    private static final long GC_WARMUP_NANOS = 5_000_000_000L;
+    private static final long GC_MEASURE_NANOS = 30_000_000_000L;
+    private static final LocalDate DATE = LocalDate.of(2024, 1, 1);
+    private static final EnrollmentStatus[] STATUSES = EnrollmentStatus.values();
+    // Size of the synthetic data set the enrollments refer to
+    private static final int STUDENTS = 100_000;
+    private static final int COURSES = 500;
+    
+    // Results of the timed loops, kept so the JIT cannot drop the work
+    private static long sink;
+    
+    public static void main(String[] args) throws InterruptedException {
+        if (args.length < 1) {
+            System.out.println("Usage: RepositoryBenchmark lookup|status|heap|threads|shards|gc [size]");
+            System.exit(2);
+        }
+        Runtime runtime = Runtime.getRuntime();
+        System.out.println("Java " + System.getProperty("java.version") + ", " + runtime.availableProcessors()
+                           + " CPU(s), max heap " + runtime.maxMemory() / (1024 * 1024) + " MB");
+        switch (args[0]) {
+            case "lookup":
+                lookup(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+                break;
+            case "status":
+                status(args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000);
+                break;
+            case "heap":
+                heap(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+                break;
+            case "threads":
+                threads(args.length > 1 ? Integer.parseInt(args[1]) : 64);
+                break;
+            case "shards":
+                shards(args.length > 1 ? Integer.parseInt(args[1]) : 16);
+                break;
+            case "gc":
+                gc(args.length > 1 ? Integer.parseInt(args[1]) : 10_000_000);
+                break;
+            default:
+                System.out.println("Unknown case: " + args[0]);
+                System.exit(2);
+        }
+        if (sink == 42) {
+            System.out.println();
+        }
+    }
+    
+    /**
+     * Times findById on students and on object-mode enrollments while the
+     * repositories grow by factors of ten. With the primary-key index each
+     * lookup does a fixed amount of work; the time still grows once the
+     * table no longer fits in the CPU caches. For comparison, a linear scan
+     * of findAll stands in for the lookup the index replaced.
+     */
+    private static void lookup(int max) {
+        System.out.println("findById and a linear scan, random existing IDs, median ns per lookup");
+        lookupStudents(max);
+        lookupEnrollments(max);
+    }
+    
+    private static void lookupStudents(int max) {
+        System.out.printf("%12s %12s %14s%n", "students", "ns/lookup", "ns/scan");
+        StudentRepository students = new StudentRepository();
+        int size = 0;
+        for (int target = 1_000; target <= max; target *= 10) {
+            while (size < target) {
+                size++;
+                students.save(new Student(size, "Bench", "Student", null, "Bench"));
+            }
+            int[] probes = probes(size);
+            double nanos = medianNanosPerOp(probes.length, () -> {
+                long sum = 0;
+                for (int id : probes) {
+                    sum += students.findById(id).getId();
+                }
+                return sum;
+            });
+            int[] scanProbes = Arrays.copyOf(probes, SCANS_PER_ROUND);
+            double scanNanos = medianNanosPerOp(scanProbes.length, () -> {
+                long sum = 0;
+                for (int id : scanProbes) {
+                    for (Student student : students.findAll()) {
+                        if (student.getId() == id) {
+                            sum += id;
+                            break;
+                        }
+                    }
+                }
+                return sum;
+            });
+            System.out.printf("%12d %12.1f %14.0f%n", size, nanos, scanNanos);
+        }
+    }
+    
+    private static void lookupEnrollments(int max) {
+        System.out.printf("%12s %12s %14s%n", "enrollments", "ns/lookup", "ns/scan");
+        EnrollmentRepository enrollments = new EnrollmentRepository(new ObjectEnrollmentStore());
+        int size = 0;
+        for (int target = 1_000; target <= max; target *= 10) {
+            while (size < target) {
+                size++;
+                enrollments.save(enrollment(size));
+            }
+            int[] probes = probes(size);
+            double nanos = medianNanosPerOp(probes.length, () -> {
+                long sum = 0;
+                for (int id : probes) {
+                    sum += enrollments.findById(id).getId();
+                }
+                return sum;
+            });
+            int[] scanProbes = Arrays.copyOf(probes, SCANS_PER_ROUND);
+            double scanNanos = medianNanosPerOp(scanProbes.length, () -> {
+                long sum = 0;
+                for (int id : scanProbes) {
+                    for (Enrollment enrollment : enrollments.findAll()) {
+                        if (enrollment.getId() == id) {
+                            sum += id;
+                            break;
+                        }
+                    }
+                }
+                return sum;
+            });
+            System.out.printf("%12d %12.1f %14.0f%n", size, nanos, scanNanos);
+        }
+    }
+    
+    /**
+     * Times the enum-based status paths against the String comparisons they
+     * replaced. The String side compares against a separate copy of each
+     * status name, as the old String field held, so equals cannot succeed
+     * on identity alone.
+     */
+    private static void status(int size) {
+        StudentRepository studentRepository = new StudentRepository();
+        CourseRepository courseRepository = new CourseRepository();
+        EnrollmentRepository repository = new EnrollmentRepository(new ObjectEnrollmentStore());
+        TransactionManager transactionManager = new TransactionManager(studentRepository, courseRepository,
+                                                                       repository);
+        StudentService studentService = new StudentService(studentRepository, transactionManager);
+        CourseService courseService = new CourseService(courseRepository, transactionManager);
+        EnrollmentService service = new EnrollmentService(repository, studentService, courseService,
+                                                          transactionManager);
+        for (int id = 1; id <= STUDENTS; id++) {
+            studentRepository.save(new Student(id, "Bench", "Student", null, "Bench"));
+        }
+        for (int id = 1; id <= COURSES; id++) {
+            courseRepository.save(new Course(id, "Bench Course", null, 4));
+        }
+        // ID -> a private copy of the status name, standing in for the old String field
+        String[] statusNames = new String[size + 1];
+        for (int id = 1; id <= size; id++) {
+            Enrollment enrollment = enrollment(id);
+            repository.save(enrollment);
+            statusNames[id] = new String(enrollment.getStatus().name());
+        }
+        System.out.println(size + " enrollments, statuses evenly mixed, median per call");
+        
+        List<Enrollment> all = repository.findAll();
+        double enumScan = medianNanosPerOp(1, () -> repository.findByStatus(EnrollmentStatus.COMPLETED).size());
+        double stringScan = medianNanosPerOp(1, () -> {
+            ArrayList<Enrollment> result = new ArrayList<>();
+            for (Enrollment enrollment : all) {
+                if ("COMPLETED".equals(statusNames[enrollment.getId()])) {
+                    result.add(enrollment);
+                }
+            }
+            return result.size();
+        });
+        System.out.printf("findByStatus:  enum %.2f ms, String %.2f ms%n", enumScan / 1e6, stringScan / 1e6);
+        
+        int[] probes = Arrays.copyOf(probes(STUDENTS), STATS_PER_ROUND);
+        double enumStats = medianNanosPerOp(probes.length, () -> {
+            long sum = 0;
+            for (int studentId : probes) {
+                try {
+                    sum += service.getStudentEnrollmentStats(studentId).length();
+                } catch (EntityNotFoundException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return sum;
+        });
+        double stringStats = medianNanosPerOp(probes.length, () -> {
+            long sum = 0;
+            for (int studentId : probes) {
+                Student student = studentRepository.findById(studentId);
+                ArrayList<Enrollment> enrollments = repository.findByStudentId(studentId);
+                int active = 0;
+                int completed = 0;
+                int cancelled = 0;
+                for (Enrollment enrollment : enrollments) {
+                    String name = statusNames[enrollment.getId()];
+                    if ("ACTIVE".equals(name)) {
+                        active++;
+                    } else if ("COMPLETED".equals(name)) {
+                        completed++;
+                    } else if ("CANCELLED".equals(name)) {
+                        cancelled++;
+                    }
+                }
+                sum += String.format("Student: %s\nTotal Enrollments: %d\nActive: %d\nCompleted: %d\nCancelled: %d",
+                                     student.getDisplayName(), enrollments.size(), active, completed, cancelled)
+                             .length();
+            }
+            return sum;
+        });
+        System.out.printf("student stats: enum %.0f ns, String %.0f ns%n", enumStats, stringStats);
+        
+        double counts = medianNanosPerOp(LOOKUPS_PER_ROUND, () -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+                sum += repository.countByStatus(STATUSES[i % STATUSES.length]);
+            }
+            return sum;
+        });
+        System.out.printf("countByStatus: %.1f ns%n", counts);
+    }
+    
+    /**
+     * Compares the three enrollment stores at one size
+     */
+    private static void heap(int size) {
+        System.out.println(size + " enrollments in one shard; memory includes the repository's indexes");
+        System.out.printf("%10s %14s %14s %16s %14s%n", "store", "heap B/rec", "direct B/rec",
+                          "findByStatus ms", "countActive ns");
+        heap(AppConstants.ENROLLMENT_STORE_OBJECT, ObjectEnrollmentStore::new, size);
+        heap(AppConstants.ENROLLMENT_STORE_COLUMNAR, ColumnarEnrollmentStore::new, size);
+        heap(AppConstants.ENROLLMENT_STORE_OFF_HEAP, OffHeapEnrollmentStore::new, size);
+    }
+    
+    /**
+     * Fills a one-shard repository backed by a store and prints the heap and
+     * direct memory it retains per enrollment, including the repository's
+     * indexes, with the time findByStatus and countActive take on it
+     */
+    private static void heap(String name, Supplier<EnrollmentStore> storeFactory, int size) {
+        long heapBefore = usedHeap();
+        long directBefore = usedDirect();
+        EnrollmentRepository repository = new EnrollmentRepository(1, storeFactory);
+        for (int id = 1; id <= size; id++) {
+            repository.save(enrollment(id));
+        }
+        repository.compact();
+        double heapPerRecord = (double) (usedHeap() - heapBefore) / size;
+        double directPerRecord = (double) (usedDirect() - directBefore) / size;
+        double scan = medianNanosPerOp(1, () -> repository.findByStatus(EnrollmentStatus.COMPLETED).size());
+        double count = medianNanosPerOp(LOOKUPS_PER_ROUND, () -> {
+            long sum = 0;
+            for (int i = 0; i < LOOKUPS_PER_ROUND; i++) {
+                sum += repository.countActive();
+            }
+            return sum;
+        });
+        System.out.printf("%10s %14.1f %14.1f %16.1f %14.1f%n", name, heapPerRecord, directPerRecord, scan / 1e6,
+                          count);
+        sink += repository.count();
+    }
+    
+    /**
+     * Measures repository throughput as threads are added, read-only and
+     * with one write in ten, on one shard so that all threads share one lock
+     */
+    private static void threads(int maxThreads) throws InterruptedException {
+        EnrollmentRepository repository = new EnrollmentRepository(1, ObjectEnrollmentStore::new);
+        for (int id = 1; id <= THREAD_ENROLLMENTS; id++) {
+            repository.save(enrollment(id));
+        }
+        System.out.println(THREAD_ENROLLMENTS + " enrollments in one shard; reads rotate findById, "
+                           + "findByStudentId and countActive; writes update a status");
+        System.out.printf("%8s %16s %16s%n", "threads", "reads ops/s", "90/10 ops/s");
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            double reads = throughput(repository, threads, 0);
+            double mixed = throughput(repository, threads, 10);
+            System.out.printf("%8d %16.0f %16.0f%n", threads, reads, mixed);
+        }
+    }
+    
+    /**
+     * Runs threads against the repository for a warm-up period, then counts
+     * the operations they complete in the measured period
+     * @param writePercent Share of operations that are writes, in percent
+     * @return Operations per second, all threads together
+     */
+    private static double throughput(EnrollmentRepository repository, int threads, int writePercent)
+            throws InterruptedException {
+        LongAdder operations = new LongAdder();
+        long measureStart = System.nanoTime() + THREAD_WARMUP_NANOS;
+        long measureEnd = measureStart + THREAD_MEASURE_NANOS;
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long sum = 0;
+                long count = 0;
+                long now;
+                while ((now = System.nanoTime()) < measureEnd) {
+                    int id = random.nextInt(THREAD_ENROLLMENTS) + 1;
+                    int op = random.nextInt(100);
+                    if (op < writePercent) {
+                        Enrollment updated = new Enrollment(repository.findById(id));
+                        updated.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                        repository.update(updated);
+                    } else if (op % 3 == 0) {
+                        sum += repository.findById(id).getCourseId();
+                    } else if (op % 3 == 1) {
+                        sum += repository.findByStudentId(id % STUDENTS + 1).size();
+                    } else {
+                        sum += repository.countActive();
+                    }
+                    if (now >= measureStart) {
+                        count++;
+                    }
+                }
+                operations.add(count);
+                synchronized (RepositoryBenchmark.class) {
+                    sink += sum;
+                }
+            }, "bench-" + i);
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return operations.sum() * 1e9 / THREAD_MEASURE_NANOS;
+    }
+    
+    /**
+     * Measures how writes and global scans scale with the shard count: one
+     * writer thread per shard saves THREAD_ENROLLMENTS enrollments, then the
+     * scans that fan out over all shards are timed
+     */
+    private static void shards(int maxShards) throws InterruptedException {
+        System.out.println(THREAD_ENROLLMENTS + " enrollments saved by one thread per shard; "
+                           + ForkJoinPool.getCommonPoolParallelism() + " common pool thread(s) for fan-out");
+        System.out.printf("%8s %14s %18s %20s%n", "shards", "saves/s", "findByStatus ms", "findByCourseId ms");
+        for (int shards = 1; shards <= maxShards; shards *= 2) {
+            // Warm up the save path once, then time a fresh repository
+            fillInParallel(new EnrollmentRepository(shards, ObjectEnrollmentStore::new), shards);
+            EnrollmentRepository repository = new EnrollmentRepository(shards, ObjectEnrollmentStore::new);
+            long start = System.nanoTime();
+            fillInParallel(repository, shards);
+            double saves = THREAD_ENROLLMENTS * 1e9 / (System.nanoTime() - start);
+            double byStatus = medianNanosPerOp(1, () -> repository.findByStatus(EnrollmentStatus.COMPLETED).size());
+            double byCourse = medianNanosPerOp(1, () -> repository.findByCourseId(1).size());
+            System.out.printf("%8d %14.0f %18.2f %20.2f%n", shards, saves, byStatus / 1e6, byCourse / 1e6);
+        }
+    }
+    
+    /**
+     * Saves THREAD_ENROLLMENTS enrollments from the given number of threads,
+     * each taking an equal range of IDs
+     */
+    private static void fillInParallel(EnrollmentRepository repository, int threads) throws InterruptedException {
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int from = (int) ((long) THREAD_ENROLLMENTS * i / threads) + 1;
+            int to = (int) ((long) THREAD_ENROLLMENTS * (i + 1) / threads);
+            workers[i] = new Thread(() -> {
+                for (int id = from; id <= to; id++) {
+                    repository.save(enrollment(id));
+                }
+            }, "bench-" + i);
+        }
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+    }
+    
+    /**
+     * Compares GC pauses across the three enrollment stores. Each store is
+     * filled, then a steady load runs on it: in every three operations one
+     * status update, and one delete of the oldest enrollment with one insert
+     * of a new one, so the table size stays fixed while old records turn over.
+     * Pauses are counted from the collector beans and their notifications
+     * over the measured period only.
+     */
+    private static void gc(int size) throws InterruptedException {
+        GcListener listener = new GcListener();
+        List<String> collectors = new ArrayList<>();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            collectors.add(collector.getName());
+            ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+        }
+        System.out.println(size + " enrollments in one shard under a steady 1/3 update, 1/3 delete and insert "
+                           + "load for " + GC_MEASURE_NANOS / 1_000_000_000L + " s; collectors " + collectors);
+        System.out.printf("%10s %10s %14s %12s %14s%n", "store", "pauses", "total ms", "max ms", "ops/s");
+        gc(AppConstants.ENROLLMENT_STORE_OBJECT, ObjectEnrollmentStore::new, size, listener);
+        gc(AppConstants.ENROLLMENT_STORE_COLUMNAR, ColumnarEnrollmentStore::new, size, listener);
+        gc(AppConstants.ENROLLMENT_STORE_OFF_HEAP, OffHeapEnrollmentStore::new, size, listener);
+    }
+    
+    private static void gc(String name, Supplier<EnrollmentStore> storeFactory, int size, GcListener listener)
+            throws InterruptedException {
+        EnrollmentRepository repository = new EnrollmentRepository(1, storeFactory);
+        for (int id = 1; id <= size; id++) {
+            repository.save(enrollment(id));
+        }
+        // Oldest live ID, and the next ID to insert
+        int[] window = { 1, size + 1 };
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        churn(repository, window, random, System.nanoTime() + GC_WARMUP_NANOS);
+        // Start from a collected heap, once the collection's notification is in
+        usedHeap();
+        Thread.sleep(200);
+        long[] before = collections();
+        listener.reset();
+        long start = System.nanoTime();
+        long operations = churn(repository, window, random, start + GC_MEASURE_NANOS);
+        long elapsed = System.nanoTime() - start;
+        long[] after = collections();
+        Thread.sleep(200);
+        System.out.printf("%10s %10d %14d %12d %14.0f%n", name, after[0] - before[0], after[1] - before[1],
+                          listener.maxMillis(), operations * 1e9 / elapsed);
+        sink += repository.count();
+    }
+    
+    /**
+     * Runs the steady update, delete and insert load until the deadline
+     * @param window The oldest live ID and the next ID to insert; advanced in place
+     * @return The number of operations run
+     */
+    private static long churn(EnrollmentRepository repository, int[] window, ThreadLocalRandom random,
+                              long deadline) {
+        long operations = 0;
+        while (System.nanoTime() < deadline) {
+            for (int i = 0; i < 1_000; i++) {
+                if (i % 3 == 0) {
+                    int id = window[0] + random.nextInt(window[1] - window[0]);
+                    Enrollment updated = new Enrollment(repository.findById(id));
+                    updated.setStatus(STATUSES[random.nextInt(STATUSES.length)]);
+                    repository.update(updated);
+                } else if (i % 3 == 1) {
+                    repository.delete(window[0]++);
+                } else {
+                    repository.save(enrollment(window[1]++));
+                }
+            }
+            operations += 1_000;
+        }
+        return operations;
+    }
+    
+    /**
+     * Returns the collection count and the accumulated collection time in
+     * milliseconds, summed over all collectors
+     */
+    private static long[] collections() {
+        long[] totals = new long[2];
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            totals[0] += Math.max(collector.getCollectionCount(), 0);
+            totals[1] += Math.max(collector.getCollectionTime(), 0);
+        }
+        return totals;
+    }
+    
+    /**
+     * Tracks the longest collection reported since the last reset. The
+     * notifications arrive on a JMX thread shortly after each collection.
+     */
+    private static class GcListener implements NotificationListener {
+        private final AtomicLong maxMillis = new AtomicLong();
+        
+        @Override
+        public void handleNotification(Notification notification, Object handback) {
+            if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                GarbageCollectionNotificationInfo info =
+                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                maxMillis.accumulateAndGet(info.getGcInfo().getDuration(), Math::max);
+            }
+        }
+        
+        void reset() {
+            maxMillis.set(0);
+        }
+        
+        long maxMillis() {
+            return maxMillis.get();
+        }
+    }
+    
+    /**
+     * Returns the heap in use after collecting garbage
+     */
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+    
+    /**
+     * Returns the direct buffer memory in use
+     */
+    private static long usedDirect() {
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                return pool.getMemoryUsed();
+            }
+        }
+        return 0;
+    }
+    
+    /**
+     * Returns the enrollment with the given ID in a synthetic data set of
+     * STUDENTS students and COURSES courses, with statuses in rotation. Each
+     * gets its own LocalDate object, as enrollments loaded from a file do.
+     */
+    private static Enrollment enrollment(int id) {
+        return new Enrollment(id, id % STUDENTS + 1, id % COURSES + 1, DATE.plusDays(id % 1000),
+                              STATUSES[id % STATUSES.length]);
+    }
+    
+    /**
+     * Returns LOOKUPS_PER_ROUND random IDs between 1 and size
+     */
+    private static int[] probes(int size) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int[] probes = new int[LOOKUPS_PER_ROUND];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = random.nextInt(size) + 1;
+        }
+        return probes;
+    }
+    
+    /**
+     * Runs the warm-up rounds, then returns the median time per operation of the timed rounds
+     * @param operations Operations one round performs
+     * @param round One round of work; returns a checksum of its results
+     */
+    private static double medianNanosPerOp(int operations, Round round) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            sink += round.run();
+        }
+        double[] nanos = new double[TIMED_ROUNDS];
+        for (int i = 0; i < TIMED_ROUNDS; i++) {
+            long start = System.nanoTime();
+            sink += round.run();
+            nanos[i] = (double) (System.nanoTime() - start) / operations;
+        }
+        Arrays.sort(nanos);
+        return nanos[TIMED_ROUNDS / 2];
+    }
+    
+    @FunctionalInterface
+    private interface Round {
+        long run();
+    }
+}
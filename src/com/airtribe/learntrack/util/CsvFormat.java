@@ -0,0 +1,115 @@
+package com.airtribe.learntrack.util;
+
+import com.airtribe.learntrack.exception.InvalidInputException;
+import java.util.ArrayList;
+
+/**
+ * Reading and writing single lines of comma-separated values.
+ * A field may be enclosed in double quotes to contain commas, with a quote
+ * inside it written twice. Unquoted fields are trimmed. Quoted fields cannot
+ * span lines, so every record is exactly one line.
+ */
+public final class CsvFormat {
+    private CsvFormat() {
+    }
+    
+    /**
+     * Splits a line into its fields
+     * @param line The line, without the line terminator
+     * @return The field values, unquoted
+     * @throws InvalidInputException if a quoted field is not closed, or text follows its closing quote
+     */
+    public static String[] parseLine(String line) throws InvalidInputException {
+        ArrayList<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        int length = line.length();
+        int i = 0;
+        while (true) {
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < length && line.charAt(i) == '"') {
+                field.setLength(0);
+                i++;
+                while (true) {
+                    if (i == length) {
+                        throw new InvalidInputException("Unterminated quoted field");
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                while (i < length && line.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    throw new InvalidInputException("Unexpected text after quoted field");
+                }
+                fields.add(field.toString());
+            } else {
+                int end = line.indexOf(',', i);
+                if (end < 0) {
+                    end = length;
+                }
+                fields.add(line.substring(i, end).trim());
+                i = end;
+            }
+            if (i >= length) {
+                return fields.toArray(new String[0]);
+            }
+            // Skip the comma
+            i++;
+        }
+    }
+    
+    /**
+     * Appends a value as one field, quoting it if it contains a comma, quote or line break
+     * @param out Where to append
+     * @param value The value; null is written as an empty field
+     */
+    public static void appendField(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        if (!needsQuotes(value)) {
+            out.append(value);
+            return;
+        }
+        out.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                out.append('"');
+            }
+            out.append(c);
+        }
+        out.append('"');
+    }
+    
+    /**
+     * Checks whether a value must be quoted to be read back as one field
+     * @param value The value
+     * @return true if it contains a comma, quote or line break, or starts or ends with a space
+     */
+    public static boolean needsQuotes(String value) {
+        int length = value.length();
+        if (length > 0 && (value.charAt(0) == ' ' || value.charAt(length - 1) == ' ')) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -1,27 +1,201 @@
 package com.airtribe.learntrack.util;
 
 import com.airtribe.learntrack.constants.AppConstants;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Generates unique IDs for students, courses and enrollments.
+ * Each thread leases blocks of AppConstants.ID_BLOCK_SIZE IDs from a shared
+ * atomic counter and hands them out locally, so the shared counter is touched
+ * once per block instead of once per ID. IDs are unique and increase within a
+ * block; across threads they are ordered by block. A thread that calls
+ * releaseBlocks, as every thread of releasingThreadFactory does when it ends,
+ * returns the rest of its blocks, and the next thread to need a block takes
+ * one of those first. Such an ID can be lower than the thread's earlier ones.
+ * A thread that ends without releasing loses the rest of its blocks, at most
+ * ID_BLOCK_SIZE - 1 IDs per sequence. The sequences hold about 2.1 billion
+ * IDs from their start before the int range runs out.
+ */
 public class IdGenerator {
-    private static int studentIdCounter = AppConstants.STUDENT_ID_START;
-    private static int courseIdCounter = AppConstants.COURSE_ID_START;
-    private static int enrollmentIdCounter = AppConstants.ENROLLMENT_ID_START;
+    private static final IdSequence studentIds = new IdSequence(AppConstants.STUDENT_ID_START);
+    private static final IdSequence courseIds = new IdSequence(AppConstants.COURSE_ID_START);
+    private static final IdSequence enrollmentIds = new IdSequence(AppConstants.ENROLLMENT_ID_START);
     
     public static int getNextStudentId() {
-        return ++studentIdCounter;
+        return studentIds.next();
     }
     
     public static int getNextCourseId() {
-        return ++courseIdCounter;
+        return courseIds.next();
     }
     
     public static int getNextEnrollmentId() {
-        return ++enrollmentIdCounter;
+        return enrollmentIds.next();
     }
     
+    /**
+     * Makes sure the next student ID is greater than the given one, e.g. after
+     * restoring saved students. Blocks already leased by any thread are discarded.
+     * @param lastUsed The highest student ID in use
+     */
+    public static void advanceStudentIds(int lastUsed) {
+        studentIds.advance(lastUsed);
+    }
+    
+    public static void advanceCourseIds(int lastUsed) {
+        courseIds.advance(lastUsed);
+    }
+    
+    public static void advanceEnrollmentIds(int lastUsed) {
+        enrollmentIds.advance(lastUsed);
+    }
+    
+    /**
+     * Returns the highest student ID reserved so far, counting IDs leased to
+     * threads but not yet issued; no issued ID is greater
+     * @return The highest reserved student ID
+     */
+    public static int lastReservedStudentId() {
+        return studentIds.lastReserved();
+    }
+    
+    public static int lastReservedCourseId() {
+        return courseIds.lastReserved();
+    }
+    
+    public static int lastReservedEnrollmentId() {
+        return enrollmentIds.lastReserved();
+    }
+    
+    /**
+     * Returns the calling thread's unused IDs of every sequence, to be issued
+     * by the next thread that needs a block. The thread leases new blocks if
+     * it asks for more IDs later.
+     */
+    public static void releaseBlocks() {
+        studentIds.release();
+        courseIds.release();
+        enrollmentIds.release();
+    }
+    
+    /**
+     * Returns a thread factory for short-lived pools that take IDs. Each
+     * thread calls releaseBlocks when it ends, so creating a pool per bulk
+     * call does not lose up to a block per thread and sequence.
+     * @return A factory creating the same threads as Executors.defaultThreadFactory
+     */
+    public static ThreadFactory releasingThreadFactory() {
+        ThreadFactory threads = Executors.defaultThreadFactory();
+        return task -> threads.newThread(() -> {
+            try {
+                task.run();
+            } finally {
+                releaseBlocks();
+            }
+        });
+    }
+    
+    /**
+     * Restarts all sequences from their configured start. Blocks already leased
+     * by other threads are discarded the next time those threads ask for an ID.
+     */
     public static void resetCounters() {
-        studentIdCounter = AppConstants.STUDENT_ID_START;
-        courseIdCounter = AppConstants.COURSE_ID_START;
-        enrollmentIdCounter = AppConstants.ENROLLMENT_ID_START;
+        studentIds.reset();
+        courseIds.reset();
+        enrollmentIds.reset();
+    }
+    
+    /**
+     * One ID sequence. The shared state packs a generation number (bumped by
+     * reset and advance) in the high 32 bits and the last leased ID in the low
+     * 32 bits, so a lease and a reset can never interleave into duplicate IDs.
+     * The current generation is also published in a separate volatile field,
+     * which only resets write. next() reads that field instead of the
+     * counter, so between leases a thread touches no cache line that other
+     * threads write. It checks the generation again after taking an ID, so an
+     * ID from a block that a reset made stale is never returned.
+     * Released blocks wait in a queue that next() polls only when it needs a
+     * new block; those of an older generation are dropped there.
+     */
+    private static class IdSequence {
+        private final int start;
+        private final AtomicLong state;
+        // Generation of state, published after it changes; blocks of another generation are stale
+        private volatile long generation;
+        private final ThreadLocal<Block> blocks;
+        // Unused rest of blocks given back by ending threads; nothing in them was issued
+        private final ConcurrentLinkedQueue<Block> released;
+        
+        IdSequence(int start) {
+            this.start = start;
+            this.state = new AtomicLong(start);
+            this.blocks = ThreadLocal.withInitial(Block::new);
+            this.released = new ConcurrentLinkedQueue<>();
+        }
+        
+        int next() {
+            Block block = blocks.get();
+            while (true) {
+                if (block.next > block.limit || block.generation != generation) {
+                    lease(block);
+                }
+                int id = block.next++;
+                // A reset since the check makes the ID a possible duplicate; lease again
+                if (block.generation == generation) {
+                    return id;
+                }
+            }
+        }
+        
+        private void lease(Block block) {
+            long current = generation;
+            Block free;
+            while ((free = released.poll()) != null) {
+                if (free.generation == current) {
+                    block.generation = free.generation;
+                    block.next = free.next;
+                    block.limit = free.limit;
+                    return;
+                }
+            }
+            long leased = state.getAndAdd(AppConstants.ID_BLOCK_SIZE);
+            block.generation = leased >>> 32;
+            block.next = (int) leased + 1;
+            block.limit = (int) leased + AppConstants.ID_BLOCK_SIZE;
+        }
+        
+        void release() {
+            Block block = blocks.get();
+            blocks.remove();
+            // The thread no longer holds the block, so it can be handed over as is
+            if (block.next <= block.limit && block.generation == generation) {
+                released.add(block);
+            }
+        }
+        
+        synchronized void reset() {
+            generation = state.updateAndGet(current -> ((current >>> 32) + 1) << 32 | start) >>> 32;
+        }
+        
+        int lastReserved() {
+            return (int) state.get();
+        }
+        
+        synchronized void advance(int lastUsed) {
+            generation = state.updateAndGet(current -> ((current >>> 32) + 1) << 32 |
+                                                       Math.max((int) current, lastUsed) & 0xFFFFFFFFL) >>> 32;
+        }
+    }
+    
+    /**
+     * The range of IDs leased to one thread: next..limit inclusive
+     */
+    private static class Block {
+        long generation = -1;
+        int next;
+        int limit;
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,17 @@
 package com.airtribe.learntrack.util;
 
 import com.airtribe.learntrack.constants.AppConstants;
+import java.util.regex.Pattern;
 
 public class InputValidator {
+    // Compiled once; String.matches would compile the pattern on every call
+    private static final Pattern EMAIL = Pattern.compile(AppConstants.EMAIL_PATTERN);
     
     public static boolean isValidEmail(String email) {
         if (email == null || email.isEmpty()) {
             return false;
         }
-        return email.matches(AppConstants.EMAIL_PATTERN);
+        return EMAIL.matcher(email).matches();
     }
     
     public static boolean isValidName(String name) {
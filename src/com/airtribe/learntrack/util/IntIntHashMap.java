@@ -0,0 +1,230 @@
+package com.airtribe.learntrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from int keys to int values.
+ * Keys and values are stored in primitive arrays, so lookups never box.
+ * Uses linear probing with backward-shift deletion (no tombstones).
+ */
+public class IntIntHashMap {
+    private static final int FREE_KEY = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.5f;
+    
+    private int[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+    private int resizeThreshold;
+    
+    // Key 0 marks a free bucket, so its mapping is kept on the side
+    private boolean hasFreeKey;
+    private int freeKeyValue;
+    
+    private final int missingValue;
+    
+    /**
+     * Creates a map that returns -1 for absent keys
+     */
+    public IntIntHashMap() {
+        this(DEFAULT_CAPACITY, -1);
+    }
+    
+    /**
+     * Creates a map with an initial capacity and a custom "absent" value
+     * @param expectedSize Number of entries expected
+     * @param missingValue Value returned by get/remove when a key is absent
+     */
+    public IntIntHashMap(int expectedSize, int missingValue) {
+        int capacity = tableSizeFor((int) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR));
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+        this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        this.missingValue = missingValue;
+    }
+    
+    /**
+     * Returns the value mapped to the key
+     * @param key The key
+     * @return The value, or the missing value if absent
+     */
+    public int get(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey ? freeKeyValue : missingValue;
+        }
+        int[] k = keys;
+        int m = mask;
+        int index = hash(key) & m;
+        while (true) {
+            int current = k[index];
+            if (current == key) {
+                return values[index];
+            }
+            if (current == FREE_KEY) {
+                return missingValue;
+            }
+            index = (index + 1) & m;
+        }
+    }
+    
+    /**
+     * Checks whether the key is mapped
+     * @param key The key
+     * @return true if present, false otherwise
+     */
+    public boolean containsKey(int key) {
+        if (key == FREE_KEY) {
+            return hasFreeKey;
+        }
+        int index = hash(key) & mask;
+        while (true) {
+            int current = keys[index];
+            if (current == key) {
+                return true;
+            }
+            if (current == FREE_KEY) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+    
+    /**
+     * Maps the key to the value, replacing any previous mapping
+     * @param key The key
+     * @param value The value
+     * @return The previous value, or the missing value if absent
+     */
+    public int put(int key, int value) {
+        if (key == FREE_KEY) {
+            int previous = hasFreeKey ? freeKeyValue : missingValue;
+            if (!hasFreeKey) {
+                hasFreeKey = true;
+                size++;
+            }
+            freeKeyValue = value;
+            return previous;
+        }
+        int index = hash(key) & mask;
+        while (true) {
+            int current = keys[index];
+            if (current == FREE_KEY) {
+                keys[index] = key;
+                values[index] = value;
+                if (++size > resizeThreshold) {
+                    rehash(keys.length * 2);
+                }
+                return missingValue;
+            }
+            if (current == key) {
+                int previous = values[index];
+                values[index] = value;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+    
+    /**
+     * Removes the mapping for the key
+     * @param key The key
+     * @return The removed value, or the missing value if absent
+     */
+    public int remove(int key) {
+        if (key == FREE_KEY) {
+            if (!hasFreeKey) {
+                return missingValue;
+            }
+            hasFreeKey = false;
+            size--;
+            return freeKeyValue;
+        }
+        int index = hash(key) & mask;
+        while (true) {
+            int current = keys[index];
+            if (current == FREE_KEY) {
+                return missingValue;
+            }
+            if (current == key) {
+                int previous = values[index];
+                shiftKeys(index);
+                size--;
+                return previous;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+    
+    /**
+     * Removes all mappings
+     */
+    public void clear() {
+        Arrays.fill(keys, FREE_KEY);
+        hasFreeKey = false;
+        size = 0;
+    }
+    
+    /**
+     * Returns the number of mappings
+     * @return Count of mappings
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Closes the gap left at the given bucket by moving later entries of the
+     * same probe chain back, so lookups never need tombstones.
+     */
+    private void shiftKeys(int gap) {
+        int index = gap;
+        while (true) {
+            index = (index + 1) & mask;
+            int current = keys[index];
+            if (current == FREE_KEY) {
+                keys[gap] = FREE_KEY;
+                return;
+            }
+            int home = hash(current) & mask;
+            // Move the entry only if its home bucket is not between gap and index
+            if (gap <= index ? (gap >= home || home > index) : (gap >= home && home > index)) {
+                keys[gap] = current;
+                values[gap] = values[index];
+                gap = index;
+            }
+        }
+    }
+    
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new int[newCapacity];
+        values = new int[newCapacity];
+        mask = newCapacity - 1;
+        resizeThreshold = (int) (newCapacity * LOAD_FACTOR);
+        
+        for (int i = 0; i < oldKeys.length; i++) {
+            int key = oldKeys[i];
+            if (key != FREE_KEY) {
+                int index = hash(key) & mask;
+                while (keys[index] != FREE_KEY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+    
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+    
+    private static int tableSizeFor(int capacity) {
+        int size = Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1;
+        return Math.max(size, DEFAULT_CAPACITY);
+    }
+}
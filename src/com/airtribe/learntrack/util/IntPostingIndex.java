@@ -0,0 +1,220 @@
+package com.airtribe.learntrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Multi-value index from an int key to a sorted list of int ids.
+ * Each key owns a compact int[] posting list, so no Integer boxing is needed
+ * and reading a key's ids costs time proportional to the number of ids.
+ * A key whose last id is removed is dropped and its list position reused,
+ * and lists shrink as they empty, so memory follows the live keys and ids
+ * rather than every key ever added.
+ */
+public class IntPostingIndex {
+    private static final int[] EMPTY = new int[0];
+    private static final int INITIAL_LIST_CAPACITY = 4;
+    
+    // key -> position of its posting list in lists/sizes
+    private IntIntHashMap listIndex;
+    private int[][] lists;
+    private int[] sizes;
+    private int listCount;
+    // Stack of released list positions, reused by newList
+    private int[] freeLists;
+    private int freeCount;
+    
+    public IntPostingIndex() {
+        this.listIndex = new IntIntHashMap();
+        this.lists = new int[16][];
+        this.sizes = new int[16];
+        this.freeLists = new int[16];
+    }
+    
+    /**
+     * Adds an id to the posting list of a key. Ids are kept in ascending order;
+     * appending an id larger than all current ones is O(1) amortized.
+     * @param key The key
+     * @param id The id to add
+     */
+    public void add(int key, int id) {
+        int list = listIndex.get(key);
+        if (list < 0) {
+            list = newList();
+            listIndex.put(key, list);
+        }
+        int[] ids = lists[list];
+        int size = sizes[list];
+        int position = size == 0 || ids[size - 1] < id ? size : Arrays.binarySearch(ids, 0, size, id);
+        if (position >= 0 && position < size) {
+            return;
+        }
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (size == ids.length) {
+            ids = Arrays.copyOf(ids, size * 2);
+            lists[list] = ids;
+        }
+        System.arraycopy(ids, position, ids, position + 1, size - position);
+        ids[position] = id;
+        sizes[list] = size + 1;
+    }
+    
+    /**
+     * Adds a batch of ids to the posting list of a key in one merge pass
+     * @param key The key
+     * @param sortedIds Ids to add, in ascending order
+     */
+    public void addAll(int key, int[] sortedIds) {
+        if (sortedIds.length == 0) {
+            return;
+        }
+        int list = listIndex.get(key);
+        if (list < 0) {
+            list = newList();
+            listIndex.put(key, list);
+        }
+        int[] ids = lists[list];
+        int size = sizes[list];
+        int[] merged = new int[Math.max(size + sortedIds.length, INITIAL_LIST_CAPACITY)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < size || j < sortedIds.length) {
+            if (j == sortedIds.length || (i < size && ids[i] < sortedIds[j])) {
+                merged[count++] = ids[i++];
+            } else if (i == size || sortedIds[j] < ids[i]) {
+                merged[count++] = sortedIds[j++];
+            } else {
+                merged[count++] = ids[i++];
+                j++;
+            }
+        }
+        lists[list] = merged;
+        sizes[list] = count;
+    }
+    
+    /**
+     * Removes an id from the posting list of a key
+     * @param key The key
+     * @param id The id to remove
+     * @return true if the id was present, false otherwise
+     */
+    public boolean remove(int key, int id) {
+        int list = listIndex.get(key);
+        if (list < 0) {
+            return false;
+        }
+        int[] ids = lists[list];
+        int size = sizes[list];
+        int position = Arrays.binarySearch(ids, 0, size, id);
+        if (position < 0) {
+            return false;
+        }
+        if (size == 1) {
+            releaseList(key, list);
+            return true;
+        }
+        System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+        sizes[list] = size - 1;
+        // Halve a list that is three-quarters empty, keeping room to grow again
+        if (ids.length > INITIAL_LIST_CAPACITY && size - 1 <= ids.length / 4) {
+            lists[list] = Arrays.copyOf(ids, Math.max(ids.length / 2, INITIAL_LIST_CAPACITY));
+        }
+        return true;
+    }
+    
+    /**
+     * Removes a key together with its whole posting list
+     * @param key The key
+     * @return The ids that were indexed under the key, in ascending order
+     */
+    public int[] removeKey(int key) {
+        int[] ids = get(key);
+        int list = listIndex.get(key);
+        if (list >= 0) {
+            releaseList(key, list);
+        }
+        return ids;
+    }
+    
+    /**
+     * Returns the ids indexed under a key
+     * @param key The key
+     * @return A copy of the posting list, in ascending order
+     */
+    public int[] get(int key) {
+        int list = listIndex.get(key);
+        if (list < 0 || sizes[list] == 0) {
+            return EMPTY;
+        }
+        return Arrays.copyOf(lists[list], sizes[list]);
+    }
+    
+    /**
+     * Returns one page of the ids indexed under a key, found by binary search
+     * @param key The key
+     * @param afterId Only ids greater than this are returned
+     * @param limit Maximum number of ids to return
+     * @return Up to limit ids in ascending order
+     */
+    public int[] page(int key, int afterId, int limit) {
+        int list = listIndex.get(key);
+        if (list < 0 || limit <= 0) {
+            return EMPTY;
+        }
+        int size = sizes[list];
+        int from = Arrays.binarySearch(lists[list], 0, size, afterId);
+        from = from < 0 ? -from - 1 : from + 1;
+        return Arrays.copyOfRange(lists[list], from, from + Math.min(limit, size - from));
+    }
+    
+    /**
+     * Returns the number of ids indexed under a key
+     * @param key The key
+     * @return Count of ids
+     */
+    public int count(int key) {
+        int list = listIndex.get(key);
+        return list < 0 ? 0 : sizes[list];
+    }
+    
+    /**
+     * Removes all keys and ids
+     */
+    public void clear() {
+        listIndex.clear();
+        Arrays.fill(lists, 0, listCount, null);
+        Arrays.fill(sizes, 0, listCount, 0);
+        listCount = 0;
+        freeCount = 0;
+    }
+    
+    private int newList() {
+        if (freeCount > 0) {
+            int list = freeLists[--freeCount];
+            lists[list] = new int[INITIAL_LIST_CAPACITY];
+            return list;
+        }
+        if (listCount == lists.length) {
+            lists = Arrays.copyOf(lists, listCount * 2);
+            sizes = Arrays.copyOf(sizes, listCount * 2);
+        }
+        lists[listCount] = new int[INITIAL_LIST_CAPACITY];
+        sizes[listCount] = 0;
+        return listCount++;
+    }
+    
+    /**
+     * Drops a key and frees its posting list for reuse by another key
+     */
+    private void releaseList(int key, int list) {
+        listIndex.remove(key);
+        lists[list] = null;
+        sizes[list] = 0;
+        if (freeCount == freeLists.length) {
+            freeLists = Arrays.copyOf(freeLists, freeCount * 2);
+        }
+        freeLists[freeCount++] = list;
+    }
+}
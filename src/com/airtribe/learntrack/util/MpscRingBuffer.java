@@ -0,0 +1,95 @@
+package com.airtribe.learntrack.util;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded ring buffer for many producer threads and a single consumer thread.
+ * Producers claim a sequence number with one atomic increment, write their
+ * element into the slot for that sequence and then publish the sequence in a
+ * per-slot marker; the consumer takes elements strictly in sequence order.
+ * No locks are taken; a producer only waits when the buffer is full.
+ */
+public class MpscRingBuffer<E> {
+    private final Object[] entries;
+    // Sequence number currently published in each slot, -1 if none yet
+    private final AtomicLongArray published;
+    private final int mask;
+    private final AtomicLong claimed;
+    // Last sequence taken by the consumer
+    private volatile long consumed;
+    
+    /**
+     * Creates a ring buffer
+     * @param capacity Number of slots; must be a power of two
+     */
+    public MpscRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        }
+        this.entries = new Object[capacity];
+        long[] initial = new long[capacity];
+        Arrays.fill(initial, -1L);
+        this.published = new AtomicLongArray(initial);
+        this.mask = capacity - 1;
+        this.claimed = new AtomicLong(-1L);
+        this.consumed = -1L;
+    }
+    
+    /**
+     * Appends an element, waiting while the buffer is full. Safe to call from any thread.
+     * @param element The element to append; must not be null
+     */
+    public void put(E element) {
+        long sequence = claimed.incrementAndGet();
+        long wrapPoint = sequence - entries.length;
+        while (consumed < wrapPoint) {
+            // The consumer has not yet freed the slot this sequence wraps onto
+            LockSupport.parkNanos(1_000L);
+        }
+        int index = (int) sequence & mask;
+        entries[index] = element;
+        // Volatile write, so a consumer that checks isEmpty after announcing it is
+        // about to park cannot miss this element (see CommandPipeline)
+        published.set(index, sequence);
+    }
+    
+    /**
+     * Moves up to max published elements, in sequence order, into target.
+     * Must only be called from the consumer thread.
+     * @param target The list to append to
+     * @param max Maximum number of elements to take
+     * @return Number of elements taken
+     */
+    @SuppressWarnings("unchecked")
+    public int drainTo(List<? super E> target, int max) {
+        long next = consumed + 1;
+        int count = 0;
+        while (count < max) {
+            long sequence = next + count;
+            int index = (int) sequence & mask;
+            if (published.get(index) != sequence) {
+                break;
+            }
+            target.add((E) entries[index]);
+            entries[index] = null;
+            count++;
+        }
+        if (count > 0) {
+            consumed = next + count - 1;
+        }
+        return count;
+    }
+    
+    /**
+     * Checks whether the next element for the consumer has been published yet
+     * @return true if there is nothing to drain, false otherwise
+     */
+    public boolean isEmpty() {
+        long next = consumed + 1;
+        return published.get((int) next & mask) != next;
+    }
+}
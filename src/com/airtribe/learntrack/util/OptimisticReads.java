@@ -0,0 +1,74 @@
+package com.airtribe.learntrack.util;
+
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Helpers for running short reads under a StampedLock optimistically.
+ * The reader first runs without taking the lock; if a writer got in meanwhile
+ * (or the racing read failed because of it), the read is repeated under the
+ * read lock. Readers must not write and must be safe to run twice.
+ */
+public final class OptimisticReads {
+    private OptimisticReads() {
+    }
+    
+    /**
+     * Runs a read optimistically, falling back to the read lock
+     * @param lock The lock guarding the data being read
+     * @param reader The read to perform
+     * @return The value read from a consistent state
+     */
+    public static <T> T read(StampedLock lock, Supplier<T> reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T value = reader.get();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                // A racing write can leave indexes briefly out of step; only
+                // failures seen without interference are real
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+    
+    /**
+     * Runs an int-valued read optimistically, falling back to the read lock
+     * @param lock The lock guarding the data being read
+     * @param reader The read to perform
+     * @return The value read from a consistent state
+     */
+    public static int readInt(StampedLock lock, IntSupplier reader) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                int value = reader.getAsInt();
+                if (lock.validate(stamp)) {
+                    return value;
+                }
+            } catch (RuntimeException e) {
+                if (lock.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return reader.getAsInt();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package com.airtribe.learntrack.util;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Growable array of references that can hand out read-only snapshots in O(1).
+ * Elements live in fixed-size chunks under a spine array. Taking a snapshot
+ * copies nothing: it starts a new generation, and from then on the writer
+ * copies a chunk (and the spine) the first time it modifies one that a
+ * snapshot may still see. A listing therefore costs no garbage unless writes
+ * happen between listings, and then only the chunks actually written are copied.
+ * Null elements are holes (e.g. deleted entries) and are skipped by snapshots.
+ * Not thread-safe for writers: mutations must be serialized by the caller.
+ * snapshot() may be called concurrently by readers as long as no write runs.
+ */
+public class SnapshotArray<E> {
+    private static final int CHUNK_SHIFT = 6;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    
+    private Object[][] chunks;
+    private int chunkCount;
+    // Generation in which the writer last copied or created each chunk / the spine;
+    // anything from an older generation may be shared with a snapshot
+    private int[] chunkGenerations;
+    private int spineGeneration;
+    private int generation;
+    private int size;
+    private int liveCount;
+    // Snapshot of the current state, reused until the next write
+    private Snapshot<E> current;
+    
+    public SnapshotArray() {
+        this.chunks = new Object[4][];
+        this.chunkGenerations = new int[4];
+    }
+    
+    /**
+     * Returns the number of positions, including holes
+     * @return Count of positions
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Returns the number of non-null elements
+     * @return Count of elements
+     */
+    public int liveCount() {
+        return liveCount;
+    }
+    
+    @SuppressWarnings("unchecked")
+    public E get(int index) {
+        return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+    }
+    
+    /**
+     * Appends an element at position size()
+     * @param element The element, or null to append a hole
+     */
+    public void add(E element) {
+        if (size == chunkCount << CHUNK_SHIFT) {
+            addChunk();
+        }
+        size++;
+        set(size - 1, element);
+    }
+    
+    /**
+     * Replaces the element at a position
+     * @param index The position, below size()
+     * @param element The new element, or null to leave a hole
+     * @return The previous element
+     */
+    public E set(int index, E element) {
+        Object[] chunk = writableChunk(index >>> CHUNK_SHIFT);
+        @SuppressWarnings("unchecked")
+        E previous = (E) chunk[index & CHUNK_MASK];
+        chunk[index & CHUNK_MASK] = element;
+        liveCount += (element != null ? 1 : 0) - (previous != null ? 1 : 0);
+        current = null;
+        return previous;
+    }
+    
+    /**
+     * Drops all positions from newSize on and releases chunks no longer needed
+     * @param newSize The new size, at most size()
+     */
+    public void truncate(int newSize) {
+        while (size > newSize) {
+            set(size - 1, null);
+            size--;
+        }
+        int neededChunks = (newSize + CHUNK_MASK) >>> CHUNK_SHIFT;
+        if (neededChunks < chunkCount) {
+            writableSpine();
+            Arrays.fill(chunks, neededChunks, chunkCount, null);
+            chunkCount = neededChunks;
+        }
+        current = null;
+    }
+    
+    /**
+     * Returns a read-only view of the non-null elements, in position order,
+     * as of this call. Later writes do not affect the view.
+     * @return The snapshot view
+     */
+    public synchronized List<E> snapshot() {
+        if (current == null) {
+            generation++;
+            current = new Snapshot<>(chunks, size, liveCount);
+        }
+        return current;
+    }
+    
+    private Object[] writableChunk(int chunkIndex) {
+        if (chunkGenerations[chunkIndex] != generation) {
+            writableSpine();
+            chunks[chunkIndex] = chunks[chunkIndex].clone();
+            chunkGenerations[chunkIndex] = generation;
+        }
+        return chunks[chunkIndex];
+    }
+    
+    private void writableSpine() {
+        if (spineGeneration != generation) {
+            chunks = chunks.clone();
+            spineGeneration = generation;
+        }
+    }
+    
+    private void addChunk() {
+        if (chunkCount == chunks.length) {
+            // A fresh spine is private to the writer
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunkGenerations = Arrays.copyOf(chunkGenerations, chunkCount * 2);
+            spineGeneration = generation;
+        } else {
+            writableSpine();
+        }
+        chunks[chunkCount] = new Object[CHUNK_SIZE];
+        chunkGenerations[chunkCount] = generation;
+        chunkCount++;
+    }
+    
+    /**
+     * Immutable view over the chunks as they were when the snapshot was taken.
+     * get(int) is constant time while the snapshot has no holes. Otherwise the
+     * first get counts the elements of every chunk once, and each get after
+     * that binary searches those counts and scans a single chunk.
+     */
+    private static final class Snapshot<E> extends AbstractList<E> {
+        private final Object[][] chunks;
+        private final int slots;
+        private final int liveCount;
+        // Elements before each chunk, built on the first get over holes; racing
+        // readers may each build it, and any of the equal copies will do
+        private volatile int[] chunkStarts;
+        
+        Snapshot(Object[][] chunks, int slots, int liveCount) {
+            this.chunks = chunks;
+            this.slots = slots;
+            this.liveCount = liveCount;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public E get(int index) {
+            if (index < 0 || index >= liveCount) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + liveCount);
+            }
+            if (liveCount == slots) {
+                return (E) chunks[index >>> CHUNK_SHIFT][index & CHUNK_MASK];
+            }
+            int[] starts = chunkStarts;
+            if (starts == null) {
+                starts = countChunks();
+                chunkStarts = starts;
+            }
+            // Last chunk starting at or before index
+            int low = 0;
+            int high = starts.length - 2;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (starts[middle] <= index) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            Object[] chunk = chunks[low];
+            int remaining = index - starts[low];
+            int end = Math.min(CHUNK_SIZE, slots - (low << CHUNK_SHIFT));
+            for (int i = 0; i < end; i++) {
+                if (chunk[i] != null && remaining-- == 0) {
+                    return (E) chunk[i];
+                }
+            }
+            throw new IllegalStateException("Snapshot holds fewer elements than its size");
+        }
+        
+        private int[] countChunks() {
+            int chunkCount = (slots + CHUNK_MASK) >>> CHUNK_SHIFT;
+            int[] starts = new int[chunkCount + 1];
+            for (int c = 0; c < chunkCount; c++) {
+                Object[] chunk = chunks[c];
+                int end = Math.min(CHUNK_SIZE, slots - (c << CHUNK_SHIFT));
+                int count = 0;
+                for (int i = 0; i < end; i++) {
+                    if (chunk[i] != null) {
+                        count++;
+                    }
+                }
+                starts[c + 1] = starts[c] + count;
+            }
+            return starts;
+        }
+        
+        @Override
+        public int size() {
+            return liveCount;
+        }
+        
+        @Override
+        public Iterator<E> iterator() {
+            return new Iterator<E>() {
+                private int position = advance(0);
+                
+                @Override
+                public boolean hasNext() {
+                    return position < slots;
+                }
+                
+                @Override
+                @SuppressWarnings("unchecked")
+                public E next() {
+                    if (position >= slots) {
+                        throw new NoSuchElementException();
+                    }
+                    E element = (E) chunks[position >>> CHUNK_SHIFT][position & CHUNK_MASK];
+                    position = advance(position + 1);
+                    return element;
+                }
+            };
+        }
+        
+        private int advance(int position) {
+            while (position < slots && chunks[position >>> CHUNK_SHIFT][position & CHUNK_MASK] == null) {
+                position++;
+            }
+            return position;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.airtribe.learntrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Sorted set of ints kept as a list of sorted chunks, used for keyset pagination.
+ * Locating a value costs a binary search over the chunks plus one within a chunk,
+ * so reading the values after a cursor costs O(log n + limit) however deep the
+ * cursor is. Inserts and removes only shift values inside one chunk; appending
+ * a value larger than all others (the usual case for generated IDs) is O(1).
+ */
+public class SortedIntList {
+    private static final int[] EMPTY = new int[0];
+    private static final int MAX_CHUNK_SIZE = 512;
+    
+    private int[][] chunks;
+    private int[] chunkSizes;
+    private int chunkCount;
+    private int size;
+    
+    public SortedIntList() {
+        this.chunks = new int[4][];
+        this.chunkSizes = new int[4];
+    }
+    
+    /**
+     * Adds a value
+     * @param value The value
+     * @return true if added, false if it was already present
+     */
+    public boolean add(int value) {
+        if (chunkCount == 0) {
+            insertChunk(0, new int[16], 0);
+        }
+        int chunk = chunkFor(value);
+        int[] values = chunks[chunk];
+        int chunkSize = chunkSizes[chunk];
+        int position = chunkSize == 0 || values[chunkSize - 1] < value
+                       ? chunkSize : Arrays.binarySearch(values, 0, chunkSize, value);
+        if (position >= 0 && position < chunkSize) {
+            return false;
+        }
+        if (position < 0) {
+            position = -position - 1;
+        }
+        if (chunkSize == MAX_CHUNK_SIZE) {
+            if (chunk == chunkCount - 1 && position == chunkSize) {
+                // Ascending appends start a new chunk and leave this one full
+                int[] next = new int[16];
+                next[0] = value;
+                insertChunk(chunkCount, next, 1);
+                size++;
+                return true;
+            }
+            splitChunk(chunk);
+            if (position > chunkSizes[chunk]) {
+                position -= chunkSizes[chunk];
+                chunk++;
+            }
+            values = chunks[chunk];
+            chunkSize = chunkSizes[chunk];
+        }
+        if (chunkSize == values.length) {
+            values = Arrays.copyOf(values, Math.min(chunkSize * 2, MAX_CHUNK_SIZE));
+            chunks[chunk] = values;
+        }
+        System.arraycopy(values, position, values, position + 1, chunkSize - position);
+        values[position] = value;
+        chunkSizes[chunk] = chunkSize + 1;
+        size++;
+        return true;
+    }
+    
+    /**
+     * Removes a value
+     * @param value The value
+     * @return true if removed, false if it was not present
+     */
+    public boolean remove(int value) {
+        if (chunkCount == 0) {
+            return false;
+        }
+        int chunk = chunkFor(value);
+        int[] values = chunks[chunk];
+        int chunkSize = chunkSizes[chunk];
+        int position = Arrays.binarySearch(values, 0, chunkSize, value);
+        if (position < 0) {
+            return false;
+        }
+        System.arraycopy(values, position + 1, values, position, chunkSize - position - 1);
+        chunkSizes[chunk] = chunkSize - 1;
+        size--;
+        if (chunkSize == 1) {
+            removeChunk(chunk);
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the smallest values greater than a cursor
+     * @param after The cursor; only values greater than it are returned
+     * @param limit Maximum number of values to return
+     * @return Up to limit values in ascending order
+     */
+    public int[] after(int after, int limit) {
+        if (chunkCount == 0 || limit <= 0 || after == Integer.MAX_VALUE) {
+            return EMPTY;
+        }
+        int chunk = chunkFor(after + 1);
+        int position = Arrays.binarySearch(chunks[chunk], 0, chunkSizes[chunk], after + 1);
+        if (position < 0) {
+            position = -position - 1;
+        }
+        int[] result = new int[Math.min(limit, size)];
+        int count = 0;
+        while (count < result.length && chunk < chunkCount) {
+            int take = Math.min(chunkSizes[chunk] - position, result.length - count);
+            System.arraycopy(chunks[chunk], position, result, count, take);
+            count += take;
+            chunk++;
+            position = 0;
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Returns the number of values
+     * @return Count of values
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Removes all values
+     */
+    public void clear() {
+        Arrays.fill(chunks, 0, chunkCount, null);
+        chunkCount = 0;
+        size = 0;
+    }
+    
+    /**
+     * Returns the chunk a value belongs in: the first chunk whose largest
+     * value is at least the given one, or the last chunk
+     */
+    private int chunkFor(int value) {
+        int low = 0;
+        int high = chunkCount - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chunks[middle][chunkSizes[middle] - 1] < value) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+    
+    private void splitChunk(int chunk) {
+        int[] values = chunks[chunk];
+        int half = chunkSizes[chunk] / 2;
+        int[] upper = Arrays.copyOfRange(values, half, MAX_CHUNK_SIZE);
+        chunkSizes[chunk] = half;
+        insertChunk(chunk + 1, upper, MAX_CHUNK_SIZE - half);
+    }
+    
+    private void insertChunk(int index, int[] values, int chunkSize) {
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            chunkSizes = Arrays.copyOf(chunkSizes, chunkCount * 2);
+        }
+        System.arraycopy(chunks, index, chunks, index + 1, chunkCount - index);
+        System.arraycopy(chunkSizes, index, chunkSizes, index + 1, chunkCount - index);
+        chunks[index] = values;
+        chunkSizes[index] = chunkSize;
+        chunkCount++;
+    }
+    
+    private void removeChunk(int index) {
+        System.arraycopy(chunks, index + 1, chunks, index, chunkCount - index - 1);
+        System.arraycopy(chunkSizes, index + 1, chunkSizes, index, chunkCount - index - 1);
+        chunkCount--;
+        chunks[chunkCount] = null;
+    }
+}
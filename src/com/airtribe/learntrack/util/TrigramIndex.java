@@ -0,0 +1,94 @@
+package com.airtribe.learntrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Inverted index from character trigrams to the ids of the texts containing them.
+ * Used for substring search: every trigram of the search term must appear in a
+ * matching text, so intersecting their posting lists yields a small candidate set
+ * that the caller then verifies with a real contains check.
+ * Texts are expected to be normalized (e.g. lower-cased) by the caller.
+ */
+public class TrigramIndex {
+    /** Terms shorter than this cannot be answered from the index. */
+    public static final int MIN_TERM_LENGTH = 3;
+    
+    private IntPostingIndex postings;
+    
+    public TrigramIndex() {
+        this.postings = new IntPostingIndex();
+    }
+    
+    /**
+     * Indexes every trigram of a text under the given id
+     * @param id The id of the text's owner
+     * @param text The normalized text
+     */
+    public void add(int id, String text) {
+        for (int i = 0; i + MIN_TERM_LENGTH <= text.length(); i++) {
+            postings.add(trigramKey(text, i), id);
+        }
+    }
+    
+    /**
+     * Removes every trigram of a text from the given id
+     * @param id The id of the text's owner
+     * @param text The normalized text, as it was passed to add
+     */
+    public void remove(int id, String text) {
+        for (int i = 0; i + MIN_TERM_LENGTH <= text.length(); i++) {
+            postings.remove(trigramKey(text, i), id);
+        }
+    }
+    
+    /**
+     * Returns the ids whose text contains all trigrams of the term.
+     * Candidates may still not contain the term itself and must be verified.
+     * @param term The normalized search term, at least MIN_TERM_LENGTH long
+     * @return Candidate ids in ascending order
+     */
+    public int[] candidates(String term) {
+        int trigramCount = term.length() - MIN_TERM_LENGTH + 1;
+        int[][] lists = new int[trigramCount][];
+        for (int i = 0; i < trigramCount; i++) {
+            lists[i] = postings.get(trigramKey(term, i));
+            if (lists[i].length == 0) {
+                return lists[i];
+            }
+        }
+        // Intersect starting from the shortest list so the working set only shrinks
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.length, b.length));
+        int[] result = lists[0];
+        for (int i = 1; i < lists.length && result.length > 0; i++) {
+            result = intersect(result, lists[i]);
+        }
+        return result;
+    }
+    
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int count = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Packs three characters into one int key. Exact for characters below
+     * U+0400; wider characters may collide, which verification absorbs.
+     */
+    private static int trigramKey(String text, int start) {
+        return (text.charAt(start) << 20) ^ (text.charAt(start + 1) << 10) ^ text.charAt(start + 2);
+    }
+}